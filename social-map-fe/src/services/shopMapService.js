@@ -1,5 +1,6 @@
 // services/shopMapService.js
 import { api } from './apiClient';
+import { webSocketService } from './WebSocketChatService';
 
 /**
  * Service for map-related shop operations
@@ -10,7 +11,7 @@ import { api } from './apiClient';
  * Lấy shops hoặc clusters trong vùng bản đồ
  * Tự động quyết định clustering dựa vào zoom level
  */
-export const getShopsInMapView = async (bounds, zoom, limit = null) => {
+export const getShopsInMapView = async (bounds, zoom, limit = null, tagIds = null, openNow = false, rankBy = null) => {
     const params = {
         north: bounds.north,
         south: bounds.south,
@@ -26,14 +27,60 @@ export const getShopsInMapView = async (bounds, zoom, limit = null) => {
         params.limit = limit;
     }
 
+    // Chỉ lấy shops có ít nhất một trong các tags
+    if (tagIds && tagIds.length > 0) {
+        params.tagIds = tagIds.join(',');
+    }
+
+    // Chỉ lấy shops đang mở cửa
+    if (openNow) {
+        params.openNow = true;
+    }
+
+    // Vượt limit thì lấy shops tốt nhất ('RATING' | 'REVIEW_COUNT'), dàn đều trên viewport
+    if (rankBy && limit) {
+        params.rankBy = rankBy;
+    }
+
     return await api.get('/shops/map', { params });
 };
 
+/**
+ * Số shops theo từng tag trong vùng bản đồ: [{ tagId, name, count }]
+ */
+export const getTagFacets = async (bounds) => {
+    const params = {
+        north: bounds.north,
+        south: bounds.south,
+        east: bounds.east,
+        west: bounds.west,
+    };
+
+    return await api.get('/shops/map/facets', { params });
+};
+
+/**
+ * Mật độ shops theo ô geohash trong viewport (heatmap)
+ * Server trả 503 khi bộ đếm đang load
+ */
+export const getShopsHeatmap = async (bounds, zoom) => {
+    const params = {
+        north: bounds.north,
+        south: bounds.south,
+        east: bounds.east,
+        west: bounds.west,
+        zoom: Math.round(zoom),
+    };
+
+    return await api.get('/shops/heatmap', { params });
+};
+
 /**
  * Lấy individual shops (không cluster)
  * Dùng cho zoom level cao
+ * rankBy ('RATING' | 'REVIEW_COUNT'): khi vượt limit thì lấy shops tốt nhất, dàn đều trên viewport
  */
-export const getIndividualShops = async (bounds, limit = 500) => {
+export const getIndividualShops = async (bounds, limit = 500, zoom = null, rankBy = null) => {
     const params = {
         north: bounds.north,
         south: bounds.south,
@@ -42,6 +89,14 @@ export const getIndividualShops = async (bounds, limit = 500) => {
         limit: limit,
     };
 
+    if (zoom !== null && zoom !== undefined) {
+        params.zoom = zoom;
+    }
+
+    if (rankBy) {
+        params.rankBy = rankBy;
+    }
+
     return await api.get('/shops/map/individual', { params });
 };
 
@@ -60,6 +115,224 @@ export const getClusters = async (bounds) => {
     return await api.get('/shops/map/clusters', { params });
 };
 
+/**
+ * Mở một cluster: các cluster con ở zoom kế tiếp, hoặc shops khi đã đủ gần
+ * Truyền lại tagIds / openNow đã dùng khi lấy cluster để kết quả khớp với count
+ * Trả về { content, page, size, totalElements, totalPages }
+ */
+export const getClusterChildren = async (clusterId, page = 0, size = 50, tagIds = null, openNow = false) => {
+    const params = { page, size };
+
+    if (tagIds && tagIds.length > 0) {
+        params.tagIds = tagIds.join(',');
+    }
+
+    if (openNow) {
+        params.openNow = true;
+    }
+
+    return await api.get(`/shops/map/clusters/${encodeURIComponent(clusterId)}/children`, { params });
+};
+
+/**
+ * Chỉ lấy shops vào / rời viewport kể từ lần gọi trước
+ * previousBounds và version lấy từ response trước (null ở lần đầu)
+ * Nếu response.reset = true thì thay toàn bộ markers bằng response.added
+ */
+export const getShopsDelta = async (bounds, previousBounds = null, version = null) => {
+    const params = {
+        north: bounds.north,
+        south: bounds.south,
+        east: bounds.east,
+        west: bounds.west,
+    };
+
+    if (previousBounds && version) {
+        params.prevNorth = previousBounds.north;
+        params.prevSouth = previousBounds.south;
+        params.prevEast = previousBounds.east;
+        params.prevWest = previousBounds.west;
+        params.version = version;
+    }
+
+    return await api.get('/shops/map/delta', { params });
+};
+
+/**
+ * Tìm shops theo từ khóa (tên, mô tả, tag) trong vùng bản đồ hiện tại
+ * Trả về PageResponse { content, page, size, totalElements, totalPages }
+ */
+export const searchShops = async (query, bounds, page = 0, size = 20) => {
+    const params = {
+        q: query,
+        north: bounds.north,
+        south: bounds.south,
+        east: bounds.east,
+        west: bounds.west,
+        page,
+        size,
+    };
+
+    return await api.get('/shops/search', { params });
+};
+
+/**
+ * Lấy shops gần vị trí, sắp theo khoảng cách
+ * Trang tiếp theo: truyền response.nextCursor của trang trước
+ */
+export const getNearbyShops = async (lat, lng, radius = 2000, cursor = null, limit = 20) => {
+    const params = { lat, lng, radius, limit };
+
+    if (cursor) {
+        params.cursor = cursor;
+    }
+
+    return await api.get('/shops/nearby', { params });
+};
+
+export const MARKERS_BINARY_TYPE = 'application/x-socialmap-markers';
+
+/**
+ * Như getShopsInMapView nhưng nhận payload nhị phân dạng cột (nhỏ hơn JSON nhiều lần)
+ * Kết quả đã decode có cùng shape với JSON
+ */
+export const getShopsInMapViewBinary = async (bounds, zoom, limit = null) => {
+    const params = {
+        north: bounds.north,
+        south: bounds.south,
+        east: bounds.east,
+        west: bounds.west,
+    };
+
+    if (zoom !== null && zoom !== undefined) {
+        params.zoom = zoom;
+    }
+
+    if (limit) {
+        params.limit = limit;
+    }
+
+    const buffer = await api.get('/shops/map', {
+        params,
+        responseType: 'arraybuffer',
+        headers: { Accept: MARKERS_BINARY_TYPE },
+    });
+    return decodeMarkers(buffer);
+};
+
+/**
+ * Decode payload application/x-socialmap-markers (xem MarkerBinaryEncoder ở backend)
+ * Trả về mảng object giống ShopClusterResponse JSON
+ */
+export const decodeMarkers = (buffer) => {
+    const view = new DataView(buffer);
+    const bytes = new Uint8Array(buffer);
+    const textDecoder = new TextDecoder();
+    let offset = 0;
+
+    const readVarint = () => {
+        let result = 0;
+        let shift = 0;
+        let b;
+        do {
+            b = bytes[offset++];
+            result += (b & 0x7f) * 2 ** shift;
+            shift += 7;
+        } while (b & 0x80);
+        return result;
+    };
+
+    const readFloat = () => {
+        const value = view.getFloat32(offset, true);
+        offset += 4;
+        return Number.isNaN(value) ? null : value;
+    };
+
+    const readUuid = () => {
+        let hex = '';
+        let empty = true;
+        for (let i = 0; i < 16; i++) {
+            const b = bytes[offset++];
+            if (b !== 0) empty = false;
+            hex += b.toString(16).padStart(2, '0');
+        }
+        if (empty) return null;
+        return `${hex.slice(0, 8)}-${hex.slice(8, 12)}-${hex.slice(12, 16)}-${hex.slice(16, 20)}-${hex.slice(20)}`;
+    };
+
+    if (bytes[0] !== 0x53 || bytes[1] !== 0x4d || bytes[2] !== 0x4b) {
+        throw new Error('Invalid marker payload');
+    }
+    if (bytes[3] !== 2) {
+        throw new Error(`Unsupported marker payload version ${bytes[3]}`);
+    }
+    offset = 4;
+
+    const n = readVarint();
+
+    const strings = [null];
+    const stringCount = readVarint();
+    for (let i = 0; i < stringCount; i++) {
+        const length = readVarint();
+        strings.push(textDecoder.decode(bytes.subarray(offset, offset + length)));
+        offset += length;
+    }
+
+    const markers = new Array(n);
+    for (let i = 0; i < n; i++) {
+        markers[i] = { type: bytes[offset++] === 1 ? 'cluster' : 'shop' };
+    }
+    for (let i = 0; i < n; i++) markers[i].latitude = readFloat();
+    for (let i = 0; i < n; i++) markers[i].longitude = readFloat();
+    for (let i = 0; i < n; i++) markers[i].count = readVarint();
+    for (let i = 0; i < n; i++) markers[i].id = readUuid();
+    for (const field of ['name', 'address', 'imageUrl', 'status', 'clusterId']) {
+        for (let i = 0; i < n; i++) markers[i][field] = strings[readVarint()];
+    }
+    for (let i = 0; i < n; i++) markers[i].rating = readFloat();
+    for (const field of ['north', 'south', 'east', 'west']) {
+        for (let i = 0; i < n; i++) markers[i][field] = readFloat();
+    }
+
+    return markers;
+};
+
+const MAX_LIVE_TILES = 64;
+
+const tileX = (lng, z) => Math.floor(((lng + 180) / 360) * 2 ** z);
+const tileY = (lat, z) => {
+    const clamped = Math.max(-85.05112878, Math.min(85.05112878, lat));
+    const rad = (clamped * Math.PI) / 180;
+    return Math.floor(((1 - Math.log(Math.tan(rad) + 1 / Math.cos(rad)) / Math.PI) / 2) * 2 ** z);
+};
+
+/**
+ * Nhận thay đổi shop realtime cho các tile trong viewport (/topic/map/{z}/{x}/{y})
+ * onUpdate nhận { type: 'upsert' | 'remove', id, ...marker }
+ * @returns hàm hủy subscribe, gọi khi viewport đổi; null nếu viewport quá nhiều tile (tiếp tục poll)
+ */
+export const subscribeToMapTiles = (bounds, zoom, onUpdate) => {
+    const z = Math.max(0, Math.min(20, Math.floor(zoom)));
+    const minX = tileX(bounds.west, z);
+    const maxX = tileX(bounds.east, z);
+    const minY = tileY(bounds.north, z);
+    const maxY = tileY(bounds.south, z);
+    if ((maxX - minX + 1) * (maxY - minY + 1) > MAX_LIVE_TILES) {
+        return null;
+    }
+
+    const destinations = [];
+    for (let x = minX; x <= maxX; x++) {
+        for (let y = minY; y <= maxY; y++) {
+            const destination = `/topic/map/${z}/${x}/${y}`;
+            webSocketService.subscribe(destination, onUpdate);
+            destinations.push(destination);
+        }
+    }
+
+    return () => destinations.forEach((destination) => webSocketService.unsubscribe(destination, onUpdate));
+};
+
 /**
  * POST method - dùng cho complex queries
  */
@@ -67,6 +340,32 @@ export const getShopsInBounds = async (boundingBoxRequest) => {
     return await api.post('/shops/map/bounds', boundingBoxRequest);
 };
 
+/**
+ * Lấy shops / clusters trong vùng người dùng vẽ
+ * coordinates: các đỉnh [lng, lat] (thứ tự GeoJSON), không cần lặp lại đỉnh đầu
+ */
+export const getShopsInPolygon = async (coordinates, zoom = null, limit = null, tagIds = null, openNow = false) => {
+    const body = { coordinates };
+
+    if (zoom !== null && zoom !== undefined) {
+        body.zoom = Math.round(zoom);
+    }
+
+    if (limit) {
+        body.limit = limit;
+    }
+
+    if (tagIds && tagIds.length > 0) {
+        body.tagIds = tagIds;
+    }
+
+    if (openNow) {
+        body.openNow = true;
+    }
+
+    return await api.post('/shops/map/polygon', body);
+};
+
 /**
  * Debounce utility function
  * Delays execution until user stops interacting
@@ -44,3 +44,23 @@ export const getShopById = async (shopId) => {
 export const getAllShops = async () => {
   return await api.get("/shops");
 };
+
+/**
+ * Import shops hàng loạt từ file CSV / GeoJSON (chạy nền trên server)
+ * @param {File} file - file .csv / .geojson
+ * @returns {Promise<Object>} ShopImportJobResponse (jobId, status, progress, ...)
+ */
+export const importShops = async (file) => {
+  const formData = new FormData();
+  formData.append("file", file);
+  return await api.post("/shops/import", formData);
+};
+
+/**
+ * Tiến độ của job import
+ * @param {string} jobId - UUID của job
+ * @returns {Promise<Object>} ShopImportJobResponse
+ */
+export const getImportJob = async (jobId) => {
+  return await api.get(`/shops/import/${jobId}`);
+};
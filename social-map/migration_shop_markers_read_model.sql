@@ -0,0 +1,155 @@
+-- Migration: shop_markers read model for map queries
+-- Description: Narrow copy of the columns the map needs (location, name, cover image, rating, status,
+--              tag ids, opening hours), maintained by triggers in the same transaction as the write.
+--              Map queries read it instead of the wide shops table + shop_images LATERAL + shop_tags join.
+
+-- =====================================================
+-- TABLE
+-- =====================================================
+CREATE TABLE IF NOT EXISTS shop_markers (
+    id           UUID PRIMARY KEY REFERENCES shops(id) ON DELETE CASCADE,
+    location     GEOGRAPHY(Point, 4326) NOT NULL,
+    latitude     DOUBLE PRECISION NOT NULL,
+    longitude    DOUBLE PRECISION NOT NULL,
+    name         VARCHAR(255) NOT NULL,
+    address      VARCHAR(255),
+    image_url    VARCHAR(1000), -- cover image: first shop_images row in insertion (ctid) order
+    rating       DOUBLE PRECISION,
+    status       VARCHAR(255) NOT NULL,
+    tag_ids      UUID[] NOT NULL DEFAULT '{}',
+    opening_time TIME,
+    closing_time TIME
+);
+
+-- =====================================================
+-- SYNC FUNCTION
+-- =====================================================
+-- Rebuild the marker row of one shop from shops / shop_images / shop_tags,
+-- delete it when the shop no longer exists
+CREATE OR REPLACE FUNCTION refresh_shop_marker(p_shop_id UUID)
+RETURNS VOID AS $$
+BEGIN
+    INSERT INTO shop_markers (id, location, latitude, longitude, name, address, image_url, rating, status,
+                              tag_ids, opening_time, closing_time)
+    SELECT s.id,
+           COALESCE(s.location, ST_SetSRID(ST_MakePoint(s.longitude, s.latitude), 4326)::geography),
+           s.latitude, s.longitude, s.name, s.address,
+           (SELECT i.image_url FROM shop_images i WHERE i.shop_id = s.id ORDER BY i.ctid LIMIT 1),
+           s.rating, s.status,
+           COALESCE((SELECT ARRAY_AGG(st.tag_id ORDER BY st.tag_id) FROM shop_tags st WHERE st.shop_id = s.id), '{}'),
+           s.opening_time, s.closing_time
+    FROM shops s
+    WHERE s.id = p_shop_id
+    ON CONFLICT (id) DO UPDATE SET
+        location = EXCLUDED.location,
+        latitude = EXCLUDED.latitude,
+        longitude = EXCLUDED.longitude,
+        name = EXCLUDED.name,
+        address = EXCLUDED.address,
+        image_url = EXCLUDED.image_url,
+        rating = EXCLUDED.rating,
+        status = EXCLUDED.status,
+        tag_ids = EXCLUDED.tag_ids,
+        opening_time = EXCLUDED.opening_time,
+        closing_time = EXCLUDED.closing_time;
+
+    IF NOT FOUND THEN
+        DELETE FROM shop_markers WHERE id = p_shop_id;
+    END IF;
+END;
+$$ LANGUAGE plpgsql;
+
+-- =====================================================
+-- TRIGGERS
+-- =====================================================
+-- shops: insert / update (delete cascades through the foreign key)
+CREATE OR REPLACE FUNCTION sync_shop_marker_from_shop()
+RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM refresh_shop_marker(NEW.id);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_sync_shop_marker ON shops;
+
+CREATE TRIGGER trg_sync_shop_marker
+AFTER INSERT OR UPDATE OF latitude, longitude, location, name, address, rating, status, opening_time, closing_time
+ON shops
+FOR EACH ROW
+EXECUTE FUNCTION sync_shop_marker_from_shop();
+
+-- shop_images / shop_tags: cover image and tag ids
+CREATE OR REPLACE FUNCTION sync_shop_marker_from_child()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        PERFORM refresh_shop_marker(OLD.shop_id);
+    END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') AND (TG_OP = 'INSERT' OR NEW.shop_id IS DISTINCT FROM OLD.shop_id) THEN
+        PERFORM refresh_shop_marker(NEW.shop_id);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_sync_shop_marker_images ON shop_images;
+
+CREATE TRIGGER trg_sync_shop_marker_images
+AFTER INSERT OR UPDATE OR DELETE ON shop_images
+FOR EACH ROW
+EXECUTE FUNCTION sync_shop_marker_from_child();
+
+DROP TRIGGER IF EXISTS trg_sync_shop_marker_tags ON shop_tags;
+
+CREATE TRIGGER trg_sync_shop_marker_tags
+AFTER INSERT OR UPDATE OR DELETE ON shop_tags
+FOR EACH ROW
+EXECUTE FUNCTION sync_shop_marker_from_child();
+
+-- =====================================================
+-- BACKFILL
+-- =====================================================
+INSERT INTO shop_markers (id, location, latitude, longitude, name, address, image_url, rating, status,
+                          tag_ids, opening_time, closing_time)
+SELECT s.id,
+       COALESCE(s.location, ST_SetSRID(ST_MakePoint(s.longitude, s.latitude), 4326)::geography),
+       s.latitude, s.longitude, s.name, s.address,
+       (SELECT i.image_url FROM shop_images i WHERE i.shop_id = s.id ORDER BY i.ctid LIMIT 1),
+       s.rating, s.status,
+       COALESCE((SELECT ARRAY_AGG(st.tag_id ORDER BY st.tag_id) FROM shop_tags st WHERE st.shop_id = s.id), '{}'),
+       s.opening_time, s.closing_time
+FROM shops s
+ON CONFLICT (id) DO NOTHING;
+
+-- Rows created before the cover image was chosen deterministically
+UPDATE shop_markers m
+SET image_url = (SELECT i.image_url FROM shop_images i WHERE i.shop_id = m.id ORDER BY i.ctid LIMIT 1)
+WHERE m.image_url IS DISTINCT FROM
+      (SELECT i.image_url FROM shop_images i WHERE i.shop_id = m.id ORDER BY i.ctid LIMIT 1);
+
+-- =====================================================
+-- INDEXES
+-- =====================================================
+-- Map queries only ever read OPEN shops: partial GiST index over just those rows
+-- (bounding box &&, KNN <-> and ST_DWithin)
+CREATE INDEX IF NOT EXISTS idx_shop_markers_location_open
+ON shop_markers USING GIST(location)
+WHERE status = 'OPEN';
+
+-- Tag facet / filter fallback (unnest over tag_ids, tag_ids && ARRAY[...])
+CREATE INDEX IF NOT EXISTS idx_shop_markers_tag_ids
+ON shop_markers USING GIN(tag_ids);
+
+ANALYZE shop_markers;
+
+-- =====================================================
+-- VERIFICATION
+-- =====================================================
+-- Should show an Index Scan / Bitmap Index Scan on idx_shop_markers_location_open
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT id, latitude, longitude, name, address, image_url, rating, status
+FROM shop_markers
+WHERE location && ST_MakeEnvelope(105.8, 21.0, 105.86, 21.03, 4326)
+  AND status = 'OPEN'
+LIMIT 1000;
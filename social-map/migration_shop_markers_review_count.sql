@@ -0,0 +1,69 @@
+-- Migration: review_count on the shop_markers read model
+-- Description: Ranked map queries (rankBy = REVIEW_COUNT) order by review count, so the read model
+--              carries it alongside rating. Requires migration_shop_markers_read_model.sql.
+
+-- =====================================================
+-- COLUMN
+-- =====================================================
+ALTER TABLE shop_markers ADD COLUMN IF NOT EXISTS review_count INTEGER NOT NULL DEFAULT 0;
+
+-- =====================================================
+-- SYNC FUNCTION
+-- =====================================================
+CREATE OR REPLACE FUNCTION refresh_shop_marker(p_shop_id UUID)
+RETURNS VOID AS $$
+BEGIN
+    INSERT INTO shop_markers (id, location, latitude, longitude, name, address, image_url, rating, review_count,
+                              status, tag_ids, opening_time, closing_time)
+    SELECT s.id,
+           COALESCE(s.location, ST_SetSRID(ST_MakePoint(s.longitude, s.latitude), 4326)::geography),
+           s.latitude, s.longitude, s.name, s.address,
+           (SELECT i.image_url FROM shop_images i WHERE i.shop_id = s.id ORDER BY i.ctid LIMIT 1),
+           s.rating, COALESCE(s.review_count, 0), s.status,
+           COALESCE((SELECT ARRAY_AGG(st.tag_id ORDER BY st.tag_id) FROM shop_tags st WHERE st.shop_id = s.id), '{}'),
+           s.opening_time, s.closing_time
+    FROM shops s
+    WHERE s.id = p_shop_id
+    ON CONFLICT (id) DO UPDATE SET
+        location = EXCLUDED.location,
+        latitude = EXCLUDED.latitude,
+        longitude = EXCLUDED.longitude,
+        name = EXCLUDED.name,
+        address = EXCLUDED.address,
+        image_url = EXCLUDED.image_url,
+        rating = EXCLUDED.rating,
+        review_count = EXCLUDED.review_count,
+        status = EXCLUDED.status,
+        tag_ids = EXCLUDED.tag_ids,
+        opening_time = EXCLUDED.opening_time,
+        closing_time = EXCLUDED.closing_time;
+
+    IF NOT FOUND THEN
+        DELETE FROM shop_markers WHERE id = p_shop_id;
+    END IF;
+END;
+$$ LANGUAGE plpgsql;
+
+-- =====================================================
+-- TRIGGER
+-- =====================================================
+-- Same trigger as before, now also firing on review_count changes
+DROP TRIGGER IF EXISTS trg_sync_shop_marker ON shops;
+
+CREATE TRIGGER trg_sync_shop_marker
+AFTER INSERT OR UPDATE OF latitude, longitude, location, name, address, rating, review_count, status,
+                          opening_time, closing_time
+ON shops
+FOR EACH ROW
+EXECUTE FUNCTION sync_shop_marker_from_shop();
+
+-- =====================================================
+-- BACKFILL
+-- =====================================================
+UPDATE shop_markers m
+SET review_count = COALESCE(s.review_count, 0)
+FROM shops s
+WHERE s.id = m.id
+  AND m.review_count IS DISTINCT FROM COALESCE(s.review_count, 0);
+
+ANALYZE shop_markers;
@@ -0,0 +1,72 @@
+-- Migration: updated_at on the shop_markers read model
+-- Description: The in-memory spatial index of every instance versions each marker by shops.updated_at,
+--              so a reload from the read model carries the same versions as the change messages
+--              exchanged over Redis (stale / out-of-order changes are dropped).
+--              Requires migration_shop_markers_read_model.sql and migration_shop_markers_review_count.sql.
+
+-- =====================================================
+-- COLUMN
+-- =====================================================
+ALTER TABLE shop_markers ADD COLUMN IF NOT EXISTS updated_at TIMESTAMP;
+
+-- =====================================================
+-- SYNC FUNCTION
+-- =====================================================
+CREATE OR REPLACE FUNCTION refresh_shop_marker(p_shop_id UUID)
+RETURNS VOID AS $$
+BEGIN
+    INSERT INTO shop_markers (id, location, latitude, longitude, name, address, image_url, rating, review_count,
+                              status, tag_ids, opening_time, closing_time, updated_at)
+    SELECT s.id,
+           COALESCE(s.location, ST_SetSRID(ST_MakePoint(s.longitude, s.latitude), 4326)::geography),
+           s.latitude, s.longitude, s.name, s.address,
+           (SELECT i.image_url FROM shop_images i WHERE i.shop_id = s.id ORDER BY i.ctid LIMIT 1),
+           s.rating, COALESCE(s.review_count, 0), s.status,
+           COALESCE((SELECT ARRAY_AGG(st.tag_id ORDER BY st.tag_id) FROM shop_tags st WHERE st.shop_id = s.id), '{}'),
+           s.opening_time, s.closing_time, s.updated_at
+    FROM shops s
+    WHERE s.id = p_shop_id
+    ON CONFLICT (id) DO UPDATE SET
+        location = EXCLUDED.location,
+        latitude = EXCLUDED.latitude,
+        longitude = EXCLUDED.longitude,
+        name = EXCLUDED.name,
+        address = EXCLUDED.address,
+        image_url = EXCLUDED.image_url,
+        rating = EXCLUDED.rating,
+        review_count = EXCLUDED.review_count,
+        status = EXCLUDED.status,
+        tag_ids = EXCLUDED.tag_ids,
+        opening_time = EXCLUDED.opening_time,
+        closing_time = EXCLUDED.closing_time,
+        updated_at = EXCLUDED.updated_at;
+
+    IF NOT FOUND THEN
+        DELETE FROM shop_markers WHERE id = p_shop_id;
+    END IF;
+END;
+$$ LANGUAGE plpgsql;
+
+-- =====================================================
+-- TRIGGER
+-- =====================================================
+-- Same trigger as before, now also firing when only updated_at changes (tag / image only edits)
+DROP TRIGGER IF EXISTS trg_sync_shop_marker ON shops;
+
+CREATE TRIGGER trg_sync_shop_marker
+AFTER INSERT OR UPDATE OF latitude, longitude, location, name, address, rating, review_count, status,
+                          opening_time, closing_time, updated_at
+ON shops
+FOR EACH ROW
+EXECUTE FUNCTION sync_shop_marker_from_shop();
+
+-- =====================================================
+-- BACKFILL
+-- =====================================================
+UPDATE shop_markers m
+SET updated_at = s.updated_at
+FROM shops s
+WHERE s.id = m.id
+  AND m.updated_at IS DISTINCT FROM s.updated_at;
+
+ANALYZE shop_markers;
@@ -0,0 +1,97 @@
+-- Migration: Full-text + trigram search for shops within a map area
+-- Description: tsvector (name, description, tag names) + pg_trgm on name, both GIN,
+--              so the search endpoint can combine text filter and bounding box in one indexed plan
+--              (BitmapAnd of the GIN index and idx_shops_location)
+
+-- =====================================================
+-- EXTENSIONS
+-- =====================================================
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE EXTENSION IF NOT EXISTS unaccent;
+
+-- unaccent() is only STABLE, wrap it so it can be used in indexes / generated values
+-- ("pho" matches "phở", "ca phe" matches "cà phê")
+CREATE OR REPLACE FUNCTION f_unaccent(text)
+RETURNS text AS $$
+    SELECT public.unaccent('public.unaccent', $1)
+$$ LANGUAGE sql IMMUTABLE PARALLEL SAFE STRICT;
+
+-- =====================================================
+-- SEARCH VECTOR COLUMN
+-- =====================================================
+-- Not mapped in the Shop entity, maintained by triggers below
+ALTER TABLE shops ADD COLUMN IF NOT EXISTS search_vector TSVECTOR;
+
+-- Name weighs more than tags, tags more than description
+CREATE OR REPLACE FUNCTION shop_search_vector(p_shop_id UUID, p_name TEXT, p_description TEXT)
+RETURNS TSVECTOR AS $$
+    SELECT setweight(to_tsvector('simple', f_unaccent(lower(coalesce(p_name, '')))), 'A')
+        || setweight(to_tsvector('simple', f_unaccent(lower(coalesce(
+               (SELECT string_agg(t.name, ' ') FROM shop_tags st JOIN tags t ON t.id = st.tag_id
+                WHERE st.shop_id = p_shop_id), '')))), 'B')
+        || setweight(to_tsvector('simple', f_unaccent(lower(coalesce(p_description, '')))), 'C')
+$$ LANGUAGE sql STABLE;
+
+-- Recompute when name / description change
+CREATE OR REPLACE FUNCTION update_shop_search_vector()
+RETURNS TRIGGER AS $$
+BEGIN
+    NEW.search_vector = shop_search_vector(NEW.id, NEW.name, NEW.description);
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_update_shop_search_vector ON shops;
+
+CREATE TRIGGER trg_update_shop_search_vector
+BEFORE INSERT OR UPDATE OF name, description ON shops
+FOR EACH ROW
+EXECUTE FUNCTION update_shop_search_vector();
+
+-- Recompute when tags are attached / detached
+CREATE OR REPLACE FUNCTION refresh_shop_search_vector_from_tags()
+RETURNS TRIGGER AS $$
+DECLARE
+    v_shop_id UUID;
+BEGIN
+    v_shop_id = CASE WHEN TG_OP = 'DELETE' THEN OLD.shop_id ELSE NEW.shop_id END;
+    UPDATE shops SET search_vector = shop_search_vector(id, name, description)
+    WHERE id = v_shop_id;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_refresh_shop_search_vector ON shop_tags;
+
+CREATE TRIGGER trg_refresh_shop_search_vector
+AFTER INSERT OR UPDATE OR DELETE ON shop_tags
+FOR EACH ROW
+EXECUTE FUNCTION refresh_shop_search_vector_from_tags();
+
+-- Backfill existing shops
+UPDATE shops SET search_vector = shop_search_vector(id, name, description);
+
+-- =====================================================
+-- INDEXES (GIN)
+-- =====================================================
+CREATE INDEX IF NOT EXISTS idx_shops_search_vector
+ON shops USING GIN(search_vector);
+
+-- Fuzzy / partial name matching (similarity, %)
+CREATE INDEX IF NOT EXISTS idx_shops_name_trgm
+ON shops USING GIN(f_unaccent(lower(name)) gin_trgm_ops);
+
+ANALYZE shops;
+
+-- =====================================================
+-- VERIFICATION
+-- =====================================================
+-- Should show a BitmapAnd / BitmapOr over idx_shops_search_vector, idx_shops_name_trgm and idx_shops_location
+EXPLAIN ANALYZE
+SELECT id, name
+FROM shops
+WHERE location && ST_MakeEnvelope(105.8, 21.0, 105.86, 21.03, 4326)
+  AND status = 'OPEN'
+  AND (search_vector @@ websearch_to_tsquery('simple', f_unaccent(lower('cafe')))
+       OR f_unaccent(lower(name)) % f_unaccent(lower('cafe')))
+LIMIT 20;
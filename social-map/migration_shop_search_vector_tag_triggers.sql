@@ -0,0 +1,67 @@
+-- Migration: Keep shops.search_vector in sync with tag changes
+-- Description: search_vector includes tag names (see migration_shop_search_indexes.sql), so it must be
+--              recomputed when a tag is renamed and when a shop_tags row moves from one shop to another.
+--              Run after migration_shop_search_indexes.sql
+
+-- =====================================================
+-- SHOP_TAGS: refresh both old and new shop
+-- =====================================================
+-- INSERT refreshes NEW.shop_id, DELETE refreshes OLD.shop_id,
+-- UPDATE refreshes both (shop_id or tag_id may have changed)
+CREATE OR REPLACE FUNCTION refresh_shop_search_vector_from_tags()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        UPDATE shops SET search_vector = shop_search_vector(id, name, description)
+        WHERE id = OLD.shop_id;
+    END IF;
+    IF TG_OP = 'INSERT' OR (TG_OP = 'UPDATE' AND NEW.shop_id IS DISTINCT FROM OLD.shop_id) THEN
+        UPDATE shops SET search_vector = shop_search_vector(id, name, description)
+        WHERE id = NEW.shop_id;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_refresh_shop_search_vector ON shop_tags;
+
+CREATE TRIGGER trg_refresh_shop_search_vector
+AFTER INSERT OR UPDATE OR DELETE ON shop_tags
+FOR EACH ROW
+EXECUTE FUNCTION refresh_shop_search_vector_from_tags();
+
+-- =====================================================
+-- TAGS: refresh every shop carrying a renamed tag
+-- =====================================================
+-- Deleting a tag goes through shop_tags (FK), which is covered by the trigger above
+CREATE OR REPLACE FUNCTION refresh_shop_search_vector_from_tag_name()
+RETURNS TRIGGER AS $$
+BEGIN
+    UPDATE shops s SET search_vector = shop_search_vector(s.id, s.name, s.description)
+    FROM shop_tags st
+    WHERE st.tag_id = NEW.id AND st.shop_id = s.id;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_refresh_shop_search_vector_on_tag_rename ON tags;
+
+CREATE TRIGGER trg_refresh_shop_search_vector_on_tag_rename
+AFTER UPDATE OF name ON tags
+FOR EACH ROW
+WHEN (OLD.name IS DISTINCT FROM NEW.name)
+EXECUTE FUNCTION refresh_shop_search_vector_from_tag_name();
+
+-- Backfill: tags renamed before this migration left stale vectors
+UPDATE shops SET search_vector = shop_search_vector(id, name, description);
+
+ANALYZE shops;
+
+-- =====================================================
+-- VERIFICATION
+-- =====================================================
+-- Should list both triggers
+SELECT event_object_table, trigger_name, event_manipulation
+FROM information_schema.triggers
+WHERE trigger_name IN ('trg_refresh_shop_search_vector', 'trg_refresh_shop_search_vector_on_tag_rename')
+ORDER BY event_object_table, event_manipulation;
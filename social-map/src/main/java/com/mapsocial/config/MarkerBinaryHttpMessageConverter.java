@@ -0,0 +1,63 @@
+package com.mapsocial.config;
+
+import com.mapsocial.dto.response.ShopClusterResponse;
+import com.mapsocial.service.map.MarkerBinaryEncoder;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * Ghi List<ShopClusterResponse> dưới dạng payload nhị phân dạng cột (MarkerBinaryEncoder)
+ * Client chọn định dạng này bằng header Accept: application/x-socialmap-markers,
+ * mọi endpoint bản đồ trả về List<ShopClusterResponse> đều dùng được mà không cần sửa controller
+ */
+public class MarkerBinaryHttpMessageConverter extends AbstractGenericHttpMessageConverter<List<ShopClusterResponse>> {
+
+    public MarkerBinaryHttpMessageConverter() {
+        super(MediaType.parseMediaType(MarkerBinaryEncoder.MEDIA_TYPE));
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return List.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Type type, @Nullable Class<?> contextClass, @Nullable MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canWrite(@Nullable Type type, Class<?> clazz, @Nullable MediaType mediaType) {
+        // Chỉ nhận List<ShopClusterResponse>, không đụng tới các List khác
+        return type instanceof ParameterizedType parameterized
+                && parameterized.getRawType() == List.class
+                && parameterized.getActualTypeArguments()[0] == ShopClusterResponse.class
+                && canWrite(mediaType);
+    }
+
+    @Override
+    protected void writeInternal(List<ShopClusterResponse> markers, @Nullable Type type, HttpOutputMessage outputMessage)
+            throws IOException {
+        outputMessage.getBody().write(MarkerBinaryEncoder.encode(markers));
+    }
+
+    @Override
+    public List<ShopClusterResponse> read(Type type, @Nullable Class<?> contextClass, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Marker binary format is write-only", inputMessage);
+    }
+
+    @Override
+    protected List<ShopClusterResponse> readInternal(Class<? extends List<ShopClusterResponse>> clazz,
+                                                     HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Marker binary format is write-only", inputMessage);
+    }
+}
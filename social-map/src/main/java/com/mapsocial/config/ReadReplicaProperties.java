@@ -0,0 +1,33 @@
+package com.mapsocial.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cấu hình read replicas (social-map.datasource.*)
+ * Không khai báo replica nào -> mọi query vẫn đi vào spring.datasource như cũ
+ */
+@Data
+@ConfigurationProperties(prefix = "social-map.datasource")
+public class ReadReplicaProperties {
+
+    private List<Replica> replicas = new ArrayList<>();
+
+    // Replica trễ hơn mức này so với primary thì tạm thời không nhận query
+    private Duration maxLag = Duration.ofSeconds(10);
+
+    // Chu kỳ kiểm tra độ trễ / kết nối của các replica
+    private Duration lagCheckInterval = Duration.ofSeconds(5);
+
+    @Data
+    public static class Replica {
+        private String url;
+        private String username;
+        private String password;
+        private int maximumPoolSize = 10;
+    }
+}
@@ -0,0 +1,91 @@
+package com.mapsocial.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * DataSource cho các connection read-only (LazyConnectionDataSourceProxy.setReadOnlyDataSource)
+ * Chia đều (round robin) cho các replica đang khỏe và không trễ quá maxLag,
+ * không còn replica nào dùng được thì fallback về primary.
+ *
+ * Độ trễ đo trên chính replica: đã replay hết WAL nhận được -> 0,
+ * ngược lại là thời gian từ transaction cuối cùng được replay.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+
+    private static final String PRIMARY = "primary";
+    private static final String LAG_QUERY =
+            "SELECT CASE WHEN NOT pg_is_in_recovery() THEN 0 " +
+            "WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+            "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0) END";
+
+    private final Map<String, HikariDataSource> replicas;
+    private final Duration maxLag;
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile List<String> available;
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, HikariDataSource> replicas, Duration maxLag) {
+        this.replicas = replicas;
+        this.maxLag = maxLag;
+        this.available = List.copyOf(replicas.keySet());
+
+        Map<Object, Object> targets = new HashMap<>(replicas);
+        targets.put(PRIMARY, primary);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        List<String> candidates = available;
+        if (candidates.isEmpty()) {
+            return PRIMARY;
+        }
+        return candidates.get(Math.floorMod(next.getAndIncrement(), candidates.size()));
+    }
+
+    /**
+     * Cập nhật danh sách replica dùng được theo độ trễ hiện tại
+     */
+    @Scheduled(fixedDelayString = "${social-map.datasource.lag-check-interval:5s}")
+    public void checkReplicaLag() {
+        List<String> healthy = new ArrayList<>();
+        for (Map.Entry<String, HikariDataSource> replica : replicas.entrySet()) {
+            try (Connection connection = replica.getValue().getConnection();
+                 Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery(LAG_QUERY)) {
+                rs.next();
+                double lagSeconds = rs.getDouble(1);
+                if (lagSeconds * 1000 <= maxLag.toMillis()) {
+                    healthy.add(replica.getKey());
+                } else {
+                    log.warn("Replica {} is {}s behind primary, routing reads elsewhere", replica.getKey(), lagSeconds);
+                }
+            } catch (Exception e) {
+                log.warn("Replica {} is unavailable: {}", replica.getKey(), e.getMessage());
+            }
+        }
+
+        if (healthy.size() != available.size()) {
+            log.info("Read replicas available: {}/{}", healthy.size(), replicas.size());
+        }
+        available = List.copyOf(healthy);
+    }
+
+    @Override
+    public void destroy() {
+        replicas.values().forEach(HikariDataSource::close);
+    }
+}
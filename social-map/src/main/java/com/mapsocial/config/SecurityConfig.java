@@ -4,6 +4,7 @@ import com.mapsocial.service.impl.CustomUserDetailsService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
@@ -79,6 +80,9 @@ public class SecurityConfig {
                 .requestMatchers("/app/**").permitAll() // Cho phép gửi message STOMP
                 .requestMatchers("/topic/**").permitAll() // Cho phép subscribe
 
+                // Vector tiles của bản đồ - public để CDN / browser cache được
+                .requestMatchers(HttpMethod.GET, "/api/shops/tiles/**").permitAll()
+
                 // Seller requests - require authentication (USER role)
                 .requestMatchers("/api/seller-requests/**").authenticated()
 
@@ -0,0 +1,17 @@
+package com.mapsocial.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class WebMvcConfig implements WebMvcConfigurer {
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        // Thêm vào cuối: JSON vẫn là mặc định, binary chỉ dùng khi client yêu cầu qua Accept
+        converters.add(new MarkerBinaryHttpMessageConverter());
+    }
+}
@@ -5,11 +5,14 @@ import com.mapsocial.dto.request.menu.UpdateMenuRequest;
 import com.mapsocial.dto.response.menu.MenuResponse;
 import com.mapsocial.service.MenuService;
 import com.mapsocial.service.impl.CustomUserDetailsService.UserPrincipal;
+import com.mapsocial.service.version.DataVersions;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.UUID;
 
@@ -19,6 +22,7 @@ import java.util.UUID;
 public class MenuController {
 
     private final MenuService menuService;
+    private final DataVersions dataVersions;
 
     @PostMapping()
     public ResponseEntity<MenuResponse> createMenu(
@@ -51,7 +55,15 @@ public class MenuController {
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<MenuResponse> getMenuById(@PathVariable UUID id) {
-        return ResponseEntity.ok(menuService.getMenuById(id));
+    public ResponseEntity<MenuResponse> getMenuById(@PathVariable UUID id, WebRequest webRequest) {
+        // Menu chưa đổi so với ETag của client -> 304, không query
+        String eTag = dataVersions.menuETag(id);
+        if (eTag != null && webRequest.checkNotModified(eTag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache())
+                .body(menuService.getMenuById(id));
     }
 }
@@ -1,25 +1,54 @@
 package com.mapsocial.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mapsocial.dto.request.BoundingBoxRequest;
+import com.mapsocial.dto.request.PolygonRequest;
+import com.mapsocial.dto.request.RouteRequest;
 import com.mapsocial.dto.request.shop.CreateShopRequest;
 import com.mapsocial.dto.request.shop.UpdateShopRequest;
+import com.mapsocial.dto.response.HeatmapCellResponse;
+import com.mapsocial.dto.response.NearbyShopsResponse;
 import com.mapsocial.dto.response.ShopClusterResponse;
+import com.mapsocial.dto.response.ShopMapDeltaResponse;
+import com.mapsocial.dto.response.shop.ShopImportJobResponse;
 import com.mapsocial.dto.response.shop.ShopResponse;
+import com.mapsocial.dto.response.shop.TagFacetResponse;
+import com.mapsocial.enums.ShopRankBy;
+import com.mapsocial.service.ShopImportService;
 import com.mapsocial.service.ShopMapService;
 import com.mapsocial.service.ShopService;
 import com.mapsocial.service.impl.CustomUserDetailsService.UserPrincipal;
+import com.mapsocial.service.version.DataVersions;
+import com.mapsocial.util.PageResponse;
+import com.mapsocial.util.Polyline;
+import com.mapsocial.util.TileMath;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalTime;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api/shops")
@@ -29,14 +58,30 @@ public class ShopController {
 
     private final ShopService shopService;
     private final ShopMapService shopMapService;
+    private final ShopImportService shopImportService;
+    private final DataVersions dataVersions;
+    private final ObjectMapper objectMapper;
+
+    private static final String MVT_MEDIA_TYPE = "application/vnd.mapbox-vector-tile";
+    private static final double MAX_NEARBY_RADIUS_METERS = 50000;
+    private static final int MAX_NEARBY_LIMIT = 50;
+    private static final int MAX_SEARCH_QUERY_LENGTH = 100;
+    private static final int MAX_SEARCH_PAGE_SIZE = 50;
+    private static final int MAX_CLUSTER_CHILDREN_PAGE_SIZE = 200;
+    private static final int MAX_ROUTE_POINTS = 10000;
 
     // ==================== MAP VIEW APIs ====================
 
     @GetMapping("/map")
     @Operation(summary = "Lấy shops/clusters trong vùng bản đồ (Bounding Box)",
-               description = "Tự động quyết định trả về clusters hoặc individual shops dựa vào zoom level và số lượng")
+               description = "Tự động quyết định trả về clusters hoặc individual shops dựa vào zoom level và số lượng. "
+                       + "tagIds: chỉ lấy shops có ít nhất một trong các tags. "
+                       + "openNow / openAt (HH:mm): chỉ lấy shops đang mở cửa / mở cửa lúc openAt. "
+                       + "rankBy (RATING / REVIEW_COUNT) + limit: trả về limit shops tốt nhất, dàn đều trên viewport. "
+                       + "Có ETag: gửi lại bằng If-None-Match, dữ liệu chưa đổi thì nhận 304")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Thành công"),
+            @ApiResponse(responseCode = "304", description = "Dữ liệu chưa thay đổi so với ETag của client"),
             @ApiResponse(responseCode = "400", description = "Tọa độ không hợp lệ")
     })
     public ResponseEntity<List<ShopClusterResponse>> getShopsInMapView(
@@ -45,7 +90,12 @@ public class ShopController {
             @RequestParam Double east,
             @RequestParam Double west,
             @RequestParam(required = false) Integer zoom,
-            @RequestParam(required = false) Integer limit) {
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) List<UUID> tagIds,
+            @RequestParam(required = false) Boolean openNow,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "HH:mm") LocalTime openAt,
+            @RequestParam(required = false) ShopRankBy rankBy,
+            WebRequest webRequest) {
 
         BoundingBoxRequest request = BoundingBoxRequest.builder()
                 .north(north)
@@ -54,10 +104,71 @@ public class ShopController {
                 .west(west)
                 .zoom(zoom)
                 .limit(limit)
+                .tagIds(tagIds)
+                .openNow(openNow)
+                .openAt(openAt)
+                .rankBy(rankBy)
                 .build();
 
-        List<ShopClusterResponse> result = shopMapService.getShopsInBoundingBox(request);
-        return ResponseEntity.ok(result);
+        return conditional(webRequest, mapETag("map", request, webRequest),
+                () -> shopMapService.getShopsInBoundingBox(request));
+    }
+
+    @GetMapping("/map/facets")
+    @Operation(summary = "Đếm shops theo tag trong vùng bản đồ",
+               description = "Dùng để hiển thị bộ lọc tag kèm số lượng, lọc bằng tham số tagIds của /map")
+    public ResponseEntity<List<TagFacetResponse>> getTagFacets(
+            @RequestParam Double north,
+            @RequestParam Double south,
+            @RequestParam Double east,
+            @RequestParam Double west) {
+
+        BoundingBoxRequest request = BoundingBoxRequest.builder()
+                .north(north)
+                .south(south)
+                .east(east)
+                .west(west)
+                .build();
+
+        return ResponseEntity.ok(shopMapService.getTagFacets(request));
+    }
+
+    @GetMapping("/heatmap")
+    @Operation(summary = "Mật độ shops trong vùng bản đồ",
+               description = "Số shops theo ô geohash, kích thước ô theo zoom level. Đọc từ bộ đếm trong bộ nhớ")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Thành công"),
+            @ApiResponse(responseCode = "400", description = "Tham số không hợp lệ"),
+            @ApiResponse(responseCode = "503", description = "Bộ đếm đang được load, thử lại sau")
+    })
+    public ResponseEntity<List<HeatmapCellResponse>> getHeatmap(
+            @RequestParam Double north,
+            @RequestParam Double south,
+            @RequestParam Double east,
+            @RequestParam Double west,
+            @RequestParam(required = false) Integer zoom) {
+
+        if (north < south || north > 90 || south < -90 || east < west || east > 180 || west < -180
+                || (zoom != null && (zoom < 0 || zoom > TileMath.MAX_ZOOM))) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        BoundingBoxRequest request = BoundingBoxRequest.builder()
+                .north(north)
+                .south(south)
+                .east(east)
+                .west(west)
+                .zoom(zoom)
+                .build();
+
+        try {
+            return ResponseEntity.ok(shopMapService.getHeatmap(request));
+        } catch (IllegalStateException e) {
+            // Không fallback sang quét bảng shops, client thử lại khi index đã load
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", "5")
+                    .build();
+        }
     }
 
     @PostMapping("/map/bounds")
@@ -73,10 +184,56 @@ public class ShopController {
         return ResponseEntity.ok(result);
     }
 
+    @PostMapping("/map/polygon")
+    @Operation(summary = "Lấy shops/clusters trong vùng người dùng vẽ (polygon)",
+               description = "Polygon được đơn giản hóa theo zoom rồi lọc trên index trong bộ nhớ (hoặc PostGIS). "
+                       + "Quyết định clusters / individual shops giống /map; hỗ trợ tagIds, openNow / openAt")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Thành công"),
+            @ApiResponse(responseCode = "400", description = "Polygon không hợp lệ")
+    })
+    public ResponseEntity<List<ShopClusterResponse>> getShopsInPolygon(
+            @Valid @RequestBody PolygonRequest request) {
+        try {
+            return ResponseEntity.ok(shopMapService.getShopsInPolygon(request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @GetMapping("/map/individual")
     @Operation(summary = "Lấy individual shops (không cluster)",
-               description = "Dùng cho zoom level cao, luôn trả về individual shops")
+               description = "Dùng cho zoom level cao, luôn trả về individual shops. "
+                       + "rankBy (RATING / REVIEW_COUNT) + limit: trả về limit shops tốt nhất, dàn đều trên viewport")
     public ResponseEntity<List<ShopClusterResponse>> getIndividualShops(
+            @RequestParam Double north,
+            @RequestParam Double south,
+            @RequestParam Double east,
+            @RequestParam Double west,
+            @RequestParam(required = false) Integer zoom,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) ShopRankBy rankBy,
+            WebRequest webRequest) {
+
+        BoundingBoxRequest request = BoundingBoxRequest.builder()
+                .north(north)
+                .south(south)
+                .east(east)
+                .west(west)
+                .zoom(zoom)
+                .limit(limit)
+                .rankBy(rankBy)
+                .build();
+
+        return conditional(webRequest, mapETag("individual", request, webRequest),
+                () -> shopMapService.getIndividualShopsInBoundingBox(request));
+    }
+
+    @GetMapping(value = "/map/individual", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Stream individual shops dạng NDJSON",
+               description = "Chọn bằng header Accept: application/x-ndjson. Mỗi dòng là một shop, "
+                       + "ghi ra ngay khi đọc được nên dùng được cho vùng lớn không giới hạn số lượng")
+    public ResponseEntity<StreamingResponseBody> streamIndividualShops(
             @RequestParam Double north,
             @RequestParam Double south,
             @RequestParam Double east,
@@ -91,30 +248,233 @@ public class ShopController {
                 .limit(limit)
                 .build();
 
-        List<ShopClusterResponse> result = shopMapService.getIndividualShopsInBoundingBox(request);
-        return ResponseEntity.ok(result);
+        return ndjson(writer -> shopMapService.streamIndividualShopsInBoundingBox(request, writer::accept));
+    }
+
+    @PostMapping(value = "/route", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Stream shops dọc theo tuyến đường (corridor query)",
+               description = "Nhận tuyến đường dạng encoded polyline và độ rộng hành lang (mét), trả về NDJSON các shops "
+                       + "cách tuyến không quá width, theo thứ tự dọc tuyến (routeOffset tăng dần). "
+                       + "Thay cho việc gọi nhiều bbox query dọc đường")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Thành công"),
+            @ApiResponse(responseCode = "400", description = "Polyline hoặc width không hợp lệ")
+    })
+    public ResponseEntity<StreamingResponseBody> streamShopsAlongRoute(
+            @Valid @RequestBody RouteRequest request) {
+
+        // Decode trước khi stream: lỗi phải thành 400, không phải response 200 bị cắt giữa chừng
+        List<double[]> route;
+        try {
+            route = Polyline.decode(request.getPolyline());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (route.size() < 2 || route.size() > MAX_ROUTE_POINTS) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        return ndjson(writer -> shopMapService.streamShopsAlongRoute(
+                route, request.getWidth(), request.getLimit(), writer::accept));
     }
 
     @GetMapping("/map/clusters")
     @Operation(summary = "Lấy clusters (luôn cluster)",
-               description = "Dùng cho zoom level thấp, luôn trả về clusters")
+               description = "Dùng cho zoom level thấp, luôn trả về clusters. Có zoom thì đọc từ cluster pyramid")
     public ResponseEntity<List<ShopClusterResponse>> getClusters(
             @RequestParam Double north,
             @RequestParam Double south,
             @RequestParam Double east,
-            @RequestParam Double west) {
+            @RequestParam Double west,
+            @RequestParam(required = false) Integer zoom,
+            WebRequest webRequest) {
+
+        BoundingBoxRequest request = BoundingBoxRequest.builder()
+                .north(north)
+                .south(south)
+                .east(east)
+                .west(west)
+                .zoom(zoom)
+                .build();
+
+        return conditional(webRequest, mapETag("clusters", request, webRequest),
+                () -> shopMapService.getClustersInBoundingBox(request));
+    }
+
+    @GetMapping("/map/clusters/{clusterId}/children")
+    @Operation(summary = "Mở một cluster",
+               description = "Trả về các cluster con ở zoom level kế tiếp, hoặc các shops khi cluster con đã ở zoom "
+                       + "không cluster nữa, phân trang. tagIds / openNow / openAt phải giống request đã trả về cluster")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Thành công"),
+            @ApiResponse(responseCode = "400", description = "Cluster id hoặc phân trang không hợp lệ")
+    })
+    public ResponseEntity<PageResponse<ShopClusterResponse>> getClusterChildren(
+            @PathVariable String clusterId,
+            @RequestParam(required = false) List<UUID> tagIds,
+            @RequestParam(required = false) Boolean openNow,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "HH:mm") LocalTime openAt,
+            @RequestParam(defaultValue = "0") Integer page,
+            @RequestParam(defaultValue = "50") Integer size) {
+
+        if (page < 0 || size <= 0 || size > MAX_CLUSTER_CHILDREN_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        BoundingBoxRequest filters = BoundingBoxRequest.builder()
+                .tagIds(tagIds)
+                .openNow(openNow)
+                .openAt(openAt)
+                .build();
+
+        try {
+            return ResponseEntity.ok(shopMapService.getClusterChildren(clusterId, filters, page, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/map/delta")
+    @Operation(summary = "Lấy thay đổi markers khi pan bản đồ",
+               description = "Client gửi viewport trước và version đã nhận, server chỉ trả về shops vào / rời viewport "
+                       + "và shops thay đổi kể từ version đó. reset = true nghĩa là client phải thay toàn bộ markers; "
+                       + "khi đó added giống kết quả /map với cùng zoom / limit (có thể là clusters). "
+                       + "version chỉ có nghĩa trên instance đã phát ra nó: khi chạy nhiều instance, load balancer phải "
+                       + "định tuyến sticky (cùng client -> cùng instance), nếu không mọi request delta sẽ nhận reset = true")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Thành công"),
+            @ApiResponse(responseCode = "400", description = "Viewport trước không đầy đủ")
+    })
+    public ResponseEntity<ShopMapDeltaResponse> getShopsDelta(
+            @RequestParam Double north,
+            @RequestParam Double south,
+            @RequestParam Double east,
+            @RequestParam Double west,
+            @RequestParam(required = false) Integer zoom,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) Double prevNorth,
+            @RequestParam(required = false) Double prevSouth,
+            @RequestParam(required = false) Double prevEast,
+            @RequestParam(required = false) Double prevWest,
+            @RequestParam(required = false) String version) {
 
         BoundingBoxRequest request = BoundingBoxRequest.builder()
                 .north(north)
                 .south(south)
                 .east(east)
                 .west(west)
+                .zoom(zoom)
+                .limit(limit)
                 .build();
 
-        List<ShopClusterResponse> result = shopMapService.getClustersInBoundingBox(request);
+        BoundingBoxRequest previous = null;
+        if (prevNorth != null || prevSouth != null || prevEast != null || prevWest != null) {
+            if (prevNorth == null || prevSouth == null || prevEast == null || prevWest == null) {
+                return ResponseEntity.badRequest().build();
+            }
+            previous = BoundingBoxRequest.builder()
+                    .north(prevNorth)
+                    .south(prevSouth)
+                    .east(prevEast)
+                    .west(prevWest)
+                    .build();
+        }
+
+        ShopMapDeltaResponse result = shopMapService.getShopsDelta(request, previous, version);
         return ResponseEntity.ok(result);
     }
 
+    @GetMapping(value = "/tiles/{z}/{x}/{y}.mvt", produces = MVT_MEDIA_TYPE)
+    @Operation(summary = "Lấy vector tile (MVT) chứa shops/clusters",
+               description = "Tile theo chuẩn XYZ, cache được bởi CDN / browser. Zoom < 14 trả về clusters")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Thành công"),
+            @ApiResponse(responseCode = "400", description = "Tọa độ tile không hợp lệ")
+    })
+    public ResponseEntity<byte[]> getShopTile(
+            @PathVariable int z,
+            @PathVariable int x,
+            @PathVariable int y,
+            WebRequest webRequest) {
+
+        if (!TileMath.isValidTile(z, x, y)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        // Hết max-age thì CDN / browser revalidate bằng If-None-Match, tile chưa đổi thì không phải render lại
+        String eTag = dataVersions.tileETag(z, x, y);
+        if (eTag != null && webRequest.checkNotModified(eTag)) {
+            return null;
+        }
+
+        byte[] tile = shopMapService.getShopTile(z, x, y);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(MVT_MEDIA_TYPE))
+                .cacheControl(CacheControl.maxAge(Duration.ofSeconds(60)).cachePublic())
+                .eTag(eTag)
+                .body(tile);
+    }
+
+    @GetMapping("/search")
+    @Operation(summary = "Tìm shops theo từ khóa trong vùng bản đồ",
+               description = "Tìm theo tên, mô tả và tag (không phân biệt dấu, chấp nhận gõ sai nhẹ), "
+                       + "chỉ trong bounding box hiện tại, xếp theo độ liên quan và phân trang")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Thành công"),
+            @ApiResponse(responseCode = "400", description = "Từ khóa hoặc phân trang không hợp lệ")
+    })
+    public ResponseEntity<PageResponse<ShopClusterResponse>> searchShops(
+            @RequestParam String q,
+            @RequestParam Double north,
+            @RequestParam Double south,
+            @RequestParam Double east,
+            @RequestParam Double west,
+            @RequestParam(defaultValue = "0") Integer page,
+            @RequestParam(defaultValue = "20") Integer size) {
+
+        if (q.isBlank() || q.length() > MAX_SEARCH_QUERY_LENGTH
+                || page < 0 || size <= 0 || size > MAX_SEARCH_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        BoundingBoxRequest request = BoundingBoxRequest.builder()
+                .north(north)
+                .south(south)
+                .east(east)
+                .west(west)
+                .build();
+
+        return ResponseEntity.ok(shopMapService.searchShopsInBoundingBox(request, q, page, size));
+    }
+
+    @GetMapping("/nearby")
+    @Operation(summary = "Lấy shops gần vị trí nhất",
+               description = "Sắp theo khoảng cách tăng dần (KNN index). Trang tiếp theo lấy bằng nextCursor của trang trước")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Thành công"),
+            @ApiResponse(responseCode = "400", description = "Tọa độ, bán kính hoặc cursor không hợp lệ")
+    })
+    public ResponseEntity<NearbyShopsResponse> getNearbyShops(
+            @RequestParam Double lat,
+            @RequestParam Double lng,
+            @RequestParam(defaultValue = "2000") Double radius,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") Integer limit) {
+
+        if (lat < -90 || lat > 90 || lng < -180 || lng > 180
+                || radius <= 0 || radius > MAX_NEARBY_RADIUS_METERS
+                || limit <= 0 || limit > MAX_NEARBY_LIMIT) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        try {
+            return ResponseEntity.ok(shopMapService.getNearbyShops(lat, lng, radius, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            // Cursor bị sửa / không đúng định dạng
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     // ==================== CRUD APIs ====================
 
     @PostMapping()
@@ -145,13 +505,109 @@ public class ShopController {
         return ResponseEntity.noContent().build();
     }
 
+    @PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(summary = "Import shops hàng loạt từ file CSV / GeoJSON",
+               description = "Chạy nền, theo dõi tiến độ bằng GET /api/shops/import/{jobId}. " +
+                             "Cột: name, latitude, longitude, address, description, phone_number, " +
+                             "opening_time, closing_time, status, tags, image_urls")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Đã nhận file, job đang chờ / đang chạy"),
+            @ApiResponse(responseCode = "400", description = "File rỗng hoặc định dạng không hỗ trợ"),
+            @ApiResponse(responseCode = "403", description = "Chỉ người bán (SELLER) hoặc admin mới được import")
+    })
+    public ResponseEntity<ShopImportJobResponse> importShops(
+            @AuthenticationPrincipal UserPrincipal userPrincipal,
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(required = false) String format) {
+
+        if (file.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        UUID currentUserId = userPrincipal.getUser().getId();
+        try {
+            return ResponseEntity.accepted().body(shopImportService.startImport(currentUserId, file, format));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (AccessDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+    }
+
+    @GetMapping("/import/{jobId}")
+    @Operation(summary = "Tiến độ / kết quả của job import shops")
+    public ResponseEntity<ShopImportJobResponse> getImportJob(
+            @AuthenticationPrincipal UserPrincipal userPrincipal,
+            @PathVariable UUID jobId) {
+        UUID currentUserId = userPrincipal.getUser().getId();
+        return ResponseEntity.ok(shopImportService.getImportJob(currentUserId, jobId));
+    }
+
     @GetMapping("/{shopId}")
-    public ResponseEntity<ShopResponse> getShopById(@PathVariable UUID shopId) {
-        return ResponseEntity.ok(shopService.getShopById(shopId));
+    public ResponseEntity<ShopResponse> getShopById(@PathVariable UUID shopId, WebRequest webRequest) {
+        return conditional(webRequest, dataVersions.shopETag(shopId), () -> shopService.getShopById(shopId));
     }
 
     @GetMapping
-    public ResponseEntity<List<ShopResponse>> getAllShops() {
-        return ResponseEntity.ok(shopService.getAllShops());
+    public ResponseEntity<List<ShopResponse>> getAllShops(WebRequest webRequest) {
+        return conditional(webRequest, dataVersions.allShopsETag(), shopService::getAllShops);
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Stream toàn bộ shops dạng NDJSON",
+               description = "Chọn bằng header Accept: application/x-ndjson, dùng cho export")
+    public ResponseEntity<StreamingResponseBody> streamAllShops() {
+        return ndjson(writer -> shopService.streamAllShops(writer::accept));
+    }
+
+    /**
+     * ETag cho response bản đồ; null khi kết quả phụ thuộc giờ hiện tại (openNow) nên không cache được theo version
+     * Accept nằm trong ETag vì /map trả JSON hoặc nhị phân cho cùng URL
+     */
+    private String mapETag(String endpoint, BoundingBoxRequest request, WebRequest webRequest) {
+        if (Boolean.TRUE.equals(request.getOpenNow())) {
+            return null;
+        }
+        String resource = endpoint + "|" + request + "|" + webRequest.getHeader(HttpHeaders.ACCEPT);
+        return dataVersions.mapETag(resource, request.getNorth(), request.getSouth(),
+                request.getEast(), request.getWest(), request.getZoom());
+    }
+
+    /**
+     * Conditional GET: ETag khớp If-None-Match thì trả 304 (checkNotModified đã ghi status + header),
+     * không chạy query / serialize. eTag null (Redis lỗi) thì trả response bình thường không có ETag
+     */
+    private <T> ResponseEntity<T> conditional(WebRequest webRequest, String eTag, Supplier<T> body) {
+        if (eTag != null && webRequest.checkNotModified(eTag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache())
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(body.get());
+    }
+
+    /**
+     * Ghi từng object thành một dòng JSON ngay khi được sinh ra (chunked), không gom vào List
+     */
+    private ResponseEntity<StreamingResponseBody> ndjson(Consumer<Consumer<Object>> source) {
+        StreamingResponseBody body = out -> {
+            try {
+                source.accept(item -> {
+                    try {
+                        out.write(objectMapper.writeValueAsBytes(item));
+                        out.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
     }
 }
@@ -1,5 +1,6 @@
 package com.mapsocial.dto.request;
 
+import com.mapsocial.enums.ShopRankBy;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.constraints.DecimalMax;
 import jakarta.validation.constraints.DecimalMin;
@@ -9,6 +10,10 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.LocalTime;
+import java.util.List;
+import java.util.UUID;
+
 @Data
 @Builder
 @NoArgsConstructor
@@ -45,5 +50,18 @@ public class BoundingBoxRequest {
 
     @Schema(description = "Giới hạn số lượng kết quả", example = "500")
     private Integer limit;
+
+    @Schema(description = "Chỉ lấy shops có ít nhất một trong các tags")
+    private List<UUID> tagIds;
+
+    @Schema(description = "Chỉ lấy shops đang mở cửa (theo giờ hiện tại)")
+    private Boolean openNow;
+
+    @Schema(description = "Chỉ lấy shops mở cửa lúc này (HH:mm), ưu tiên hơn openNow", example = "21:30")
+    private LocalTime openAt;
+
+    @Schema(description = "Khi số shops vượt limit: lấy limit shops tốt nhất theo tiêu chí này, dàn đều trên viewport",
+            example = "RATING")
+    private ShopRankBy rankBy;
 }
 
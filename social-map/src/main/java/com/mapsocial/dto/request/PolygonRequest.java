@@ -0,0 +1,49 @@
+package com.mapsocial.dto.request;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalTime;
+import java.util.List;
+import java.util.UUID;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Request object cho polygon query (lấy shops trong vùng người dùng vẽ)")
+public class PolygonRequest {
+
+    @NotNull(message = "Coordinates là bắt buộc")
+    // 10000 đỉnh phân biệt + đỉnh đầu lặp lại ở cuối nếu client tự đóng ring (như MapArea.MAX_VERTICES)
+    @Size(min = 3, max = 10001, message = "Polygon phải có từ 3 đến 10000 đỉnh (không tính đỉnh đầu lặp lại ở cuối)")
+    @Schema(description = "Các đỉnh của polygon dạng [lng, lat] (thứ tự GeoJSON), không cần lặp lại đỉnh đầu",
+            example = "[[105.84, 21.02], [105.86, 21.02], [105.86, 21.04], [105.84, 21.04]]")
+    private List<List<Double>> coordinates;
+
+    @Min(value = 0, message = "Zoom phải >= 0")
+    @Max(value = 20, message = "Zoom phải <= 20")
+    @Schema(description = "Zoom level của bản đồ (0-20), quyết định clustering và mức đơn giản hóa polygon", example = "13")
+    private Integer zoom;
+
+    @Min(value = 1, message = "Limit phải >= 1")
+    @Max(value = 5000, message = "Limit phải <= 5000")
+    @Schema(description = "Giới hạn số lượng kết quả", example = "500")
+    private Integer limit;
+
+    @Schema(description = "Chỉ lấy shops có ít nhất một trong các tags")
+    private List<UUID> tagIds;
+
+    @Schema(description = "Chỉ lấy shops đang mở cửa (theo giờ hiện tại)")
+    private Boolean openNow;
+
+    @Schema(description = "Chỉ lấy shops mở cửa lúc này (HH:mm), ưu tiên hơn openNow", example = "21:30")
+    private LocalTime openAt;
+}
@@ -0,0 +1,37 @@
+package com.mapsocial.dto.request;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Request object cho corridor query (lấy shops dọc theo tuyến đường)")
+public class RouteRequest {
+
+    @NotBlank(message = "Polyline là bắt buộc")
+    @Schema(description = "Tuyến đường dạng encoded polyline (precision 5, như Google Maps / OSRM)",
+            example = "_p~iF~ps|U_ulLnnqC_mqNvxq`@")
+    private String polyline;
+
+    @NotNull(message = "Width là bắt buộc")
+    @DecimalMin(value = "1.0", message = "Width phải >= 1 mét")
+    @DecimalMax(value = "5000.0", message = "Width phải <= 5000 mét")
+    @Schema(description = "Khoảng cách tối đa từ shop tới tuyến đường (mét)", example = "200")
+    private Double width;
+
+    @Min(value = 1, message = "Limit phải >= 1")
+    @Max(value = 5000, message = "Limit phải <= 5000")
+    @Schema(description = "Giới hạn số lượng kết quả", example = "500")
+    private Integer limit;
+}
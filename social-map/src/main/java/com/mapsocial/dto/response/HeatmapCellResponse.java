@@ -0,0 +1,27 @@
+package com.mapsocial.dto.response;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Mật độ shops trong một ô geohash")
+public class HeatmapCellResponse {
+
+    @Schema(description = "Geohash của ô", example = "w7er8")
+    private String geohash;
+
+    @Schema(description = "Vĩ độ tâm ô")
+    private Double latitude;
+
+    @Schema(description = "Kinh độ tâm ô")
+    private Double longitude;
+
+    @Schema(description = "Số shops trong ô")
+    private Integer count;
+}
@@ -0,0 +1,26 @@
+package com.mapsocial.dto.response;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Một trang shops gần vị trí, sắp theo khoảng cách tăng dần")
+public class NearbyShopsResponse {
+
+    @Schema(description = "Shops trong trang, mỗi shop có distance (mét)")
+    private List<ShopClusterResponse> shops;
+
+    @Schema(description = "Cursor để lấy trang tiếp theo (null nếu hết)")
+    private String nextCursor;
+
+    @Schema(description = "Còn trang tiếp theo hay không")
+    private boolean hasMore;
+}
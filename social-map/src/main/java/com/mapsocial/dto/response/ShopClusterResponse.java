@@ -6,10 +6,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
-import java.util.List;
-
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 @Schema(description = "Response cho shop cluster hoặc individual shop")
@@ -33,8 +31,21 @@ public class ShopClusterResponse {
     @Schema(description = "Số lượng shops trong cluster (nếu type = cluster)")
     private Integer count;
 
-    @Schema(description = "Danh sách shop IDs trong cluster (nếu type = cluster)")
-    private List<String> shopIds;
+    @Schema(description = "ID của cluster, dùng để lấy các cluster con / shops qua API children (nếu type = cluster)")
+    private String clusterId;
+
+    // Bounds của ô cluster (when type = cluster)
+    @Schema(description = "Vĩ độ cạnh Bắc của ô cluster (nếu type = cluster)")
+    private Double north;
+
+    @Schema(description = "Vĩ độ cạnh Nam của ô cluster (nếu type = cluster)")
+    private Double south;
+
+    @Schema(description = "Kinh độ cạnh Đông của ô cluster (nếu type = cluster)")
+    private Double east;
+
+    @Schema(description = "Kinh độ cạnh Tây của ô cluster (nếu type = cluster)")
+    private Double west;
 
     // Shop details (when type = shop)
     @Schema(description = "Địa chỉ (nếu type = shop)")
@@ -48,5 +59,11 @@ public class ShopClusterResponse {
 
     @Schema(description = "Trạng thái (nếu type = shop)")
     private String status;
+
+    @Schema(description = "Khoảng cách tới điểm / tuyến đường tìm kiếm, mét (chỉ có ở API nearby và route)")
+    private Double distance;
+
+    @Schema(description = "Vị trí dọc tuyến đường tính từ điểm đầu, mét (chỉ có ở API route)")
+    private Double routeOffset;
 }
 
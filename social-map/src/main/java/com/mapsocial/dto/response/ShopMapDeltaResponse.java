@@ -0,0 +1,30 @@
+package com.mapsocial.dto.response;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Thay đổi markers giữa viewport trước và viewport hiện tại")
+public class ShopMapDeltaResponse {
+
+    @Schema(description = "Version dữ liệu, gửi lại ở request delta tiếp theo. "
+            + "Chỉ hợp lệ trên instance đã phát ra (cần sticky routing), instance khác trả về reset = true")
+    private String version;
+
+    @Schema(description = "true nếu client phải thay toàn bộ markers bằng danh sách added")
+    private boolean reset;
+
+    @Schema(description = "Shops mới vào viewport hoặc đã thay đổi kể từ version cũ")
+    private List<ShopClusterResponse> added;
+
+    @Schema(description = "ID các shops đã rời viewport hoặc không còn hiển thị")
+    private List<String> removed;
+}
@@ -0,0 +1,47 @@
+package com.mapsocial.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Schema(description = "Thay đổi của một shop, gửi tới topic /topic/map/{z}/{x}/{y} của các tile bị ảnh hưởng")
+public class ShopMapUpdateMessage {
+
+    public static final String TYPE_UPSERT = "upsert";
+    public static final String TYPE_REMOVE = "remove";
+
+    @Schema(description = "'upsert': thêm / cập nhật marker, 'remove': gỡ marker khỏi tile")
+    private String type;
+
+    @Schema(description = "ID của shop")
+    private String id;
+
+    @Schema(description = "Tên shop (chỉ có khi type = upsert)")
+    private String name;
+
+    @Schema(description = "Vĩ độ (chỉ có khi type = upsert)")
+    private Double latitude;
+
+    @Schema(description = "Kinh độ (chỉ có khi type = upsert)")
+    private Double longitude;
+
+    @Schema(description = "Địa chỉ")
+    private String address;
+
+    @Schema(description = "URL hình ảnh")
+    private String imageUrl;
+
+    @Schema(description = "Rating")
+    private Double rating;
+
+    @Schema(description = "Trạng thái shop")
+    private String status;
+}
@@ -0,0 +1,49 @@
+package com.mapsocial.dto.response.shop;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Trạng thái / tiến độ của một job import shops hàng loạt")
+public class ShopImportJobResponse {
+
+    @Schema(description = "ID của job")
+    private UUID jobId;
+
+    @Schema(description = "QUEUED, RUNNING, COMPLETED hoặc FAILED")
+    private String status;
+
+    @Schema(description = "Định dạng file", example = "csv")
+    private String format;
+
+    @Schema(description = "Phần trăm file đã đọc (0 - 100)")
+    private Integer progress;
+
+    @Schema(description = "Số dòng đã đọc")
+    private Long processedRows;
+
+    @Schema(description = "Số shops đã lưu")
+    private Long importedRows;
+
+    @Schema(description = "Số dòng bị bỏ qua do không hợp lệ / lỗi khi lưu")
+    private Long rejectedRows;
+
+    @Schema(description = "Các lỗi đầu tiên, dạng 'line N: lý do'")
+    private List<String> errors;
+
+    @Schema(description = "Lỗi khiến job dừng (nếu status = FAILED)")
+    private String message;
+
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
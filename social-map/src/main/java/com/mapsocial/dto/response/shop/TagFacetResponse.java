@@ -0,0 +1,26 @@
+package com.mapsocial.dto.response.shop;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Số shops của một tag trong vùng bản đồ")
+public class TagFacetResponse {
+
+    @Schema(description = "ID của tag")
+    private UUID tagId;
+
+    @Schema(description = "Tên tag", example = "Food")
+    private String name;
+
+    @Schema(description = "Số shops có tag này trong vùng")
+    private Integer count;
+}
@@ -16,6 +16,9 @@ import java.util.UUID;
 @NoArgsConstructor
 @MappedSuperclass // hoặc @Entity nếu bạn muốn truy vấn riêng Marker
 public abstract class Marker {
+    // GeometryFactory thread-safe, dùng chung thay vì tạo mới mỗi lần persist / update
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory(new PrecisionModel(), 4326);
+
     @Id
     @GeneratedValue(strategy = GenerationType.UUID)
     private UUID id;
@@ -53,8 +56,7 @@ public abstract class Marker {
 
     private void updatePoint() {
         if (latitude != null && longitude != null) {
-            GeometryFactory factory = new GeometryFactory(new PrecisionModel(), 4326);
-            this.location = factory.createPoint(new Coordinate(longitude, latitude));
+            this.location = GEOMETRY_FACTORY.createPoint(new Coordinate(longitude, latitude));
         }
     }
 }
@@ -0,0 +1,6 @@
+package com.mapsocial.enums;
+
+public enum ShopRankBy {
+    RATING,        // điểm đánh giá cao nhất trước
+    REVIEW_COUNT   // nhiều lượt đánh giá nhất trước
+}
@@ -1,12 +1,32 @@
 package com.mapsocial.mapper;
 
 import com.mapsocial.dto.request.shop.CreateShopRequest;
+import com.mapsocial.dto.response.ShopClusterResponse;
+import com.mapsocial.dto.response.ShopMapUpdateMessage;
 import com.mapsocial.dto.response.shop.ShopResponse;
 import com.mapsocial.entity.Shop;
 import com.mapsocial.entity.Tag;
+import com.mapsocial.enums.ShopStatus;
+import com.mapsocial.service.map.ShopChangedEvent;
+import com.mapsocial.service.map.ShopClusterId;
+import com.mapsocial.service.map.ShopMarker;
+
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
 public class ShopMapper {
 
+    // Khớp CHR(31) trong STRING_AGG của ShopRepository.streamAll
+    private static final String AGGREGATE_SEPARATOR = "\u001F";
+
     private ShopMapper() {
         throw new UnsupportedOperationException("Utility class");
     }
@@ -50,4 +70,165 @@ public class ShopMapper {
                         : new java.util.ArrayList<>())
                 .build();
     }
+
+    /**
+     * Map một dòng của ShopRepository.streamAll
+     * @param row [UUID id, String name, String address, Double lat, Double lng, String description, String phoneNumber,
+     *            Time openingTime, Time closingTime, String status, Double rating, Integer reviewCount,
+     *            String imageUrls, String tagNames] (hai cột cuối phân cách bằng CHR(31))
+     */
+    public static ShopResponse toShopResponse(Object[] row) {
+        return ShopResponse.builder()
+                .id((UUID) row[0])
+                .name((String) row[1])
+                .address((String) row[2])
+                .latitude((Double) row[3])
+                .longitude((Double) row[4])
+                .description((String) row[5])
+                .phoneNumber((String) row[6])
+                .openingTime(toLocalTime(row[7]))
+                .closingTime(toLocalTime(row[8]))
+                .status(row[9] != null ? ShopStatus.valueOf((String) row[9]) : null)
+                .rating((Double) row[10])
+                .reviewCount(row[11] != null ? ((Number) row[11]).intValue() : null)
+                .imageShopUrl(splitAggregate((String) row[12]))
+                .tags(splitAggregate((String) row[13]))
+                .build();
+    }
+
+    private static List<String> splitAggregate(String value) {
+        return value == null || value.isEmpty()
+                ? new ArrayList<>()
+                : new ArrayList<>(Arrays.asList(value.split(AGGREGATE_SEPARATOR)));
+    }
+
+    /**
+     * Snapshot shop thành marker cho spatial index (chỉ giữ ảnh đầu tiên)
+     * Hibernate ghi lại shop_images theo thứ tự của list nên ảnh đầu tiên khớp ORDER BY ctid của shop_markers
+     */
+    public static ShopMarker toShopMarker(Shop shop) {
+        String imageUrl = null;
+        if (shop.getImageShopUrl() != null && !shop.getImageShopUrl().isEmpty()) {
+            imageUrl = shop.getImageShopUrl().get(0);
+        }
+
+        return ShopMarker.builder()
+                .id(shop.getId())
+                .name(shop.getName())
+                .latitude(shop.getLatitude())
+                .longitude(shop.getLongitude())
+                .address(shop.getAddress())
+                .imageUrl(imageUrl)
+                .rating(shop.getRating())
+                .reviewCount(shop.getReviewCount())
+                .status(shop.getStatus())
+                .version(ShopChangedEvent.versionOf(shop.getUpdatedAt()))
+                .tagIds(shop.getTags() != null
+                        ? shop.getTags().stream().map(Tag::getId).collect(Collectors.toUnmodifiableSet())
+                        : Set.of())
+                .openingTime(shop.getOpeningTime())
+                .closingTime(shop.getClosingTime())
+                .build();
+    }
+
+    /**
+     * Map một dòng projection marker từ native query
+     * @param row [UUID id, Double lat, Double lng, String name, String address, String imageUrl, Double rating, String status]
+     */
+    public static ShopMarker toShopMarker(Object[] row) {
+        return ShopMarker.builder()
+                .id((UUID) row[0])
+                .latitude((Double) row[1])
+                .longitude((Double) row[2])
+                .name((String) row[3])
+                .address((String) row[4])
+                .imageUrl((String) row[5])
+                .rating((Double) row[6])
+                .status(row[7] != null ? ShopStatus.valueOf((String) row[7]) : null)
+                .build();
+    }
+
+    /**
+     * Map một dòng projection đầy đủ cho spatial index (findOpenShopMarkers)
+     * @param row như toShopMarker(Object[]), thêm [String tagIds (phân cách bằng dấu phẩy), Time openingTime, Time closingTime,
+     *            Integer reviewCount, Timestamp updatedAt]
+     */
+    public static ShopMarker toIndexedShopMarker(Object[] row) {
+        String tagIds = (String) row[8];
+        return toShopMarker(row).toBuilder()
+                .tagIds(tagIds == null || tagIds.isEmpty()
+                        ? Set.of()
+                        : Arrays.stream(tagIds.split(","))
+                                .map(UUID::fromString)
+                                .collect(Collectors.toUnmodifiableSet()))
+                .openingTime(toLocalTime(row[9]))
+                .closingTime(toLocalTime(row[10]))
+                .reviewCount(row[11] != null ? ((Number) row[11]).intValue() : null)
+                .version(ShopChangedEvent.versionOf(toLocalDateTime(row[12])))
+                .build();
+    }
+
+    private static LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof Timestamp timestamp) {
+            return timestamp.toLocalDateTime();
+        }
+        return (LocalDateTime) value;
+    }
+
+    private static LocalTime toLocalTime(Object value) {
+        if (value instanceof Time time) {
+            return time.toLocalTime();
+        }
+        return (LocalTime) value;
+    }
+
+    public static ShopClusterResponse toClusterResponse(ShopMarker marker) {
+        return ShopClusterResponse.builder()
+                .type("shop")
+                .id(marker.getId().toString())
+                .name(marker.getName())
+                .latitude(marker.getLatitude())
+                .longitude(marker.getLongitude())
+                .address(marker.getAddress())
+                .imageUrl(marker.getImageUrl())
+                .rating(marker.getRating())
+                .status(marker.getStatus() != null ? marker.getStatus().toString() : null)
+                .build();
+    }
+
+    public static ShopClusterResponse toClusterResponse(ShopClusterId clusterId, int count,
+                                                        double latitude, double longitude) {
+        return ShopClusterResponse.builder()
+                .type("cluster")
+                .clusterId(clusterId.toString())
+                .latitude(latitude)
+                .longitude(longitude)
+                .count(count)
+                .north(clusterId.north())
+                .south(clusterId.south())
+                .east(clusterId.east())
+                .west(clusterId.west())
+                .build();
+    }
+
+    public static ShopMapUpdateMessage toUpsertMessage(ShopMarker marker) {
+        return ShopMapUpdateMessage.builder()
+                .type(ShopMapUpdateMessage.TYPE_UPSERT)
+                .id(marker.getId().toString())
+                .name(marker.getName())
+                .latitude(marker.getLatitude())
+                .longitude(marker.getLongitude())
+                .address(marker.getAddress())
+                .imageUrl(marker.getImageUrl())
+                .rating(marker.getRating())
+                .status(marker.getStatus() != null ? marker.getStatus().toString() : null)
+                .build();
+    }
+
+    public static ShopMapUpdateMessage toRemoveMessage(UUID shopId) {
+        return ShopMapUpdateMessage.builder()
+                .type(ShopMapUpdateMessage.TYPE_REMOVE)
+                .id(shopId.toString())
+                .build();
+    }
 }
@@ -1,13 +1,19 @@
 package com.mapsocial.repository;
 
 import com.mapsocial.entity.Shop;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 public interface ShopRepository extends JpaRepository<Shop, UUID> {
 
@@ -24,44 +30,57 @@ public interface ShopRepository extends JpaRepository<Shop, UUID> {
     // ==================== BOUNDING BOX QUERIES (PostGIS) ====================
 
     /**
-     * Lấy tất cả shops trong vùng bounding box sử dụng PostGIS
-     * Sử dụng ST_MakeEnvelope cho hiệu suất tốt nhất
+     * Lấy dữ liệu marker của shops trong vùng bounding box (PostGIS)
+     * Đọc từ read model shop_markers (bảng hẹp, ảnh bìa / tag ids có sẵn, GiST index chỉ trên shops OPEN),
+     * xem migration_shop_markers_read_model.sql
+     * @return Object[] [UUID id, Double lat, Double lng, String name, String address, String imageUrl, Double rating, String status]
      */
-    @Query(value = "SELECT * FROM shops WHERE " +
-           "location && ST_MakeEnvelope(:west, :south, :east, :north, 4326) AND " +
-           "status = 'OPEN'",
+    @Query(value = "SELECT m.id, m.latitude, m.longitude, m.name, m.address, m.image_url, m.rating, m.status " +
+           "FROM shop_markers m " +
+           "WHERE m.location && ST_MakeEnvelope(:west, :south, :east, :north, 4326) AND " +
+           "m.status = 'OPEN' " +
+           "LIMIT :limit",
            nativeQuery = true)
-    List<Shop> findShopsInBoundingBox(
+    List<Object[]> findShopMarkersInBoundingBox(
             @Param("north") Double north,
             @Param("south") Double south,
             @Param("east") Double east,
-            @Param("west") Double west
+            @Param("west") Double west,
+            @Param("limit") Integer limit
     );
 
     /**
-     * Lấy shops trong vùng bounding box với giới hạn số lượng (PostGIS)
+     * Như findShopMarkersInBoundingBox nhưng lấy limit shops tốt nhất theo rankBy (RATING / REVIEW_COUNT)
+     * thay vì limit dòng bất kỳ. Chỉ dùng khi spatial index chưa sẵn sàng (không dàn đều theo không gian)
      */
-    @Query(value = "SELECT * FROM shops WHERE " +
-           "location && ST_MakeEnvelope(:west, :south, :east, :north, 4326) AND " +
-           "status = 'OPEN' " +
+    @Query(value = "SELECT m.id, m.latitude, m.longitude, m.name, m.address, m.image_url, m.rating, m.status " +
+           "FROM shop_markers m " +
+           "WHERE m.location && ST_MakeEnvelope(:west, :south, :east, :north, 4326) AND " +
+           "m.status = 'OPEN' " +
+           "ORDER BY CASE WHEN :rankBy = 'REVIEW_COUNT' THEN m.review_count ELSE m.rating END DESC NULLS LAST, " +
+           "m.rating DESC NULLS LAST, m.review_count DESC, m.id " +
            "LIMIT :limit",
            nativeQuery = true)
-    List<Shop> findShopsInBoundingBoxWithLimit(
+    List<Object[]> findTopShopMarkersInBoundingBox(
             @Param("north") Double north,
             @Param("south") Double south,
             @Param("east") Double east,
             @Param("west") Double west,
+            @Param("rankBy") String rankBy,
             @Param("limit") Integer limit
     );
 
     /**
-     * Đếm số lượng shops trong vùng bounding box (PostGIS)
+     * Như findOpenShopMarkers nhưng chỉ trong vùng bounding box
+     * Dùng khi spatial index chưa sẵn sàng mà request có filter (tag, giờ mở cửa) - lọc trong Java
      */
-    @Query(value = "SELECT COUNT(*) FROM shops WHERE " +
-           "location && ST_MakeEnvelope(:west, :south, :east, :north, 4326) AND " +
-           "status = 'OPEN'",
+    @Query(value = "SELECT m.id, m.latitude, m.longitude, m.name, m.address, m.image_url, m.rating, m.status, " +
+           "ARRAY_TO_STRING(m.tag_ids, ',') AS tag_ids, m.opening_time, m.closing_time, m.review_count, m.updated_at " +
+           "FROM shop_markers m " +
+           "WHERE m.location && ST_MakeEnvelope(:west, :south, :east, :north, 4326) AND " +
+           "m.status = 'OPEN'",
            nativeQuery = true)
-    Long countShopsInBoundingBox(
+    List<Object[]> findIndexedShopMarkersInBoundingBox(
             @Param("north") Double north,
             @Param("south") Double south,
             @Param("east") Double east,
@@ -69,20 +88,256 @@ public interface ShopRepository extends JpaRepository<Shop, UUID> {
     );
 
     /**
-     * Lấy chỉ tọa độ và ID của shops (lightweight query cho clustering)
-     * Sử dụng PostGIS cho performance tốt nhất
+     * Đếm số shops theo từng tag trong vùng bounding box
+     * Chỉ dùng khi spatial index chưa sẵn sàng
+     * @return Object[] [UUID tagId, Long count]
      */
-    @Query(value = "SELECT s.id, s.latitude, s.longitude, s.name FROM shops s WHERE " +
-           "s.location && ST_MakeEnvelope(:west, :south, :east, :north, 4326) AND " +
-           "s.status = 'OPEN'",
+    @Query(value = "SELECT t.tag_id, COUNT(*) FROM shop_markers m " +
+           "CROSS JOIN LATERAL UNNEST(m.tag_ids) AS t(tag_id) " +
+           "WHERE m.location && ST_MakeEnvelope(:west, :south, :east, :north, 4326) AND " +
+           "m.status = 'OPEN' " +
+           "GROUP BY t.tag_id",
            nativeQuery = true)
-    List<Object[]> findShopLocationsInBoundingBox(
+    List<Object[]> countShopsByTagInBoundingBox(
             @Param("north") Double north,
             @Param("south") Double south,
             @Param("east") Double east,
             @Param("west") Double west
     );
 
+    /**
+     * Như findShopMarkersInBoundingBox nhưng đọc theo cursor (fetch size) thay vì nạp hết vào List
+     * Phải gọi trong transaction và đóng Stream sau khi dùng
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(value = "SELECT m.id, m.latitude, m.longitude, m.name, m.address, m.image_url, m.rating, m.status " +
+           "FROM shop_markers m " +
+           "WHERE m.location && ST_MakeEnvelope(:west, :south, :east, :north, 4326) AND " +
+           "m.status = 'OPEN' " +
+           "LIMIT :limit",
+           nativeQuery = true)
+    Stream<Object[]> streamShopMarkersInBoundingBox(
+            @Param("north") Double north,
+            @Param("south") Double south,
+            @Param("east") Double east,
+            @Param("west") Double west,
+            @Param("limit") Integer limit
+    );
+
+    /**
+     * Shops nằm trong polygon (vùng người dùng vẽ)
+     * && với envelope của polygon dùng GiST index của location, ST_Intersects chỉ chạy cho các dòng qua prefilter
+     * Cùng projection với findIndexedShopMarkersInBoundingBox (kèm tag ids / giờ mở cửa) để lọc tag / giờ trong Java
+     * @param area WKT POLYGON / MULTIPOLYGON (lng lat), SRID 4326
+     * @param limit số dòng tối đa
+     */
+    @Query(value = "SELECT m.id, m.latitude, m.longitude, m.name, m.address, m.image_url, m.rating, m.status, " +
+           "ARRAY_TO_STRING(m.tag_ids, ',') AS tag_ids, m.opening_time, m.closing_time, m.review_count, m.updated_at " +
+           "FROM shop_markers m " +
+           "WHERE m.location && ST_MakeEnvelope(:west, :south, :east, :north, 4326) AND " +
+           "ST_Intersects(m.location::geometry, ST_GeomFromText(:area, 4326)) AND " +
+           "m.status = 'OPEN' " +
+           "LIMIT :limit",
+           nativeQuery = true)
+    List<Object[]> findShopMarkersInPolygon(
+            @Param("area") String area,
+            @Param("north") Double north,
+            @Param("south") Double south,
+            @Param("east") Double east,
+            @Param("west") Double west,
+            @Param("limit") Integer limit
+    );
+
+    /**
+     * Shops cách tuyến đường (LINESTRING) không quá width mét, theo thứ tự dọc tuyến đường
+     * ST_DWithin trên geography dùng GiST index của location (nested loop với route đã materialize),
+     * route_offset = chiều dài geography của đoạn tuyến từ điểm đầu tới hình chiếu của shop (ST_LineLocatePoint),
+     * đo cùng một kiểu với distance (mét trên spheroid) thay vì nhân tỉ lệ phẳng với chiều dài tuyến.
+     * Phải gọi trong transaction và đóng Stream sau khi dùng
+     * @param route WKT LINESTRING (lng lat), SRID 4326
+     * @return Object[] [UUID id, Double lat, Double lng, String name, String address, String imageUrl,
+     *                   Double rating, String status, Double distance (mét tới tuyến), Double routeOffset (mét từ điểm đầu)]
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(value = "WITH route AS MATERIALIZED (" +
+           "  SELECT geom, geom::geography AS geog " +
+           "  FROM (SELECT ST_GeomFromText(:route, 4326) AS geom) r" +
+           ") " +
+           "SELECT m.id, m.latitude, m.longitude, m.name, m.address, m.image_url, m.rating, m.status, " +
+           "ST_Distance(m.location, route.geog) AS distance, " +
+           "ST_Length(ST_LineSubstring(route.geom, 0, ST_LineLocatePoint(route.geom, m.location::geometry))::geography) " +
+           "AS route_offset " +
+           "FROM route " +
+           "JOIN shop_markers m ON ST_DWithin(m.location, route.geog, :width) " +
+           "WHERE m.status = 'OPEN' " +
+           "ORDER BY route_offset, m.id " +
+           "LIMIT :limit",
+           nativeQuery = true)
+    Stream<Object[]> streamShopsAlongRoute(
+            @Param("route") String route,
+            @Param("width") Double width,
+            @Param("limit") Integer limit
+    );
+
+    /**
+     * Đọc toàn bộ shops theo cursor cho export / streaming response
+     * Ảnh và tên tags gộp sẵn trong cùng dòng (phân cách bằng CHR(31)) thay vì lazy load từng shop
+     * Phải gọi trong transaction và đóng Stream sau khi dùng
+     * @return Object[] [UUID id, String name, String address, Double lat, Double lng, String description,
+     *                   String phoneNumber, Time openingTime, Time closingTime, String status, Double rating,
+     *                   Integer reviewCount, String imageUrls, String tagNames]
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(value = "SELECT s.id, s.name, s.address, s.latitude, s.longitude, s.description, s.phone_number, " +
+           "s.opening_time, s.closing_time, s.status, s.rating, s.review_count, " +
+           "(SELECT STRING_AGG(i.image_url, CHR(31)) FROM shop_images i WHERE i.shop_id = s.id) AS image_urls, " +
+           "(SELECT STRING_AGG(t.name, CHR(31)) FROM shop_tags st JOIN tags t ON t.id = st.tag_id " +
+           " WHERE st.shop_id = s.id) AS tag_names " +
+           "FROM shops s",
+           nativeQuery = true)
+    Stream<Object[]> streamAll();
+
+    /**
+     * Clustering ngay trong PostGIS với một round trip duy nhất
+     * Nếu số shops trong vùng > threshold thì GROUP BY theo ô lưới: tile x / y (Web Mercator, giống TileMath)
+     * của lưới gridTiles x gridTiles, tức cùng ô với cluster pyramid; ngược lại mỗi shop là một dòng riêng - quyết định nằm trong cùng câu lệnh.
+     * limit chỉ áp dụng cho chế độ từng shop: cắt bớt dòng cluster sẽ làm mất shops khỏi bản đồ (LIMIT NULL = không giới hạn)
+     * @return Object[] [Long count, Double lat, Double lng, String sampleIds (tối đa 5, phân cách bằng dấu phẩy),
+     *                   String name, String address, Double rating, String status, String imageUrl]
+     *         (name/address/rating/status/imageUrl chỉ có nghĩa khi count = 1)
+     */
+    @Query(value = "WITH box AS (" +
+           "  SELECT m.id, m.latitude, m.longitude, m.name, m.address, m.rating, m.status, m.image_url FROM shop_markers m " +
+           "  WHERE m.location && ST_MakeEnvelope(:west, :south, :east, :north, 4326) AND m.status = 'OPEN'" +
+           "), mode AS (" +
+           "  SELECT COUNT(*) > :threshold AS clustered FROM box" +
+           "), keyed AS (" +
+           "  SELECT b.*, CASE WHEN m.clustered " +
+           "    THEN CONCAT(" +
+           "      LEAST(:gridTiles - 1, GREATEST(0, FLOOR((b.longitude + 180.0) / 360.0 * :gridTiles))), '_', " +
+           "      LEAST(:gridTiles - 1, GREATEST(0, FLOOR((1.0 - LN(TAN(RADIANS(b.clamped_lat)) " +
+           "        + 1.0 / COS(RADIANS(b.clamped_lat))) / PI()) / 2.0 * :gridTiles)))) " +
+           "    ELSE CAST(b.id AS text) END AS cell " +
+           "  FROM (SELECT bb.*, LEAST(85.05112878, GREATEST(-85.05112878, bb.latitude)) AS clamped_lat FROM box bb) b " +
+           "  CROSS JOIN mode m" +
+           "), ranked AS (" +
+           "  SELECT k.*, ROW_NUMBER() OVER (PARTITION BY k.cell) AS rn FROM keyed k" +
+           ") " +
+           "SELECT COUNT(*) AS shop_count, AVG(r.latitude) AS latitude, AVG(r.longitude) AS longitude, " +
+           "STRING_AGG(CAST(r.id AS text), ',') FILTER (WHERE r.rn <= 5) AS sample_ids, " +
+           "(ARRAY_AGG(r.name))[1] AS name, (ARRAY_AGG(r.address))[1] AS address, " +
+           "(ARRAY_AGG(r.rating))[1] AS rating, (ARRAY_AGG(r.status))[1] AS status, " +
+           "CASE WHEN COUNT(*) = 1 THEN (ARRAY_AGG(r.image_url))[1] END AS image_url " +
+           "FROM ranked r GROUP BY r.cell " +
+           "LIMIT CASE WHEN (SELECT clustered FROM mode) THEN NULL ELSE :limit END",
+           nativeQuery = true)
+    List<Object[]> findShopClustersInBoundingBox(
+            @Param("north") Double north,
+            @Param("south") Double south,
+            @Param("east") Double east,
+            @Param("west") Double west,
+            @Param("threshold") Integer threshold,
+            @Param("gridTiles") Double gridTiles,
+            @Param("limit") Integer limit
+    );
+
+    /**
+     * Lấy dữ liệu marker của tất cả shops OPEN để nạp vào spatial index in-memory
+     * Cùng projection với findShopMarkersInBoundingBox, thêm tag ids (phân cách bằng dấu phẩy), giờ mở / đóng cửa,
+     * số lượt đánh giá và updated_at (version của marker)
+     */
+    @Query(value = "SELECT m.id, m.latitude, m.longitude, m.name, m.address, m.image_url, m.rating, m.status, " +
+           "ARRAY_TO_STRING(m.tag_ids, ',') AS tag_ids, m.opening_time, m.closing_time, m.review_count, m.updated_at " +
+           "FROM shop_markers m " +
+           "WHERE m.status = 'OPEN'",
+           nativeQuery = true)
+    List<Object[]> findOpenShopMarkers();
+
+    /**
+     * Marker của một shop đọc từ read model (mọi status), cùng projection với findOpenShopMarkers
+     * Trigger cập nhật shop_markers trong cùng transaction nên phải flush trước khi gọi
+     */
+    @Query(value = "SELECT m.id, m.latitude, m.longitude, m.name, m.address, m.image_url, m.rating, m.status, " +
+           "ARRAY_TO_STRING(m.tag_ids, ',') AS tag_ids, m.opening_time, m.closing_time, m.review_count, m.updated_at " +
+           "FROM shop_markers m " +
+           "WHERE m.id = :shopId",
+           nativeQuery = true)
+    List<Object[]> findIndexedShopMarker(@Param("shopId") UUID shopId);
+
+    /**
+     * Shops gần một điểm nhất, theo thứ tự khoảng cách tăng dần
+     * ORDER BY location <-> point để GiST index trả về trực tiếp các dòng gần nhất (KNN),
+     * không phải tính ST_Distance cho mọi shop trong bán kính rồi sort.
+     * Phân trang bằng cursor (khoảng cách, id) của dòng cuối trang trước thay vì OFFSET.
+     * @return Object[] [UUID id, Double lat, Double lng, String name, String address, String imageUrl,
+     *                   Double rating, String status, Double distance (mét)]
+     */
+    @Query(value = "SELECT m.id, m.latitude, m.longitude, m.name, m.address, m.image_url, m.rating, m.status, " +
+           "m.location <-> ST_SetSRID(ST_MakePoint(:centerLng, :centerLat), 4326)::geography AS distance " +
+           "FROM shop_markers m " +
+           "WHERE m.status = 'OPEN' AND " +
+           "ST_DWithin(m.location, ST_SetSRID(ST_MakePoint(:centerLng, :centerLat), 4326)::geography, :radiusMeters, false) AND " +
+           "(m.location <-> ST_SetSRID(ST_MakePoint(:centerLng, :centerLat), 4326)::geography > :afterDistance OR " +
+           " (m.location <-> ST_SetSRID(ST_MakePoint(:centerLng, :centerLat), 4326)::geography = :afterDistance AND m.id > :afterId)) " +
+           "ORDER BY m.location <-> ST_SetSRID(ST_MakePoint(:centerLng, :centerLat), 4326)::geography, m.id " +
+           "LIMIT :limit",
+           nativeQuery = true)
+    List<Object[]> findNearestShops(
+            @Param("centerLat") Double centerLat,
+            @Param("centerLng") Double centerLng,
+            @Param("radiusMeters") Double radiusMeters,
+            @Param("afterDistance") Double afterDistance,
+            @Param("afterId") UUID afterId,
+            @Param("limit") Integer limit
+    );
+
+    /**
+     * Khoảng cách từ một điểm tới shop, cùng biểu thức với cột distance / cursor của findNearestShops
+     * Dùng để phát cursor cho trang đầu được tính trong Java, trang sau so sánh đúng theo giá trị PostGIS
+     */
+    @Query(value = "SELECT m.location <-> ST_SetSRID(ST_MakePoint(:centerLng, :centerLat), 4326)::geography " +
+           "FROM shop_markers m " +
+           "WHERE m.id = :shopId",
+           nativeQuery = true)
+    Double findDistanceToShop(
+            @Param("centerLat") Double centerLat,
+            @Param("centerLng") Double centerLng,
+            @Param("shopId") UUID shopId
+    );
+
+    /**
+     * Tìm shops theo từ khóa trong vùng bounding box, xếp hạng theo độ liên quan
+     * Text filter (GIN search_vector / trigram trên name) và bbox (GiST location) được planner
+     * kết hợp trong cùng một plan (BitmapAnd), xem migration_shop_search_indexes.sql
+     * Lọc trên shops (các GIN index nằm ở đó), cột hiển thị (ảnh bìa) lấy từ shop_markers theo khóa chính
+     * @return Object[] [UUID id, Double lat, Double lng, String name, String address, String imageUrl,
+     *                   Double rating, String status, Float rank]
+     */
+    @Query(value = "SELECT m.id, m.latitude, m.longitude, m.name, m.address, m.image_url, m.rating, m.status, " +
+           "ts_rank_cd(s.search_vector, websearch_to_tsquery('simple', f_unaccent(lower(:query)))) " +
+           "  + similarity(f_unaccent(lower(s.name)), f_unaccent(lower(:query))) AS rank " +
+           "FROM shops s " +
+           "JOIN shop_markers m ON m.id = s.id " +
+           "WHERE s.location && ST_MakeEnvelope(:west, :south, :east, :north, 4326) AND " +
+           "s.status = 'OPEN' AND " +
+           "(s.search_vector @@ websearch_to_tsquery('simple', f_unaccent(lower(:query))) " +
+           " OR f_unaccent(lower(s.name)) % f_unaccent(lower(:query))) " +
+           "ORDER BY rank DESC, s.id",
+           countQuery = "SELECT COUNT(*) FROM shops s " +
+           "WHERE s.location && ST_MakeEnvelope(:west, :south, :east, :north, 4326) AND " +
+           "s.status = 'OPEN' AND " +
+           "(s.search_vector @@ websearch_to_tsquery('simple', f_unaccent(lower(:query))) " +
+           " OR f_unaccent(lower(s.name)) % f_unaccent(lower(:query)))",
+           nativeQuery = true)
+    Page<Object[]> searchShopsInBoundingBox(
+            @Param("query") String query,
+            @Param("north") Double north,
+            @Param("south") Double south,
+            @Param("east") Double east,
+            @Param("west") Double west,
+            Pageable pageable
+    );
+
     /**
      * Tìm shops trong bán kính (radius query) - Bonus feature với PostGIS
      * @param centerLat Vĩ độ trung tâm
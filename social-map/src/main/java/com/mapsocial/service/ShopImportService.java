@@ -0,0 +1,23 @@
+package com.mapsocial.service;
+
+import com.mapsocial.dto.response.shop.ShopImportJobResponse;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.UUID;
+
+public interface ShopImportService {
+
+    /**
+     * Bắt đầu import shops hàng loạt từ file CSV / GeoJSON, chạy nền
+     * User import là OWNER của mọi shop được tạo
+     * @param format "csv" hoặc "geojson", null thì đoán theo đuôi file
+     * @return job để theo dõi tiến độ bằng getImportJob
+     * @throws org.springframework.security.access.AccessDeniedException nếu user không phải SELLER / admin
+     */
+    ShopImportJobResponse startImport(UUID userId, MultipartFile file, String format);
+
+    /**
+     * Tiến độ / kết quả của job import do user tạo
+     */
+    ShopImportJobResponse getImportJob(UUID userId, UUID jobId);
+}
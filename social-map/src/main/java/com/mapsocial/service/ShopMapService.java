@@ -1,9 +1,16 @@
 package com.mapsocial.service;
 
 import com.mapsocial.dto.request.BoundingBoxRequest;
+import com.mapsocial.dto.request.PolygonRequest;
+import com.mapsocial.dto.response.HeatmapCellResponse;
+import com.mapsocial.dto.response.NearbyShopsResponse;
 import com.mapsocial.dto.response.ShopClusterResponse;
+import com.mapsocial.dto.response.ShopMapDeltaResponse;
+import com.mapsocial.dto.response.shop.TagFacetResponse;
+import com.mapsocial.util.PageResponse;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface ShopMapService {
 
@@ -13,14 +20,74 @@ public interface ShopMapService {
      */
     List<ShopClusterResponse> getShopsInBoundingBox(BoundingBoxRequest request);
 
+    /**
+     * Số shops theo từng tag trong vùng bounding box (facet cho bộ lọc tag trên bản đồ)
+     */
+    List<TagFacetResponse> getTagFacets(BoundingBoxRequest request);
+
+    /**
+     * Mật độ shops theo ô geohash trong vùng, độ phân giải theo zoom level
+     * Đọc từ bộ đếm geohash trong bộ nhớ, không query bảng shops
+     * @throws IllegalStateException nếu bộ đếm chưa được load
+     */
+    List<HeatmapCellResponse> getHeatmap(BoundingBoxRequest request);
+
     /**
      * Lấy tất cả shops trong vùng (không cluster) - dùng cho zoom level cao
      */
     List<ShopClusterResponse> getIndividualShopsInBoundingBox(BoundingBoxRequest request);
 
+    /**
+     * Như getIndividualShopsInBoundingBox nhưng đẩy từng shop cho consumer thay vì trả về List
+     * Dùng cho streaming response khi không giới hạn số lượng
+     */
+    void streamIndividualShopsInBoundingBox(BoundingBoxRequest request, Consumer<ShopClusterResponse> consumer);
+
+    /**
+     * Đẩy cho consumer các shops cách tuyến đường không quá widthMeters, theo thứ tự dọc tuyến đường
+     * Mỗi shop có distance (mét tới tuyến) và routeOffset (mét tính từ điểm đầu)
+     * @param route các điểm [lat, lng] của tuyến đường, ít nhất 2 điểm
+     */
+    void streamShopsAlongRoute(List<double[]> route, double widthMeters, Integer limit,
+                               Consumer<ShopClusterResponse> consumer);
+
+    /**
+     * Lấy shops / clusters trong polygon người dùng vẽ, quyết định clustering giống getShopsInBoundingBox
+     * @throws IllegalArgumentException nếu polygon không hợp lệ
+     */
+    List<ShopClusterResponse> getShopsInPolygon(PolygonRequest request);
+
     /**
      * Lấy clusters trong vùng - dùng cho zoom level thấp
      */
     List<ShopClusterResponse> getClustersInBoundingBox(BoundingBoxRequest request);
-}
 
+    /**
+     * Các cluster con ở zoom level kế tiếp của cluster clusterId, hoặc shops nếu đã tới zoom không cluster
+     * @param filters chỉ dùng tagIds / openNow / openAt (giống request đã trả về cluster)
+     * @throws IllegalArgumentException nếu clusterId không hợp lệ
+     */
+    PageResponse<ShopClusterResponse> getClusterChildren(String clusterId, BoundingBoxRequest filters, int page, int size);
+
+    /**
+     * Lấy vector tile (Mapbox Vector Tile) chứa shops/clusters của tile z/x/y
+     */
+    byte[] getShopTile(int zoom, int x, int y);
+
+    /**
+     * Chỉ trả về các shops vào / rời viewport so với viewport trước (previous)
+     * cùng các shops thay đổi kể từ version client đang có
+     */
+    ShopMapDeltaResponse getShopsDelta(BoundingBoxRequest request, BoundingBoxRequest previous, String version);
+
+    /**
+     * Shops gần vị trí nhất trong bán kính, sắp theo khoảng cách, phân trang bằng cursor
+     * @param cursor nextCursor của trang trước (null cho trang đầu)
+     */
+    NearbyShopsResponse getNearbyShops(double latitude, double longitude, double radiusMeters, String cursor, int limit);
+
+    /**
+     * Tìm shops theo từ khóa (tên, mô tả, tag) trong vùng bounding box, xếp theo độ liên quan
+     */
+    PageResponse<ShopClusterResponse> searchShopsInBoundingBox(BoundingBoxRequest request, String query, int page, int size);
+}
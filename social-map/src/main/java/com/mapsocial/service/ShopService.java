@@ -6,6 +6,7 @@ import com.mapsocial.dto.response.shop.ShopResponse;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 public interface ShopService {
     ShopResponse createShop(UUID userId, CreateShopRequest request);
@@ -13,4 +14,9 @@ public interface ShopService {
     void deleteShop(UUID userId, UUID shopId);
     ShopResponse getShopById(UUID shopId);
     List<ShopResponse> getAllShops();
+
+    /**
+     * Đọc toàn bộ shops theo cursor và đẩy từng shop cho consumer (heap không tăng theo số shops)
+     */
+    void streamAllShops(Consumer<ShopResponse> consumer);
 }
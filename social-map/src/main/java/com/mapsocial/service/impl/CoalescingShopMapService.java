@@ -0,0 +1,237 @@
+package com.mapsocial.service.impl;
+
+import com.mapsocial.dto.request.BoundingBoxRequest;
+import com.mapsocial.dto.request.PolygonRequest;
+import com.mapsocial.dto.response.HeatmapCellResponse;
+import com.mapsocial.dto.response.NearbyShopsResponse;
+import com.mapsocial.dto.response.ShopClusterResponse;
+import com.mapsocial.dto.response.ShopMapDeltaResponse;
+import com.mapsocial.dto.response.shop.TagFacetResponse;
+import com.mapsocial.service.ShopMapService;
+import com.mapsocial.service.map.SingleFlight;
+import com.mapsocial.util.Geohash;
+import com.mapsocial.util.PageResponse;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Lớp gộp request đứng trước ShopMapServiceImpl (single-flight)
+ * Khi nhiều client cùng xem một vùng (sự kiện ở một quận...), các request giống nhau đến đồng thời
+ * chỉ chạy pipeline đếm / query / cluster một lần và dùng chung kết quả.
+ *
+ * Markers / clusters / ô heatmap: key là request đã chuẩn hóa (bbox nới ra theo lưới ~16px của zoom level,
+ * tagIds sắp xếp) nên các viewport gần như trùng nhau cũng được gộp; kết quả chung tính cho bbox đã nới,
+ * sau đó cắt lại theo bbox của từng caller. Request có limit / rankBy thì không nới bbox
+ * (limit và top-K phải tính đúng trên viewport của caller), chỉ gộp các request trùng khớp.
+ * Facets / search (số đếm, tổng số trang không cắt lại được) chỉ gộp các request có cùng bbox.
+ * Mỗi caller nhận bản sao riêng của List và các DTO. Kết quả không được giữ lại sau khi tính xong.
+ * Các API theo trạng thái client (delta, nearby theo cursor, streaming) đi thẳng xuống service.
+ */
+@Service
+@Primary
+public class CoalescingShopMapService implements ShopMapService {
+
+    private static final int SNAP_STEPS_PER_TILE = 16; // 256px / 16 = ô lưới 16px
+
+    private final ShopMapService delegate;
+    private final SingleFlight<MapQueryKey, Object> inFlight = new SingleFlight<>();
+
+    private record MapQueryKey(String operation, BoundingBoxRequest request, Object extra) {
+    }
+
+    public CoalescingShopMapService(@Qualifier("shopMapServiceImpl") ShopMapService delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public List<ShopClusterResponse> getShopsInBoundingBox(BoundingBoxRequest request) {
+        boolean snap = isCroppable(request);
+        BoundingBoxRequest normalized = normalize(request, snap);
+        List<ShopClusterResponse> shared = coalesce(new MapQueryKey("map", normalized, null),
+                () -> delegate.getShopsInBoundingBox(normalized));
+        return snap ? crop(shared, request) : copy(shared);
+    }
+
+    @Override
+    public List<TagFacetResponse> getTagFacets(BoundingBoxRequest request) {
+        BoundingBoxRequest normalized = normalize(request, false);
+        List<TagFacetResponse> shared = coalesce(new MapQueryKey("facets", normalized, null),
+                () -> delegate.getTagFacets(normalized));
+        List<TagFacetResponse> result = new ArrayList<>(shared.size());
+        for (TagFacetResponse facet : shared) {
+            result.add(facet.toBuilder().build());
+        }
+        return result;
+    }
+
+    @Override
+    public List<HeatmapCellResponse> getHeatmap(BoundingBoxRequest request) {
+        BoundingBoxRequest snapped = normalize(request, true);
+        List<HeatmapCellResponse> shared = coalesce(new MapQueryKey("heatmap", snapped, null),
+                () -> delegate.getHeatmap(snapped));
+
+        // Giữ các ô giao với bbox của caller
+        List<HeatmapCellResponse> result = new ArrayList<>();
+        for (HeatmapCellResponse cell : shared) {
+            double[] bounds = Geohash.bounds(cell.getGeohash());
+            if (intersects(request, bounds[2], bounds[0], bounds[3], bounds[1])) {
+                result.add(cell.toBuilder().build());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<ShopClusterResponse> getIndividualShopsInBoundingBox(BoundingBoxRequest request) {
+        boolean snap = isCroppable(request);
+        BoundingBoxRequest normalized = normalize(request, snap);
+        List<ShopClusterResponse> shared = coalesce(new MapQueryKey("individual", normalized, null),
+                () -> delegate.getIndividualShopsInBoundingBox(normalized));
+        return snap ? crop(shared, request) : copy(shared);
+    }
+
+    @Override
+    public List<ShopClusterResponse> getShopsInPolygon(PolygonRequest request) {
+        // Polygon không snap được theo lưới -> chỉ gộp các request trùng khớp (vd. cùng ranh giới quận có sẵn)
+        return copy(coalesce(new MapQueryKey("polygon", null, request),
+                () -> delegate.getShopsInPolygon(request)));
+    }
+
+    @Override
+    public void streamIndividualShopsInBoundingBox(BoundingBoxRequest request, Consumer<ShopClusterResponse> consumer) {
+        delegate.streamIndividualShopsInBoundingBox(request, consumer);
+    }
+
+    @Override
+    public void streamShopsAlongRoute(List<double[]> route, double widthMeters, Integer limit,
+                                      Consumer<ShopClusterResponse> consumer) {
+        delegate.streamShopsAlongRoute(route, widthMeters, limit, consumer);
+    }
+
+    @Override
+    public List<ShopClusterResponse> getClustersInBoundingBox(BoundingBoxRequest request) {
+        boolean snap = isCroppable(request);
+        BoundingBoxRequest normalized = normalize(request, snap);
+        List<ShopClusterResponse> shared = coalesce(new MapQueryKey("clusters", normalized, null),
+                () -> delegate.getClustersInBoundingBox(normalized));
+        return snap ? crop(shared, request) : copy(shared);
+    }
+
+    @Override
+    public PageResponse<ShopClusterResponse> getClusterChildren(String clusterId, BoundingBoxRequest filters,
+                                                                int page, int size) {
+        return copy(coalesce(new MapQueryKey("children", filters, List.of(clusterId, page, size)),
+                () -> delegate.getClusterChildren(clusterId, filters, page, size)));
+    }
+
+    @Override
+    public byte[] getShopTile(int zoom, int x, int y) {
+        byte[] tile = coalesce(new MapQueryKey("tile", null, List.of(zoom, x, y)),
+                () -> delegate.getShopTile(zoom, x, y));
+        return tile.clone();
+    }
+
+    @Override
+    public ShopMapDeltaResponse getShopsDelta(BoundingBoxRequest request, BoundingBoxRequest previous, String version) {
+        return delegate.getShopsDelta(request, previous, version);
+    }
+
+    @Override
+    public NearbyShopsResponse getNearbyShops(double latitude, double longitude, double radiusMeters, String cursor, int limit) {
+        return delegate.getNearbyShops(latitude, longitude, radiusMeters, cursor, limit);
+    }
+
+    @Override
+    public PageResponse<ShopClusterResponse> searchShopsInBoundingBox(BoundingBoxRequest request, String query,
+                                                                      int page, int size) {
+        BoundingBoxRequest normalized = normalize(request, false);
+        return copy(coalesce(new MapQueryKey("search", normalized, List.of(query, page, size)),
+                () -> delegate.searchShopsInBoundingBox(normalized, query, page, size)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T coalesce(MapQueryKey key, Supplier<T> loader) {
+        return (T) inFlight.execute(key, loader::get);
+    }
+
+    /**
+     * Bản sao các phần tử của kết quả chung nằm trong bbox của caller
+     * Shop theo tọa độ; cluster theo bounds của ô (cluster có một phần ô trong viewport vẫn được giữ như khi không gộp)
+     */
+    private static List<ShopClusterResponse> crop(List<ShopClusterResponse> shared, BoundingBoxRequest request) {
+        List<ShopClusterResponse> result = new ArrayList<>(shared.size());
+        for (ShopClusterResponse item : shared) {
+            boolean inside = item.getNorth() != null
+                    ? intersects(request, item.getNorth(), item.getSouth(), item.getEast(), item.getWest())
+                    : intersects(request, item.getLatitude(), item.getLatitude(), item.getLongitude(), item.getLongitude());
+            if (inside) {
+                result.add(item.toBuilder().build());
+            }
+        }
+        return result;
+    }
+
+    private static boolean intersects(BoundingBoxRequest request, double north, double south, double east, double west) {
+        return south <= request.getNorth() && north >= request.getSouth()
+                && west <= request.getEast() && east >= request.getWest();
+    }
+
+    private static List<ShopClusterResponse> copy(List<ShopClusterResponse> shared) {
+        List<ShopClusterResponse> result = new ArrayList<>(shared.size());
+        for (ShopClusterResponse item : shared) {
+            result.add(item.toBuilder().build());
+        }
+        return result;
+    }
+
+    private static PageResponse<ShopClusterResponse> copy(PageResponse<ShopClusterResponse> shared) {
+        return new PageResponse<>(copy(shared.getContent()), shared.getPage(), shared.getSize(),
+                shared.getTotalElements(), shared.getTotalPages());
+    }
+
+    /**
+     * Cắt kết quả của bbox đã nới về viewport chỉ không mất dữ liệu khi không có limit / rankBy:
+     * có limit thì shops ngoài viewport chiếm chỗ trong limit rồi bị cắt, top-K cũng tính trên vùng khác
+     */
+    private static boolean isCroppable(BoundingBoxRequest request) {
+        return (request.getLimit() == null || request.getLimit() <= 0) && request.getRankBy() == null;
+    }
+
+    /**
+     * Bản sao của request với tagIds đã sắp xếp
+     * @param snap nới bbox ra biên lưới gần nhất của zoom level (không có zoom thì giữ nguyên bbox)
+     */
+    private static BoundingBoxRequest normalize(BoundingBoxRequest request, boolean snap) {
+        double north = request.getNorth();
+        double south = request.getSouth();
+        double east = request.getEast();
+        double west = request.getWest();
+
+        if (snap && request.getZoom() != null && request.getZoom() >= 0) {
+            double step = 360.0 / Math.pow(2, request.getZoom()) / SNAP_STEPS_PER_TILE;
+            north = Math.min(90, Math.ceil(north / step) * step);
+            south = Math.max(-90, Math.floor(south / step) * step);
+            east = Math.min(180, Math.ceil(east / step) * step);
+            west = Math.max(-180, Math.floor(west / step) * step);
+        }
+
+        return BoundingBoxRequest.builder()
+                .north(north)
+                .south(south)
+                .east(east)
+                .west(west)
+                .zoom(request.getZoom())
+                .limit(request.getLimit())
+                .tagIds(request.getTagIds() == null ? null : request.getTagIds().stream().distinct().sorted().toList())
+                .openNow(request.getOpenNow())
+                .openAt(request.getOpenAt())
+                .rankBy(request.getRankBy())
+                .build();
+    }
+}
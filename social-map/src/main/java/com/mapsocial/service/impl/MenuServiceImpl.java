@@ -14,8 +14,10 @@ import com.mapsocial.repository.ShopRepository;
 import com.mapsocial.repository.UserRepository;
 import com.mapsocial.repository.UserShopRepository;
 import com.mapsocial.service.MenuService;
+import com.mapsocial.service.version.MenuChangedEvent;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -29,6 +31,7 @@ public class MenuServiceImpl implements MenuService {
     private final ShopRepository shopRepository;
     private final UserRepository userRepository;
     private final UserShopRepository userShopRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Override
     @Transactional
@@ -43,8 +46,9 @@ public class MenuServiceImpl implements MenuService {
             throw new SecurityException("Nhân viên (STAFF) và thu ngân (CASHIER) không có quyền tạo menu");
         }
 
-        Menu menu = MenuMapper.toEntity(request, shop);
-        return MenuMapper.toResponse(menuRepository.save(menu));
+        Menu savedMenu = menuRepository.save(MenuMapper.toEntity(request, shop));
+        eventPublisher.publishEvent(new MenuChangedEvent(savedMenu.getId(), shop.getId()));
+        return MenuMapper.toResponse(savedMenu);
     }
 
     @Override
@@ -61,7 +65,9 @@ public class MenuServiceImpl implements MenuService {
         }
 
         menu.setName(request.getName());
-        return MenuMapper.toResponse(menuRepository.save(menu));
+        Menu updatedMenu = menuRepository.save(menu);
+        eventPublisher.publishEvent(new MenuChangedEvent(menuId, updatedMenu.getShop().getId()));
+        return MenuMapper.toResponse(updatedMenu);
     }
 
     @Override
@@ -78,10 +84,15 @@ public class MenuServiceImpl implements MenuService {
         }
 
         menuRepository.delete(menu);
+        eventPublisher.publishEvent(new MenuChangedEvent(menuId, menu.getShop().getId()));
     }
 
+    /**
+     * Không readOnly: đọc từ primary để body khớp với ETag (DataVersions.menuETag) vừa tăng sau commit,
+     * replica trễ có thể trả menu cũ kèm ETag mới
+     */
     @Override
-    @Transactional(readOnly = true)
+    @Transactional
     public MenuResponse getMenuById(UUID menuId) {
         Menu menu = menuRepository.findById(menuId)
                 .orElseThrow(() -> new EntityNotFoundException("Menu không tồn tại"));
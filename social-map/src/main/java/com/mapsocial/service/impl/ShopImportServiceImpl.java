@@ -0,0 +1,287 @@
+package com.mapsocial.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mapsocial.dto.response.shop.ShopImportJobResponse;
+import com.mapsocial.entity.Tag;
+import com.mapsocial.entity.User;
+import com.mapsocial.enums.UserRole;
+import com.mapsocial.repository.TagRepository;
+import com.mapsocial.repository.UserRepository;
+import com.mapsocial.service.ShopImportService;
+import com.mapsocial.service.importer.ShopImportJob;
+import com.mapsocial.service.importer.ShopImportReader;
+import com.mapsocial.service.importer.ShopImportRow;
+import com.mapsocial.service.importer.ShopImportWriter;
+import com.mapsocial.service.map.MapFragmentCache;
+import com.mapsocial.service.map.NearbyShopCache;
+import com.mapsocial.service.map.ShopSpatialIndex;
+import com.mapsocial.service.version.DataVersions;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityNotFoundException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ShopImportServiceImpl implements ShopImportService, MessageListener {
+
+    // Import ghi shops bằng JDBC, mọi instance phải load lại index của mình
+    private static final String RELOAD_CHANNEL = "shop-import-reload";
+
+    private final UserRepository userRepository;
+    private final TagRepository tagRepository;
+    private final ShopImportWriter shopImportWriter;
+    private final ShopSpatialIndex shopSpatialIndex;
+    private final MapFragmentCache mapFragmentCache;
+    private final NearbyShopCache nearbyShopCache;
+    private final DataVersions dataVersions;
+    private final ObjectMapper objectMapper;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer redisContainer;
+
+    private final String instanceId = UUID.randomUUID().toString();
+
+    @Value("${social-map.shop-import.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${social-map.shop-import.max-errors:100}")
+    private int maxErrors;
+
+    // Một worker: các job chạy lần lượt, không chiếm nhiều connection của request thường
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "shop-import");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Job đã xong vẫn giữ lại một thời gian để client xem kết quả
+    private final Cache<UUID, ShopImportJob> jobs = Caffeine.newBuilder()
+            .expireAfterAccess(Duration.ofHours(24))
+            .build();
+
+    @PostConstruct
+    public void init() {
+        redisContainer.addMessageListener(this, new ChannelTopic(RELOAD_CHANNEL));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public ShopImportJobResponse startImport(UUID userId, MultipartFile file, String format) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new EntityNotFoundException("User not found"));
+
+        if (user.getRole() != UserRole.SELLER && user.getRole() != UserRole.ADMIN
+                && user.getRole() != UserRole.SUPER_ADMIN) {
+            throw new AccessDeniedException("Chỉ người bán (SELLER) hoặc admin mới được import shop");
+        }
+
+        String resolvedFormat = ShopImportReader.detectFormat(format, file.getOriginalFilename());
+        if (resolvedFormat == null) {
+            throw new IllegalArgumentException("Unsupported import format, expected csv or geojson");
+        }
+
+        // Request kết thúc thì file upload bị xóa -> copy ra file tạm cho worker
+        Path path;
+        try {
+            path = Files.createTempFile("shop-import-", "." + resolvedFormat);
+            file.transferTo(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to store import file", e);
+        }
+
+        ShopImportJob job = new ShopImportJob(userId, resolvedFormat, file.getSize(), maxErrors);
+        jobs.put(job.getId(), job);
+        executor.submit(() -> run(job, resolvedFormat, path));
+
+        log.info("Queued shop import {} ({}, {} bytes) for user {}", job.getId(), resolvedFormat, file.getSize(), userId);
+        return job.toResponse();
+    }
+
+    /**
+     * Nhận thông báo import xong từ instance khác
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String origin = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (instanceId.equals(origin)) {
+            return;
+        }
+        log.info("Reloading map data after shop import on instance {}", origin);
+        reloadMapData();
+    }
+
+    /**
+     * Load lại index rồi mới xóa fragments: fragment build lại từ index cũ trước đó (kể cả trên Redis) bị xóa theo
+     */
+    private void reloadMapData() {
+        shopSpatialIndex.load();
+        mapFragmentCache.invalidateAll();
+        nearbyShopCache.invalidateAll();
+    }
+
+    @Override
+    public ShopImportJobResponse getImportJob(UUID userId, UUID jobId) {
+        ShopImportJob job = jobs.getIfPresent(jobId);
+        if (job == null || !job.getOwnerId().equals(userId)) {
+            throw new EntityNotFoundException("Import job not found");
+        }
+        return job.toResponse();
+    }
+
+    private void run(ShopImportJob job, String format, Path path) {
+        long start = System.currentTimeMillis();
+        job.start();
+
+        String failure = null;
+        try (InputStream in = new CountingInputStream(new BufferedInputStream(Files.newInputStream(path)), job);
+             ShopImportReader reader = ShopImportReader.open(format, in, objectMapper)) {
+
+            Map<String, UUID> tags = loadTags();
+            List<ShopImportRow> batch = new ArrayList<>(batchSize);
+            long batchStart = 0;
+
+            Map<String, String> fields;
+            while ((fields = reader.next()) != null) {
+                job.rowProcessed();
+                try {
+                    ShopImportRow row = ShopImportRow.parse(fields, tags);
+                    if (batch.isEmpty()) {
+                        batchStart = reader.position();
+                    }
+                    batch.add(row);
+                } catch (IllegalArgumentException e) {
+                    job.reject(1, "row " + reader.position() + ": " + e.getMessage());
+                    continue;
+                }
+
+                if (batch.size() >= batchSize) {
+                    flush(job, batch, batchStart, reader.position());
+                }
+            }
+            flush(job, batch, batchStart, reader.position());
+        } catch (Exception e) {
+            // File hỏng / không đọc tiếp được: giữ các lô đã lưu, dừng job
+            log.error("Shop import {} failed: {}", job.getId(), e.getMessage(), e);
+            failure = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        } finally {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("Failed to delete import file {}: {}", path, e.getMessage());
+            }
+        }
+
+        // Shops được ghi thẳng bằng JDBC (không có ShopChangedEvent) -> load lại index và xóa cache bản đồ một lần,
+        // trên instance này và (qua Redis) trên mọi instance khác
+        if (job.getImportedRows() > 0) {
+            reloadMapData();
+            dataVersions.invalidateAll();
+            try {
+                stringRedisTemplate.convertAndSend(RELOAD_CHANNEL, instanceId);
+            } catch (Exception e) {
+                log.warn("Failed to publish shop import reload: {}", e.getMessage());
+            }
+        }
+
+        if (failure != null) {
+            job.fail(failure);
+        } else {
+            job.complete();
+        }
+        log.info("Shop import {} finished: {} imported in {} ms",
+                job.getId(), job.getImportedRows(), System.currentTimeMillis() - start);
+    }
+
+    private void flush(ShopImportJob job, List<ShopImportRow> batch, long firstRow, long lastRow) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            shopImportWriter.insert(batch, job.getOwnerId());
+            job.rowsImported(batch.size());
+        } catch (DataAccessException e) {
+            // Cả lô rollback, các lô khác vẫn tiếp tục
+            String reason = NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+            job.reject(batch.size(), "rows " + firstRow + "-" + lastRow + ": " + reason);
+        }
+        batch.clear();
+    }
+
+    /**
+     * Tag tra theo ID hoặc tên (không phân biệt hoa thường)
+     */
+    private Map<String, UUID> loadTags() {
+        Map<String, UUID> tags = new HashMap<>();
+        for (Tag tag : tagRepository.findAll()) {
+            tags.put(tag.getId().toString(), tag.getId());
+            tags.put(tag.getName().toLowerCase(Locale.ROOT), tag.getId());
+        }
+        return tags;
+    }
+
+    /**
+     * Đếm số byte đã đọc để tính phần trăm tiến độ
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private final ShopImportJob job;
+
+        CountingInputStream(InputStream in, ShopImportJob job) {
+            super(in);
+            this.job = job;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                job.addBytesRead(1);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count > 0) {
+                job.addBytesRead(count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            job.addBytesRead(skipped);
+            return skipped;
+        }
+    }
+}
@@ -1,240 +1,1150 @@
 package com.mapsocial.service.impl;
 
 import com.mapsocial.dto.request.BoundingBoxRequest;
+import com.mapsocial.dto.request.PolygonRequest;
+import com.mapsocial.dto.response.HeatmapCellResponse;
+import com.mapsocial.dto.response.NearbyShopsResponse;
 import com.mapsocial.dto.response.ShopClusterResponse;
-import com.mapsocial.entity.Shop;
+import com.mapsocial.dto.response.ShopMapDeltaResponse;
+import com.mapsocial.dto.response.shop.TagFacetResponse;
+import com.mapsocial.entity.Tag;
+import com.mapsocial.mapper.ShopMapper;
 import com.mapsocial.repository.ShopRepository;
+import com.mapsocial.repository.TagRepository;
 import com.mapsocial.service.ShopMapService;
+import com.mapsocial.service.map.*;
+import com.mapsocial.util.Geohash;
+import com.mapsocial.util.PageResponse;
+import com.mapsocial.util.Polyline;
+import com.mapsocial.util.TileMath;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalTime;
+import java.time.ZoneId;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
+@Transactional(readOnly = true) // Chỉ đọc -> chạy trên read replica khi có cấu hình
 public class ShopMapServiceImpl implements ShopMapService {
 
     private final ShopRepository shopRepository;
+    private final ShopSpatialIndex shopSpatialIndex;
+    private final ShopClusterPyramid shopClusterPyramid;
+    private final ShopTileCache shopTileCache;
+    private final MapFragmentCache mapFragmentCache;
+    private final ShopChangeLog shopChangeLog;
+    private final NearbyShopCache nearbyShopCache;
+    private final ShopTagIndex shopTagIndex;
+    private final ShopOpeningHoursIndex shopOpeningHoursIndex;
+    private final ShopGeohashCounters shopGeohashCounters;
+    private final ShopRankIndex shopRankIndex;
+    private final TagRepository tagRepository;
 
     // Ngưỡng quyết định clustering
     private static final int CLUSTER_THRESHOLD = 100; // Nếu > 100 shops thì cluster
     private static final int MAX_ZOOM_FOR_CLUSTERING = 14; // Zoom >= 14 thì không cluster
     private static final double CLUSTER_RADIUS_KM = 0.5; // Bán kính cluster (km)
+    private static final String TILE_LAYER = "shops";
+    private static final int MAX_FRAGMENT_TILES = 64; // Viewport phủ nhiều tile hơn thì không snap
+    private static final int DEFAULT_CLUSTER_ZOOM = 13; // Lưới cluster khi không có zoom: ô 360 / 2^15 độ (~1.2km)
+    private static final int NEARBY_GEOHASH_PRECISION = 7; // Ô ~150m dùng chung ứng viên nearby
+    private static final int NEARBY_CANDIDATES = 100; // Số ứng viên KNN cache cho mỗi ô
+    private static final UUID NIL_UUID = new UUID(0, 0);
+    private static final int TILE_PIXELS = 256;
+    private static final int HEATMAP_CELL_PIXELS = 32; // Kích thước ô heatmap mong muốn trên màn hình
+    private static final int MAX_HEATMAP_CELLS = 4096; // Viewport cần nhiều ô hơn thì giảm precision
+    private static final int MAX_POLYGON_ROWS = 50000; // Số markers tối đa đọc từ PostGIS cho một polygon
+
+    // Múi giờ dùng cho filter "đang mở cửa" (giờ mở cửa của shop lưu theo giờ địa phương)
+    @Value("${social-map.map.time-zone:Asia/Ho_Chi_Minh}")
+    private String timeZone;
 
     @Override
     public List<ShopClusterResponse> getShopsInBoundingBox(BoundingBoxRequest request) {
-        // Đếm số lượng shops trong vùng
-        Long count = shopRepository.countShopsInBoundingBox(
+        // Fragments / pyramid không phân biệt tag / giờ mở cửa -> request có filter đi đường riêng
+        LocalTime openAt = resolveOpenAt(request);
+        boolean hasTags = request.getTagIds() != null && !request.getTagIds().isEmpty();
+        if (hasTags || openAt != null) {
+            return getFilteredShopsInBoundingBox(request, hasTags, openAt);
+        }
+
+        // Snap viewport theo tile để các request gần nhau dùng chung fragments đã cache
+        // (fragments cắt theo limit với thứ tự bất kỳ -> request ranked không dùng)
+        if (request.getZoom() != null && !isRanked(request)) {
+            List<ShopClusterResponse> snapped = getShopsFromTileFragments(request);
+            if (snapped != null) {
+                return snapped;
+            }
+        }
+
+        if (shopSpatialIndex.isReady()) {
+            return getShopsInBoundingBoxFromIndex(request);
+        }
+
+        // Index chưa sẵn sàng (đang khởi động) -> fallback về PostGIS
+        // Đếm, quyết định clustering và gom cluster trong cùng một query
+        Integer zoom = request.getZoom();
+        if (zoom != null && zoom >= MAX_ZOOM_FOR_CLUSTERING && isRanked(request)) {
+            return getIndividualShopsInBoundingBox(request);
+        }
+        int threshold = (zoom != null && zoom >= MAX_ZOOM_FOR_CLUSTERING) ? Integer.MAX_VALUE : CLUSTER_THRESHOLD;
+        return findClustersInDatabase(request, threshold);
+    }
+
+    /**
+     * Lọc markers trong bbox bằng bitmap của ShopTagIndex / ShopOpeningHoursIndex, sau đó cluster như bình thường
+     */
+    private List<ShopClusterResponse> getFilteredShopsInBoundingBox(BoundingBoxRequest request, boolean hasTags,
+                                                                    LocalTime openAt) {
+        List<ShopMarker> markers = findFilteredMarkers(request, hasTags, openAt);
+
+        log.info("Found {} shops in bounding box (tags: {}, open at: {})", markers.size(), request.getTagIds(), openAt);
+
+        if (shouldUseCluster((long) markers.size(), request.getZoom())) {
+            return performGridBasedClustering(markers, request.getZoom());
+        }
+        if (isRanked(request)) {
+            return toIndividualResponses(ShopRankIndex.spread(markers, getRankZoom(request), request.getLimit(),
+                    request.getRankBy()), null);
+        }
+        return toIndividualResponses(markers, request.getLimit());
+    }
+
+    private List<ShopMarker> findFilteredMarkers(BoundingBoxRequest request, boolean hasTags, LocalTime openAt) {
+        List<ShopMarker> markers;
+        if (shopSpatialIndex.isReady()) {
+            markers = queryIndex(request);
+            if (hasTags) {
+                markers = shopTagIndex.filterByTags(markers, request.getTagIds());
+            }
+            if (openAt != null) {
+                markers = shopOpeningHoursIndex.filterOpenAt(markers, openAt);
+            }
+        } else {
+            // Index chưa sẵn sàng: lấy markers kèm tags / giờ mở cửa từ PostGIS rồi lọc trong Java
+            markers = new ArrayList<>();
+            for (Object[] row : shopRepository.findIndexedShopMarkersInBoundingBox(
+                    request.getNorth(),
+                    request.getSouth(),
+                    request.getEast(),
+                    request.getWest())) {
+                ShopMarker marker = ShopMapper.toIndexedShopMarker(row);
+                if (matchesFilters(marker, request, hasTags, openAt)) {
+                    markers.add(marker);
+                }
+            }
+        }
+        return markers;
+    }
+
+    private static boolean matchesFilters(ShopMarker marker, BoundingBoxRequest request, boolean hasTags,
+                                          LocalTime openAt) {
+        if (hasTags && Collections.disjoint(marker.getTagIds(), request.getTagIds())) {
+            return false;
+        }
+        return openAt == null || marker.isOpenAt(openAt);
+    }
+
+    /**
+     * openAt nếu có, openNow = giờ hiện tại theo múi giờ của bản đồ, ngược lại null (không lọc)
+     */
+    private LocalTime resolveOpenAt(BoundingBoxRequest request) {
+        if (request.getOpenAt() != null) {
+            return request.getOpenAt();
+        }
+        if (Boolean.TRUE.equals(request.getOpenNow())) {
+            return LocalTime.now(ZoneId.of(timeZone));
+        }
+        return null;
+    }
+
+    @Override
+    public List<TagFacetResponse> getTagFacets(BoundingBoxRequest request) {
+        Map<UUID, Integer> counts = new HashMap<>();
+        if (shopSpatialIndex.isReady()) {
+            counts.putAll(shopTagIndex.countByTag(queryIndex(request)));
+        } else {
+            for (Object[] row : shopRepository.countShopsByTagInBoundingBox(
+                    request.getNorth(),
+                    request.getSouth(),
+                    request.getEast(),
+                    request.getWest())) {
+                counts.put((UUID) row[0], ((Number) row[1]).intValue());
+            }
+        }
+
+        List<TagFacetResponse> facets = new ArrayList<>(counts.size());
+        for (Tag tag : tagRepository.findAllById(counts.keySet())) {
+            facets.add(TagFacetResponse.builder()
+                    .tagId(tag.getId())
+                    .name(tag.getName())
+                    .count(counts.get(tag.getId()))
+                    .build());
+        }
+        facets.sort(Comparator.comparing(TagFacetResponse::getCount).reversed()
+                .thenComparing(TagFacetResponse::getName));
+        return facets;
+    }
+
+    @Override
+    public List<HeatmapCellResponse> getHeatmap(BoundingBoxRequest request) {
+        if (!shopGeohashCounters.isReady()) {
+            throw new IllegalStateException("Heatmap counters are not loaded yet");
+        }
+
+        int precision = getHeatmapPrecision(request);
+        List<HeatmapCellResponse> cells = new ArrayList<>();
+        for (ShopGeohashCounters.Cell cell : shopGeohashCounters.query(
                 request.getNorth(),
                 request.getSouth(),
                 request.getEast(),
-                request.getWest()
-        );
-
-        log.info("Found {} shops in bounding box (zoom: {})", count, request.getZoom());
+                request.getWest(),
+                precision)) {
+            double[] center = Geohash.center(cell.geohash());
+            cells.add(HeatmapCellResponse.builder()
+                    .geohash(cell.geohash())
+                    .latitude(center[0])
+                    .longitude(center[1])
+                    .count(cell.count())
+                    .build());
+        }
+        return cells;
+    }
 
-        // Quyết định clustering dựa vào số lượng và zoom level
-        boolean shouldCluster = shouldUseCluster(count, request.getZoom());
+    /**
+     * Precision lớn nhất có ô rộng >= HEATMAP_CELL_PIXELS ở zoom hiện tại,
+     * giảm dần nếu viewport cần quá MAX_HEATMAP_CELLS ô
+     */
+    private int getHeatmapPrecision(BoundingBoxRequest request) {
+        int zoom = request.getZoom() != null ? request.getZoom() : 10;
+        double minCellWidth = 360.0 * HEATMAP_CELL_PIXELS / (TILE_PIXELS * Math.pow(2, zoom));
 
-        if (shouldCluster) {
-            log.info("Using clustering mode");
-            return getClustersInBoundingBox(request);
-        } else {
-            log.info("Using individual shops mode");
-            return getIndividualShopsInBoundingBox(request);
+        int precision = ShopGeohashCounters.MIN_PRECISION;
+        while (precision < ShopGeohashCounters.MAX_PRECISION
+                && Geohash.cellWidth(precision + 1) >= minCellWidth) {
+            precision++;
+        }
+        while (precision > ShopGeohashCounters.MIN_PRECISION
+                && ShopGeohashCounters.cellsCovering(request.getNorth(), request.getSouth(),
+                        request.getEast(), request.getWest(), precision) > MAX_HEATMAP_CELLS) {
+            precision--;
         }
+        return precision;
     }
 
     @Override
     public List<ShopClusterResponse> getIndividualShopsInBoundingBox(BoundingBoxRequest request) {
-        // Lấy shops với giới hạn nếu có
-        List<Shop> shops;
+        if (shopSpatialIndex.isReady()) {
+            if (isRanked(request)) {
+                return getRankedShopsFromIndex(request);
+            }
+            return toIndividualResponses(queryIndex(request), request.getLimit());
+        }
 
-        if (request.getLimit() != null && request.getLimit() > 0) {
-            shops = shopRepository.findShopsInBoundingBoxWithLimit(
+        if (isRanked(request)) {
+            // ORDER BY theo hạng trong PostGIS (không dàn đều theo không gian)
+            List<ShopClusterResponse> result = new ArrayList<>();
+            for (Object[] row : shopRepository.findTopShopMarkersInBoundingBox(
                     request.getNorth(),
                     request.getSouth(),
                     request.getEast(),
                     request.getWest(),
-                    request.getLimit()
-            );
+                    request.getRankBy().name(),
+                    request.getLimit())) {
+                result.add(ShopMapper.toClusterResponse(ShopMapper.toShopMarker(row)));
+            }
+            return result;
+        }
+
+        // Projection query trên read model shop_markers: một round trip, không load entity / shop_images
+        return toIndividualResponses(findMarkersInDatabase(
+                request.getNorth(),
+                request.getSouth(),
+                request.getEast(),
+                request.getWest(),
+                request.getLimit()
+        ), null);
+    }
+
+    @Override
+    public void streamIndividualShopsInBoundingBox(BoundingBoxRequest request, Consumer<ShopClusterResponse> consumer) {
+        int maxRows = (request.getLimit() != null && request.getLimit() > 0) ? request.getLimit() : Integer.MAX_VALUE;
+
+        if (shopSpatialIndex.isReady()) {
+            List<ShopMarker> markers = queryIndex(request);
+            for (int i = 0; i < markers.size() && i < maxRows; i++) {
+                consumer.accept(ShopMapper.toClusterResponse(markers.get(i)));
+            }
+            return;
+        }
+
+        // Đọc theo cursor, mỗi dòng được ghi ra ngay nên heap không phụ thuộc số shops
+        try (Stream<Object[]> rows = shopRepository.streamShopMarkersInBoundingBox(
+                request.getNorth(),
+                request.getSouth(),
+                request.getEast(),
+                request.getWest(),
+                maxRows)) {
+            rows.forEach(row -> consumer.accept(ShopMapper.toClusterResponse(ShopMapper.toShopMarker(row))));
+        }
+    }
+
+    @Override
+    public void streamShopsAlongRoute(List<double[]> route, double widthMeters, Integer limit,
+                                      Consumer<ShopClusterResponse> consumer) {
+        int maxRows = (limit != null && limit > 0) ? limit : Integer.MAX_VALUE;
+
+        // Một query duy nhất cho cả tuyến (thay cho nhiều bbox query dọc đường), PostGIS sort theo vị trí trên tuyến
+        try (Stream<Object[]> rows = shopRepository.streamShopsAlongRoute(Polyline.toWkt(route), widthMeters, maxRows)) {
+            rows.forEach(row -> {
+                ShopClusterResponse shop = ShopMapper.toClusterResponse(ShopMapper.toShopMarker(row));
+                shop.setDistance(((Number) row[8]).doubleValue());
+                shop.setRouteOffset(((Number) row[9]).doubleValue());
+                consumer.accept(shop);
+            });
+        }
+    }
+
+    @Override
+    public List<ShopClusterResponse> getShopsInPolygon(PolygonRequest request) {
+        MapArea area = MapArea.of(request.getCoordinates(), getPolygonTolerance(request.getZoom()));
+
+        // Envelope của polygon làm bbox prefilter, filters giữ nguyên như getShopsInBoundingBox
+        BoundingBoxRequest box = BoundingBoxRequest.builder()
+                .north(area.north())
+                .south(area.south())
+                .east(area.east())
+                .west(area.west())
+                .zoom(request.getZoom())
+                .limit(request.getLimit())
+                .tagIds(request.getTagIds())
+                .openNow(request.getOpenNow())
+                .openAt(request.getOpenAt())
+                .build();
+        LocalTime openAt = resolveOpenAt(box);
+        boolean hasTags = box.getTagIds() != null && !box.getTagIds().isEmpty();
+
+        List<ShopMarker> markers = new ArrayList<>();
+        if (shopSpatialIndex.isReady()) {
+            // Markers trong envelope từ index trong bộ nhớ, lọc bằng prepared geometry
+            for (ShopMarker marker : findFilteredMarkers(box, hasTags, openAt)) {
+                if (area.contains(marker)) {
+                    markers.add(marker);
+                }
+            }
         } else {
-            shops = shopRepository.findShopsInBoundingBox(
-                    request.getNorth(),
-                    request.getSouth(),
-                    request.getEast(),
-                    request.getWest()
-            );
+            // Index chưa sẵn sàng: && (GiST) + ST_Intersects trong PostGIS, tags / giờ mở cửa lọc trong Java
+            boolean filtered = hasTags || openAt != null;
+            for (Object[] row : shopRepository.findShopMarkersInPolygon(area.toWkt(), area.north(), area.south(),
+                    area.east(), area.west(), getPolygonRowCap(request, filtered))) {
+                ShopMarker marker = ShopMapper.toIndexedShopMarker(row);
+                if (matchesFilters(marker, box, hasTags, openAt)) {
+                    markers.add(marker);
+                }
+            }
+        }
+
+        log.info("Found {} shops in polygon ({} vertices after simplification)", markers.size(), area.getVertexCount());
+
+        if (shouldUseCluster((long) markers.size(), request.getZoom())) {
+            return performGridBasedClustering(markers, request.getZoom());
         }
+        return toIndividualResponses(markers, request.getLimit());
+    }
 
-        // Convert to response
-        return shops.stream()
-                .map(this::toShopResponse)
-                .collect(Collectors.toList());
+    /**
+     * Số dòng tối đa đọc từ PostGIS cho polygon: zoom không cluster thì chỉ cần limit dòng,
+     * còn lại cần đủ markers để đếm / gom cluster nhưng vẫn chặn ở MAX_POLYGON_ROWS.
+     * Có filter (lọc trong Java sau khi đọc) thì limit dòng đầu có thể không đủ limit shops khớp -> chỉ chặn MAX_POLYGON_ROWS
+     */
+    private int getPolygonRowCap(PolygonRequest request, boolean filtered) {
+        Integer zoom = request.getZoom();
+        Integer limit = request.getLimit();
+        if (!filtered && zoom != null && zoom >= MAX_ZOOM_FOR_CLUSTERING && limit != null && limit > 0) {
+            return Math.min(limit, MAX_POLYGON_ROWS);
+        }
+        return MAX_POLYGON_ROWS;
     }
 
     @Override
     public List<ShopClusterResponse> getClustersInBoundingBox(BoundingBoxRequest request) {
-        // Lấy lightweight data (chỉ id, lat, lng, name) từ PostGIS query
-        List<Object[]> locations =
-                shopRepository.findShopLocationsInBoundingBox(
-                        request.getNorth(),
-                        request.getSouth(),
-                        request.getEast(),
-                        request.getWest()
-                );
+        if (shopSpatialIndex.isReady()) {
+            if (request.getZoom() != null) {
+                return toClusterResponses(queryPyramid(request));
+            }
+            return performGridBasedClustering(queryIndex(request), null);
+        }
+
+        // Gom cluster ngay trong PostGIS (threshold -1 = luôn cluster)
+        return findClustersInDatabase(request, -1);
+    }
+
+    @Override
+    public PageResponse<ShopClusterResponse> getClusterChildren(String clusterId, BoundingBoxRequest filters,
+                                                                int page, int size) {
+        ShopClusterId parent = ShopClusterId.parse(clusterId);
+        LocalTime openAt = resolveOpenAt(filters);
+        boolean hasTags = filters.getTagIds() != null && !filters.getTagIds().isEmpty();
+
+        List<ShopClusterResponse> children;
+        if (shopSpatialIndex.isReady() && !hasTags && openAt == null) {
+            children = getChildrenFromPyramid(parent);
+        } else {
+            // Pyramid không phân biệt tag / giờ mở cửa -> lọc shops trong ô rồi gom theo lưới của zoom kế tiếp
+            BoundingBoxRequest cell = BoundingBoxRequest.builder()
+                    .north(parent.north())
+                    .south(parent.south())
+                    .east(parent.east())
+                    .west(parent.west())
+                    .tagIds(filters.getTagIds())
+                    .build();
+            List<ShopMarker> markers = new ArrayList<>();
+            for (ShopMarker marker : findFilteredMarkers(cell, hasTags, openAt)) {
+                if (parent.contains(marker)) {
+                    markers.add(marker);
+                }
+            }
+            markers.sort(Comparator.comparing(ShopMarker::getId));
+
+            int childZoom = parent.zoom() + 1;
+            children = childZoom < MAX_ZOOM_FOR_CLUSTERING
+                    ? performGridBasedClustering(markers, childZoom)
+                    : toIndividualResponses(markers, null);
+        }
+
+        log.info("Cluster {} has {} children", clusterId, children.size());
 
-        // Thực hiện clustering bằng thuật toán đơn giản (grid-based)
-        return performGridBasedClustering(locations);
+        int from = (int) Math.min((long) page * size, children.size());
+        int to = Math.min(from + size, children.size());
+        return new PageResponse<>(new ArrayList<>(children.subList(from, to)), page, size,
+                children.size(), (children.size() + size - 1) / size);
     }
 
     /**
-     * Quyết định có nên sử dụng clustering hay không
+     * Đi xuống pyramid từ ô parent: trả về các ô con ở zoom kế tiếp,
+     * bỏ qua các zoom mà ô chỉ có đúng một ô con (mở ra sẽ trông y hệt cluster cũ),
+     * tới zoom không cluster thì trả về shops trong ô
      */
-    private boolean shouldUseCluster(Long shopCount, Integer zoom) {
-        if (zoom == null) {
-            // Nếu không có zoom, dựa vào số lượng
-            return shopCount > CLUSTER_THRESHOLD;
+    private List<ShopClusterResponse> getChildrenFromPyramid(ShopClusterId parent) {
+        ShopClusterId current = parent;
+        while (current.zoom() + 1 < MAX_ZOOM_FOR_CLUSTERING) {
+            List<ShopCluster> children = shopClusterPyramid.getChildren(current);
+            if (children.size() != 1 || children.getFirst().getSingle() != null) {
+                return toClusterResponses(children);
+            }
+            current = children.getFirst().getClusterId();
         }
 
-        // Zoom cao (gần) -> không cluster
-        if (zoom >= MAX_ZOOM_FOR_CLUSTERING) {
-            return false;
+        ShopClusterId cell = current;
+        List<ShopMarker> markers = new ArrayList<>();
+        for (ShopMarker marker : shopSpatialIndex.query(cell.north(), cell.south(), cell.east(), cell.west())) {
+            if (cell.contains(marker)) {
+                markers.add(marker);
+            }
         }
+        // Thứ tự cố định để phân trang không bị trùng / sót giữa các trang
+        markers.sort(Comparator.comparing(ShopMarker::getId));
+        return toIndividualResponses(markers, null);
+    }
 
-        // Zoom thấp (xa) và nhiều shops -> cluster
-        return shopCount > CLUSTER_THRESHOLD;
+    @Override
+    public ShopMapDeltaResponse getShopsDelta(BoundingBoxRequest request, BoundingBoxRequest previous, String version) {
+        if (!shopSpatialIndex.isReady()) {
+            // Không có version khi đọc từ PostGIS -> lần sau client lại nhận bản đầy đủ
+            return resetDelta(request, null);
+        }
+
+        // Đọc version trước khi query để không bỏ sót thay đổi xảy ra giữa hai bước
+        String currentVersion = shopChangeLog.currentToken();
+        Set<UUID> changed = previous != null ? shopChangeLog.changedSince(version) : null;
+        if (changed == null) {
+            return resetDelta(request, currentVersion);
+        }
+
+        // Delta chỉ có nghĩa khi cả hai viewport đều hiển thị từng shop đầy đủ (như /map với cùng zoom / limit);
+        // viewport bị cluster hoặc cắt theo limit thì client nhận lại bản đầy đủ
+        List<ShopMarker> markers = queryIndex(request);
+        List<ShopMarker> previousMarkers = queryIndex(previous);
+        if (!isFullyIndividual(markers.size(), request) || !isFullyIndividual(previousMarkers.size(), request)) {
+            return resetDelta(request, currentVersion);
+        }
+
+        List<ShopClusterResponse> added = new ArrayList<>();
+        Set<UUID> visible = new HashSet<>(markers.size() * 2);
+        for (ShopMarker marker : markers) {
+            visible.add(marker.getId());
+            if (changed.contains(marker.getId()) || !contains(previous, marker)) {
+                added.add(ShopMapper.toClusterResponse(marker));
+            }
+        }
+
+        Set<String> removed = new LinkedHashSet<>();
+        for (ShopMarker marker : previousMarkers) {
+            if (!contains(request, marker)) {
+                removed.add(marker.getId().toString());
+            }
+        }
+        // Shop đã bị xóa / đóng / dời khỏi viewport kể từ version cũ
+        for (UUID shopId : changed) {
+            if (!visible.contains(shopId)) {
+                removed.add(shopId.toString());
+            }
+        }
+
+        log.info("Map delta: {} added, {} removed ({} changed since {})", added.size(), removed.size(), changed.size(), version);
+
+        return ShopMapDeltaResponse.builder()
+                .version(currentVersion)
+                .reset(false)
+                .added(added)
+                .removed(new ArrayList<>(removed))
+                .build();
     }
 
     /**
-     * Clustering đơn giản dựa trên grid
-     * Chia bản đồ thành lưới và gom các shops trong cùng một ô
-     * @param locations List of Object[] with [UUID id, Double lat, Double lng, String name]
+     * Bản đầy đủ của viewport, cùng quyết định cluster / limit như getShopsInBoundingBox
      */
-    private List<ShopClusterResponse> performGridBasedClustering(List<Object[]> locations) {
+    private ShopMapDeltaResponse resetDelta(BoundingBoxRequest request, String version) {
+        return ShopMapDeltaResponse.builder()
+                .version(version)
+                .reset(true)
+                .added(getShopsInBoundingBox(request))
+                .removed(Collections.emptyList())
+                .build();
+    }
 
-        if (locations.isEmpty()) {
-            return Collections.emptyList();
+    /**
+     * /map trả về đủ từng shop (không cluster, không cắt theo limit) cho viewport có shopCount shops
+     */
+    private boolean isFullyIndividual(int shopCount, BoundingBoxRequest request) {
+        Integer limit = request.getLimit();
+        return !shouldUseCluster((long) shopCount, request.getZoom())
+                && (limit == null || limit <= 0 || shopCount <= limit);
+    }
+
+    @Override
+    public NearbyShopsResponse getNearbyShops(double latitude, double longitude, double radiusMeters,
+                                              String cursor, int limit) {
+        // Trang đầu: thử dùng ứng viên đã cache của ô geohash chứa vị trí
+        if (cursor == null) {
+            NearbyShopsResponse cached = getNearbyShopsFromCell(latitude, longitude, radiusMeters, limit);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        double afterDistance = -1;
+        UUID afterId = NIL_UUID;
+        if (cursor != null) {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(",", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            afterDistance = Double.parseDouble(parts[0]);
+            afterId = UUID.fromString(parts[1]);
+        }
+
+        // Lấy thêm một dòng để biết còn trang sau hay không
+        List<Object[]> rows = shopRepository.findNearestShops(
+                latitude, longitude, radiusMeters, afterDistance, afterId, limit + 1);
+
+        List<ShopClusterResponse> shops = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            ShopClusterResponse shop = ShopMapper.toClusterResponse(ShopMapper.toShopMarker(row));
+            shop.setDistance(((Number) row[8]).doubleValue());
+            shops.add(shop);
         }
+        return toNearbyPage(shops, limit, shops.size() > limit);
+    }
+
+    /**
+     * Ứng viên của ô được lấy quanh tâm ô với bán kính nới thêm (tâm -> góc ô), nên mọi shop
+     * cách vị trí thật <= reach - slack chắc chắn có trong danh sách.
+     * @return null nếu danh sách ứng viên không đủ để chắc chắn về trang đầu -> query trực tiếp
+     */
+    private NearbyShopsResponse getNearbyShopsFromCell(double latitude, double longitude, double radiusMeters, int limit) {
+        String cell = Geohash.encode(latitude, longitude, NEARBY_GEOHASH_PRECISION);
+        double slack = Geohash.centerToCornerMeters(cell);
+        double[] center = Geohash.center(cell);
 
-        // Grid size (độ lớn mỗi ô lưới) - có thể điều chỉnh
-        double gridSize = 0.01; // ~1km
+        NearbyShopCache.Candidates candidates = nearbyShopCache.get(cell, (int) Math.ceil(radiusMeters), () -> {
+            List<Object[]> rows = shopRepository.findNearestShops(
+                    center[0], center[1], radiusMeters + slack, -1.0, NIL_UUID, NEARBY_CANDIDATES);
+            List<ShopMarker> markers = new ArrayList<>(rows.size());
+            for (Object[] row : rows) {
+                markers.add(ShopMapper.toShopMarker(row));
+            }
+            double reach = rows.isEmpty() ? radiusMeters + slack : ((Number) rows.getLast()[8]).doubleValue();
+            return new NearbyShopCache.Candidates(markers, reach, rows.size() < NEARBY_CANDIDATES);
+        });
 
-        // Map để gom nhóm shops theo grid cell
-        Map<String, List<ShopLocation>> grid = new HashMap<>();
+        List<ShopClusterResponse> shops = new ArrayList<>();
+        for (ShopMarker marker : candidates.getMarkers()) {
+            double distance = Geohash.distanceMeters(latitude, longitude, marker.getLatitude(), marker.getLongitude());
+            if (distance <= radiusMeters) {
+                ShopClusterResponse shop = ShopMapper.toClusterResponse(marker);
+                shop.setDistance(distance);
+                shops.add(shop);
+            }
+        }
+        shops.sort(Comparator.comparingDouble(ShopClusterResponse::getDistance)
+                .thenComparing(ShopClusterResponse::getId));
 
-        for (Object[] row : locations) {
-            UUID id = (UUID) row[0];
-            Double latitude = (Double) row[1];
-            Double longitude = (Double) row[2];
-            String name = (String) row[3];
+        if (candidates.isComplete()) {
+            return toCachedNearbyPage(shops, latitude, longitude, limit, shops.size() > limit);
+        }
 
-            ShopLocation location = new ShopLocation(id, latitude, longitude, name);
-            String gridKey = getGridKey(latitude, longitude, gridSize);
-            grid.computeIfAbsent(gridKey, k -> new ArrayList<>()).add(location);
+        double safe = candidates.getReach() - slack;
+        int safeCount = 0;
+        while (safeCount < shops.size() && shops.get(safeCount).getDistance() <= safe) {
+            safeCount++;
         }
+        if (safeCount > limit) {
+            return toCachedNearbyPage(shops, latitude, longitude, limit, true);
+        }
+        return null;
+    }
 
-        // Convert grid cells to clusters hoặc individual shops
-        List<ShopClusterResponse> result = new ArrayList<>();
+    /**
+     * Trang đầu tính từ ứng viên cache: thứ tự theo haversine trong Java, nhưng cursor phải cùng giá trị
+     * với biểu thức distance trong SQL của các trang sau (sai lệch số học nhỏ cũng đủ làm trùng / sót shop ở ranh giới)
+     * -> lấy lại khoảng cách của dòng cuối trang từ PostGIS
+     */
+    private NearbyShopsResponse toCachedNearbyPage(List<ShopClusterResponse> shops, double latitude, double longitude,
+                                                   int limit, boolean hasMore) {
+        NearbyShopsResponse page = toNearbyPage(shops, limit, hasMore);
+        if (page.getNextCursor() != null) {
+            ShopClusterResponse last = page.getShops().getLast();
+            Double distance = shopRepository.findDistanceToShop(latitude, longitude, UUID.fromString(last.getId()));
+            if (distance == null) {
+                // Shop vừa bị xóa sau khi cache ứng viên -> query trực tiếp
+                return null;
+            }
+            page.setNextCursor(encodeNearbyCursor(distance, last.getId()));
+        }
+        return page;
+    }
+
+    @Override
+    public PageResponse<ShopClusterResponse> searchShopsInBoundingBox(BoundingBoxRequest request, String query,
+                                                                      int page, int size) {
+        Page<Object[]> rows = shopRepository.searchShopsInBoundingBox(
+                query.trim(),
+                request.getNorth(),
+                request.getSouth(),
+                request.getEast(),
+                request.getWest(),
+                PageRequest.of(page, size)
+        );
 
-        for (Map.Entry<String, List<ShopLocation>> entry : grid.entrySet()) {
-            List<ShopLocation> cellShops = entry.getValue();
+        log.info("Search '{}' in bounding box: {} shops", query, rows.getTotalElements());
 
-            if (cellShops.size() == 1) {
-                // Chỉ có 1 shop -> hiển thị như individual shop
-                ShopLocation shop = cellShops.getFirst();
+        return new PageResponse<>(rows.map(row -> ShopMapper.toClusterResponse(ShopMapper.toShopMarker(row))));
+    }
+
+    private NearbyShopsResponse toNearbyPage(List<ShopClusterResponse> shops, int limit, boolean hasMore) {
+        List<ShopClusterResponse> page = shops.size() > limit ? new ArrayList<>(shops.subList(0, limit)) : shops;
+
+        String nextCursor = null;
+        if (hasMore && !page.isEmpty()) {
+            ShopClusterResponse last = page.getLast();
+            nextCursor = encodeNearbyCursor(last.getDistance(), last.getId());
+        }
+
+        return NearbyShopsResponse.builder()
+                .shops(page)
+                .nextCursor(nextCursor)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    private static String encodeNearbyCursor(double distance, String shopId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((distance + "," + shopId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static boolean contains(BoundingBoxRequest box, ShopMarker marker) {
+        return marker.getLatitude() >= box.getSouth() && marker.getLatitude() <= box.getNorth()
+                && marker.getLongitude() >= box.getWest() && marker.getLongitude() <= box.getEast();
+    }
+
+    /**
+     * Một round trip duy nhất tới PostGIS: chỉ trả về một dòng cho mỗi cluster
+     * thay vì ship toàn bộ shops trong vùng về Java
+     */
+    private List<ShopClusterResponse> findClustersInDatabase(BoundingBoxRequest request, int threshold) {
+        Integer limit = (request.getLimit() != null && request.getLimit() > 0) ? request.getLimit() : Integer.MAX_VALUE;
+
+        List<Object[]> rows = shopRepository.findShopClustersInBoundingBox(
+                request.getNorth(),
+                request.getSouth(),
+                request.getEast(),
+                request.getWest(),
+                threshold,
+                getGridTiles(request.getZoom()),
+                limit
+        );
+
+        int clusterZoom = getClusterZoom(request.getZoom());
+        List<ShopClusterResponse> result = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            long count = ((Number) row[0]).longValue();
+            String sampleIds = (String) row[3];
+
+            if (count == 1) {
                 result.add(ShopClusterResponse.builder()
                         .type("shop")
-                        .id(shop.getId().toString())
-                        .name(shop.getName())
-                        .latitude(shop.getLatitude())
-                        .longitude(shop.getLongitude())
+                        .id(sampleIds)
+                        .latitude((Double) row[1])
+                        .longitude((Double) row[2])
+                        .name((String) row[4])
+                        .address((String) row[5])
+                        .rating((Double) row[6])
+                        .status((String) row[7])
+                        .imageUrl((String) row[8])
                         .build());
             } else {
-                // Nhiều shops -> tạo cluster
-                double avgLat = cellShops.stream()
-                        .mapToDouble(ShopLocation::getLatitude)
-                        .average()
-                        .orElse(0.0);
+                // PostGIS gom theo cùng lưới Web Mercator với pyramid, tâm cluster luôn nằm trong ô của nó
+                double latitude = (Double) row[1];
+                double longitude = (Double) row[2];
+                result.add(ShopMapper.toClusterResponse(
+                        ShopClusterId.containing(latitude, longitude, clusterZoom), (int) count, latitude, longitude));
+            }
+        }
 
-                double avgLng = cellShops.stream()
-                        .mapToDouble(ShopLocation::getLongitude)
-                        .average()
-                        .orElse(0.0);
+        log.info("Loaded {} clusters/shops from PostGIS (zoom: {})", result.size(), request.getZoom());
+        return result;
+    }
 
-                List<String> shopIds = cellShops.stream()
-                        .map(s -> s.getId().toString())
-                        .toList();
+    /**
+     * Số ô lưới mỗi chiều theo zoom: cùng lưới với cluster pyramid (4x4 ô mỗi tile)
+     */
+    private double getGridTiles(Integer zoom) {
+        return 1 << (getClusterZoom(zoom) + ShopClusterPyramid.CELL_ZOOM_OFFSET);
+    }
 
-                result.add(ShopClusterResponse.builder()
-                        .type("cluster")
-                        .latitude(avgLat)
-                        .longitude(avgLng)
-                        .count(cellShops.size())
-                        .shopIds(shopIds)
-                        .build());
+    private static int getClusterZoom(Integer zoom) {
+        if (zoom == null) {
+            return DEFAULT_CLUSTER_ZOOM;
+        }
+        return Math.max(0, Math.min(TileMath.MAX_ZOOM, zoom));
+    }
+
+    @Override
+    public byte[] getShopTile(int zoom, int x, int y) {
+        if (!shopSpatialIndex.isReady()) {
+            // Index chưa sẵn sàng -> build từ PostGIS và không cache
+            return buildTileFromDatabase(zoom, x, y);
+        }
+        return shopTileCache.get(zoom, x, y, () -> buildTile(zoom, x, y));
+    }
+
+    /**
+     * Zoom thấp: mỗi ô của cluster pyramid trong tile là một feature
+     * Zoom cao: mỗi shop trong tile là một feature
+     */
+    private byte[] buildTile(int zoom, int x, int y) {
+        MvtEncoder encoder = new MvtEncoder(TILE_LAYER, MvtEncoder.DEFAULT_EXTENT);
+
+        if (zoom < MAX_ZOOM_FOR_CLUSTERING) {
+            for (ShopCluster cluster : shopClusterPyramid.getClustersInTile(zoom, x, y)) {
+                if (cluster.getSingle() != null) {
+                    addShopFeature(encoder, cluster.getSingle(), zoom, x, y);
+                } else {
+                    Map<String, Object> properties = new LinkedHashMap<>();
+                    properties.put("type", "cluster");
+                    properties.put("count", cluster.getCount());
+                    addFeature(encoder, cluster.getLatitude(), cluster.getLongitude(), zoom, x, y, properties);
+                }
+            }
+        } else {
+            List<ShopMarker> markers = shopSpatialIndex.query(
+                    TileMath.tileLatitude(y, zoom),
+                    TileMath.tileLatitude(y + 1, zoom),
+                    TileMath.tileLongitude(x + 1, zoom),
+                    TileMath.tileLongitude(x, zoom)
+            );
+            for (ShopMarker marker : markers) {
+                if (isInTile(marker.getLatitude(), marker.getLongitude(), zoom, x, y)) {
+                    addShopFeature(encoder, marker, zoom, x, y);
+                }
             }
         }
 
-        log.info("Created {} clusters/shops from {} locations", result.size(), locations.size());
+        return encoder.encode();
+    }
+
+    private byte[] buildTileFromDatabase(int zoom, int x, int y) {
+        MvtEncoder encoder = new MvtEncoder(TILE_LAYER, MvtEncoder.DEFAULT_EXTENT);
+
+        for (ShopMarker marker : findTileLocationsInDatabase(zoom, x, y)) {
+            addShopFeature(encoder, marker, zoom, x, y);
+        }
+
+        return encoder.encode();
+    }
+
+    private void addShopFeature(MvtEncoder encoder, ShopMarker marker, int zoom, int x, int y) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("type", "shop");
+        properties.put("id", marker.getId().toString());
+        properties.put("name", marker.getName());
+        properties.put("imageUrl", marker.getImageUrl());
+        properties.put("rating", marker.getRating());
+        properties.put("status", marker.getStatus() != null ? marker.getStatus().toString() : null);
+        addFeature(encoder, marker.getLatitude(), marker.getLongitude(), zoom, x, y, properties);
+    }
+
+    private void addFeature(MvtEncoder encoder, double latitude, double longitude,
+                            int zoom, int x, int y, Map<String, Object> properties) {
+        int px = (int) Math.round((TileMath.exactTileX(longitude, zoom) - x) * encoder.getExtent());
+        int py = (int) Math.round((TileMath.exactTileY(latitude, zoom) - y) * encoder.getExtent());
+        encoder.addPoint(px, py, properties);
+    }
+
+    /**
+     * Ghép kết quả từ fragments theo tile tại zoom của request
+     * Trả về null nếu viewport phủ quá nhiều tile (để caller xử lý trực tiếp)
+     */
+    private List<ShopClusterResponse> getShopsFromTileFragments(BoundingBoxRequest request) {
+        int zoom = Math.max(0, Math.min(TileMath.MAX_ZOOM, request.getZoom()));
+
+        int minX = TileMath.tileX(request.getWest(), zoom);
+        int maxX = TileMath.tileX(request.getEast(), zoom);
+        int minY = TileMath.tileY(request.getNorth(), zoom);
+        int maxY = TileMath.tileY(request.getSouth(), zoom);
+
+        // Khi chưa có index mỗi tile miss là một query PostGIS -> giới hạn chặt hơn
+        int maxTiles = shopSpatialIndex.isReady() ? MAX_FRAGMENT_TILES : MAX_FRAGMENT_TILES / 4;
+        if (maxX < minX || maxY < minY || (long) (maxX - minX + 1) * (maxY - minY + 1) > maxTiles) {
+            return null;
+        }
+
+        List<Long> tiles = new ArrayList<>();
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                tiles.add(TileMath.pack(x, y));
+            }
+        }
+
+        if (zoom < MAX_ZOOM_FOR_CLUSTERING) {
+            List<ShopClusterResponse> clusters = mapFragmentCache.getAll(
+                    MapFragmentCache.MODE_CLUSTER, zoom, tiles, this::buildClusterFragment);
+            long count = clusters.stream()
+                    .mapToLong(c -> c.getCount() != null ? c.getCount() : 1)
+                    .sum();
+
+            log.info("Found {} shops in {} tiles (zoom: {})", count, tiles.size(), zoom);
+
+            if (shouldUseCluster(count, zoom)) {
+                return clusters;
+            }
+        }
+
+        List<ShopClusterResponse> shops = mapFragmentCache.getAll(
+                MapFragmentCache.MODE_SHOP, zoom, tiles, this::buildShopFragment);
+
+        // Fragments phủ toàn bộ tile -> lọc lại đúng viewport
+        int limit = (request.getLimit() != null && request.getLimit() > 0) ? request.getLimit() : Integer.MAX_VALUE;
+        List<ShopClusterResponse> result = new ArrayList<>();
+        for (ShopClusterResponse shop : shops) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (shop.getLatitude() <= request.getNorth() && shop.getLatitude() >= request.getSouth()
+                    && shop.getLongitude() <= request.getEast() && shop.getLongitude() >= request.getWest()) {
+                result.add(shop);
+            }
+        }
         return result;
     }
 
     /**
-     * Tạo grid key từ tọa độ
+     * Fragment cluster của một tile: các ô pyramid trong tile,
+     * hoặc gom từ PostGIS theo cùng lưới ô nếu index chưa sẵn sàng
      */
-    private String getGridKey(double lat, double lng, double gridSize) {
-        long latCell = (long) (lat / gridSize);
-        long lngCell = (long) (lng / gridSize);
-        return latCell + "_" + lngCell;
+    private List<ShopClusterResponse> buildClusterFragment(int zoom, int x, int y) {
+        if (shopSpatialIndex.isReady()) {
+            return toClusterResponses(shopClusterPyramid.getClustersInTile(zoom, x, y));
+        }
+
+        int gridZoom = zoom + ShopClusterPyramid.CELL_ZOOM_OFFSET;
+        Map<Long, List<ShopMarker>> cells = new LinkedHashMap<>();
+        for (ShopMarker marker : findTileLocationsInDatabase(zoom, x, y)) {
+            long cellKey = TileMath.pack(
+                    TileMath.tileX(marker.getLongitude(), gridZoom),
+                    TileMath.tileY(marker.getLatitude(), gridZoom));
+            cells.computeIfAbsent(cellKey, k -> new ArrayList<>()).add(marker);
+        }
+
+        List<ShopClusterResponse> result = new ArrayList<>(cells.size());
+        for (Map.Entry<Long, List<ShopMarker>> entry : cells.entrySet()) {
+            List<ShopMarker> cellShops = entry.getValue();
+            if (cellShops.size() == 1) {
+                result.add(ShopMapper.toClusterResponse(cellShops.getFirst()));
+            } else {
+                result.add(ShopMapper.toClusterResponse(
+                        new ShopClusterId(zoom, TileMath.unpackX(entry.getKey()), TileMath.unpackY(entry.getKey())),
+                        cellShops.size(),
+                        cellShops.stream().mapToDouble(ShopMarker::getLatitude).average().orElse(0.0),
+                        cellShops.stream().mapToDouble(ShopMarker::getLongitude).average().orElse(0.0)));
+            }
+        }
+        return result;
     }
 
     /**
-     * Helper class để store shop location data
+     * Fragment individual của một tile: tất cả shops nằm trong tile
      */
-    private static class ShopLocation {
-        private final UUID id;
-        private final Double latitude;
-        private final Double longitude;
-        private final String name;
+    private List<ShopClusterResponse> buildShopFragment(int zoom, int x, int y) {
+        double north = TileMath.tileLatitude(y, zoom);
+        double south = TileMath.tileLatitude(y + 1, zoom);
+        double east = TileMath.tileLongitude(x + 1, zoom);
+        double west = TileMath.tileLongitude(x, zoom);
+
+        List<ShopClusterResponse> result = new ArrayList<>();
+        if (shopSpatialIndex.isReady()) {
+            for (ShopMarker marker : shopSpatialIndex.query(north, south, east, west)) {
+                if (isInTile(marker.getLatitude(), marker.getLongitude(), zoom, x, y)) {
+                    result.add(ShopMapper.toClusterResponse(marker));
+                }
+            }
+        } else {
+            for (ShopMarker marker : findMarkersInDatabase(north, south, east, west, null)) {
+                if (isInTile(marker.getLatitude(), marker.getLongitude(), zoom, x, y)) {
+                    result.add(ShopMapper.toClusterResponse(marker));
+                }
+            }
+        }
+        return result;
+    }
 
-        public ShopLocation(UUID id, Double latitude, Double longitude, String name) {
-            this.id = id;
-            this.latitude = latitude;
-            this.longitude = longitude;
-            this.name = name;
+    private List<ShopMarker> findTileLocationsInDatabase(int zoom, int x, int y) {
+        return findMarkersInDatabase(
+                        TileMath.tileLatitude(y, zoom),
+                        TileMath.tileLatitude(y + 1, zoom),
+                        TileMath.tileLongitude(x + 1, zoom),
+                        TileMath.tileLongitude(x, zoom),
+                        null)
+                .stream()
+                .filter(marker -> isInTile(marker.getLatitude(), marker.getLongitude(), zoom, x, y))
+                .toList();
+    }
+
+    private List<ShopMarker> findMarkersInDatabase(double north, double south, double east, double west, Integer limit) {
+        int maxRows = (limit != null && limit > 0) ? limit : Integer.MAX_VALUE;
+        List<Object[]> rows = shopRepository.findShopMarkersInBoundingBox(north, south, east, west, maxRows);
+        List<ShopMarker> markers = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            markers.add(ShopMapper.toShopMarker(row));
         }
+        return markers;
+    }
 
-        public UUID getId() { return id; }
-        public Double getLatitude() { return latitude; }
-        public Double getLongitude() { return longitude; }
-        public String getName() { return name; }
+    /**
+     * Shop nằm đúng trên cạnh tile chỉ thuộc về một tile
+     */
+    private static boolean isInTile(double latitude, double longitude, int zoom, int x, int y) {
+        return TileMath.tileX(longitude, zoom) == x && TileMath.tileY(latitude, zoom) == y;
     }
 
     /**
-     * Convert Shop entity to response
+     * Phục vụ bounding box hoàn toàn từ spatial index in-memory
+     * Chỉ query index một lần rồi dùng kết quả cho cả quyết định clustering lẫn response
      */
-    private ShopClusterResponse toShopResponse(Shop shop) {
-        // Get first image URL or null
-        String imageUrl = null;
-        if (shop.getImageShopUrl() != null && !shop.getImageShopUrl().isEmpty()) {
-            imageUrl = shop.getImageShopUrl().get(0);
+    private List<ShopClusterResponse> getShopsInBoundingBoxFromIndex(BoundingBoxRequest request) {
+        Integer zoom = request.getZoom();
+
+        // Zoom thấp: đếm và cluster trực tiếp từ pyramid, không cần duyệt từng shop
+        if (zoom != null && zoom < MAX_ZOOM_FOR_CLUSTERING) {
+            List<ShopCluster> clusters = queryPyramid(request);
+            long count = clusters.stream().mapToLong(ShopCluster::getCount).sum();
+
+            log.info("Found {} shops in bounding box from cluster pyramid (zoom: {})", count, zoom);
+
+            if (shouldUseCluster(count, zoom)) {
+                return toClusterResponses(clusters);
+            }
         }
 
-        return ShopClusterResponse.builder()
-                .type("shop")
-                .id(shop.getId().toString())
-                .name(shop.getName())
-                .latitude(shop.getLatitude())
-                .longitude(shop.getLongitude())
-                .address(shop.getAddress())
-                .imageUrl(imageUrl)
-                .rating(shop.getRating())
-                .status(shop.getStatus() != null ? shop.getStatus().toString() : null)
-                .build();
+        // Không cluster: request ranked đọc thẳng top-K, không cần lấy hết shops trong viewport
+        if (zoom != null && isRanked(request)) {
+            return getRankedShopsFromIndex(request);
+        }
+
+        List<ShopMarker> markers = queryIndex(request);
+
+        log.info("Found {} shops in bounding box from index (zoom: {})", markers.size(), zoom);
+
+        if (shouldUseCluster((long) markers.size(), zoom)) {
+            return performGridBasedClustering(markers, zoom);
+        }
+        if (isRanked(request)) {
+            return getRankedShopsFromIndex(request);
+        }
+        return toIndividualResponses(markers, request.getLimit());
+    }
+
+    /**
+     * Chỉ xếp hạng khi có limit - không có limit thì trả về tất cả shops như thường
+     */
+    private static boolean isRanked(BoundingBoxRequest request) {
+        return request.getRankBy() != null && request.getLimit() != null && request.getLimit() > 0;
+    }
+
+    /**
+     * Lưới dàn đều theo zoom của request; không có zoom thì ShopRankIndex tự chọn level mịn nhất vừa viewport
+     */
+    private static int getRankZoom(BoundingBoxRequest request) {
+        return request.getZoom() != null ? request.getZoom() : ShopRankIndex.MAX_RANK_ZOOM;
+    }
+
+    private List<ShopClusterResponse> getRankedShopsFromIndex(BoundingBoxRequest request) {
+        List<ShopMarker> markers = shopRankIndex.top(
+                request.getNorth(),
+                request.getSouth(),
+                request.getEast(),
+                request.getWest(),
+                getRankZoom(request),
+                request.getLimit(),
+                request.getRankBy()
+        );
+
+        log.info("Selected top {} shops by {} in bounding box", markers.size(), request.getRankBy());
+
+        return toIndividualResponses(markers, null);
+    }
+
+    private List<ShopCluster> queryPyramid(BoundingBoxRequest request) {
+        return shopClusterPyramid.getClusters(
+                request.getNorth(),
+                request.getSouth(),
+                request.getEast(),
+                request.getWest(),
+                request.getZoom()
+        );
+    }
+
+    private List<ShopClusterResponse> toClusterResponses(List<ShopCluster> clusters) {
+        List<ShopClusterResponse> result = new ArrayList<>(clusters.size());
+        for (ShopCluster cluster : clusters) {
+            if (cluster.getSingle() != null) {
+                result.add(ShopMapper.toClusterResponse(cluster.getSingle()));
+            } else {
+                result.add(ShopMapper.toClusterResponse(cluster.getClusterId(), cluster.getCount(),
+                        cluster.getLatitude(), cluster.getLongitude()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sai số đơn giản hóa polygon = nửa pixel ở zoom của request (không thấy được trên bản đồ)
+     * Không có zoom thì dùng zoom lớn nhất: chỉ bỏ các đỉnh gần như thẳng hàng
+     */
+    private double getPolygonTolerance(Integer zoom) {
+        int z = zoom != null ? Math.max(0, Math.min(TileMath.MAX_ZOOM, zoom)) : TileMath.MAX_ZOOM;
+        return 360.0 / TILE_PIXELS / Math.pow(2, z) / 2;
+    }
+
+    private List<ShopMarker> queryIndex(BoundingBoxRequest request) {
+        return shopSpatialIndex.query(
+                request.getNorth(),
+                request.getSouth(),
+                request.getEast(),
+                request.getWest()
+        );
+    }
+
+    private List<ShopClusterResponse> toIndividualResponses(List<ShopMarker> markers, Integer limit) {
+        int size = (limit != null && limit > 0) ? Math.min(limit, markers.size()) : markers.size();
+        List<ShopClusterResponse> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(ShopMapper.toClusterResponse(markers.get(i)));
+        }
+        return result;
+    }
+
+    /**
+     * Quyết định có nên sử dụng clustering hay không
+     */
+    private boolean shouldUseCluster(Long shopCount, Integer zoom) {
+        if (zoom == null) {
+            // Nếu không có zoom, dựa vào số lượng
+            return shopCount > CLUSTER_THRESHOLD;
+        }
+
+        // Zoom cao (gần) -> không cluster
+        if (zoom >= MAX_ZOOM_FOR_CLUSTERING) {
+            return false;
+        }
+
+        // Zoom thấp (xa) và nhiều shops -> cluster
+        return shopCount > CLUSTER_THRESHOLD;
     }
-}
 
+    /**
+     * Clustering đơn giản dựa trên grid
+     * Chia bản đồ theo đúng lưới ô của cluster pyramid tại zoom và gom các shops trong cùng một ô,
+     * nên mỗi cluster có id / bounds dùng được cho API children giống cluster đọc từ pyramid
+     * @param locations Markers trong vùng (chỉ cần id, lat, lng, name)
+     * @param zoom Zoom level của request, null thì dùng DEFAULT_CLUSTER_ZOOM
+     */
+    private List<ShopClusterResponse> performGridBasedClustering(List<ShopMarker> locations, Integer zoom) {
+
+        if (locations.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        int clusterZoom = getClusterZoom(zoom);
+        int gridZoom = clusterZoom + ShopClusterPyramid.CELL_ZOOM_OFFSET;
+
+        // Key ô = tile x / y của gridZoom, kernel cộng dồn tọa độ thật nên tâm cluster có ngay sau một lượt
+        int size = locations.size();
+        long[] cellKeys = new long[size];
+        double[] latitudes = new double[size];
+        double[] longitudes = new double[size];
+        for (int i = 0; i < size; i++) {
+            ShopMarker location = locations.get(i);
+            latitudes[i] = location.getLatitude();
+            longitudes[i] = location.getLongitude();
+            cellKeys[i] = GridClusterer.cellKey(TileMath.tileX(longitudes[i], gridZoom), TileMath.tileY(latitudes[i], gridZoom));
+        }
+
+        // Gom nhóm theo ô lưới bằng kernel primitive (không tạo key String / boxing)
+        GridClusterer.Result clusters = GridClusterer.cluster(cellKeys, latitudes, longitudes, size);
+
+        // Convert grid cells to clusters hoặc individual shops
+        List<ShopClusterResponse> result = new ArrayList<>(clusters.clusterCount);
+
+        for (int cluster = 0; cluster < clusters.clusterCount; cluster++) {
+            int count = clusters.counts[cluster];
+            int first = clusters.first[cluster];
+
+            if (count == 1) {
+                // Chỉ có 1 shop -> hiển thị như individual shop
+                result.add(ShopMapper.toClusterResponse(locations.get(first)));
+            } else {
+                // Nhiều shops -> tạo cluster
+                long cell = cellKeys[first];
+                ShopClusterId clusterId = new ShopClusterId(clusterZoom, GridClusterer.cellX(cell), GridClusterer.cellY(cell));
+                result.add(ShopMapper.toClusterResponse(clusterId, count,
+                        clusters.sumLat[cluster] / count, clusters.sumLng[cluster] / count));
+            }
+        }
+
+        log.info("Created {} clusters/shops from {} locations", result.size(), size);
+        return result;
+    }
+}
@@ -10,13 +10,20 @@ import com.mapsocial.mapper.MarkerMapper;
 import com.mapsocial.mapper.ShopMapper;
 import com.mapsocial.repository.*;
 import com.mapsocial.service.ShopService;
+import com.mapsocial.service.map.ShopChangedEvent;
+import com.mapsocial.service.map.ShopMarker;
+import com.mapsocial.service.version.MenuChangedEvent;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -26,6 +33,7 @@ public class ShopServiceImpl implements ShopService {
     private final ShopRepository shopRepository;
     private final TagRepository tagRepository;
     private final UserShopRepository userShopRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Override
     @Transactional
@@ -57,6 +65,9 @@ public class ShopServiceImpl implements ShopService {
 
         userShopRepository.save(userShop);
 
+        // Đồng bộ spatial index / cache bản đồ sau khi commit
+        eventPublisher.publishEvent(new ShopChangedEvent(savedShop.getId(), null, toIndexedMarker(savedShop)));
+
         return ShopMapper.toShopResponse(savedShop);
     }
 
@@ -73,6 +84,8 @@ public class ShopServiceImpl implements ShopService {
             throw new SecurityException("Chỉ chủ shop (OWNER) hoặc quản lý (MANAGER) mới được cập nhật shop");
         }
 
+        ShopMarker previous = ShopMapper.toShopMarker(shop);
+
         // Cập nhật thông tin từ request
         shop.setName(request.getName());
         shop.setAddress(request.getAddress());
@@ -95,8 +108,12 @@ public class ShopServiceImpl implements ShopService {
             shop.setTags(tags);
         }
 
+        // Sửa chỉ tags / ảnh không làm entity dirty -> @PreUpdate không chạy; updated_at là version của marker nên luôn tăng
+        shop.setUpdatedAt(LocalDateTime.now());
         Shop updatedShop = shopRepository.save(shop);
 
+        eventPublisher.publishEvent(new ShopChangedEvent(shopId, previous, toIndexedMarker(updatedShop)));
+
         return ShopMapper.toShopResponse(updatedShop);
     }
 
@@ -112,20 +129,26 @@ public class ShopServiceImpl implements ShopService {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new EntityNotFoundException("User not found"));
 
-        if (user.getRole() == UserRole.ADMIN || user.getRole() == UserRole.SUPER_ADMIN) {
-            shopRepository.delete(shop);
-            return;
-        }
+        boolean isAdmin = user.getRole() == UserRole.ADMIN || user.getRole() == UserRole.SUPER_ADMIN;
 
-        if (userShop.getManagerRole() != ShopRole.OWNER) {
+        if (!isAdmin && userShop.getManagerRole() != ShopRole.OWNER) {
             throw new SecurityException("Chỉ chủ shop (OWNER) mới được xóa shop");
         }
 
+        ShopMarker previous = ShopMapper.toShopMarker(shop);
         shopRepository.delete(shop);
+
+        eventPublisher.publishEvent(new ShopChangedEvent(shopId, previous, null));
+        // Menus bị xóa theo shop (cascade) -> version của từng menu cũng phải đổi
+        shop.getMenus().forEach(menu -> eventPublisher.publishEvent(new MenuChangedEvent(menu.getId(), shopId)));
     }
 
+    /**
+     * Không readOnly: đọc từ primary. ETag (DataVersions) đã tăng ngay sau commit,
+     * replica trễ sẽ trả dữ liệu cũ kèm ETag mới và client giữ bản cũ đó cho tới lần thay đổi sau
+     */
     @Override
-    @Transactional(readOnly = true)
+    @Transactional
     public ShopResponse getShopById(UUID shopId) {
         Shop shop = shopRepository.findById(shopId)
                 .orElseThrow(() -> new EntityNotFoundException("Shop not found"));
@@ -133,10 +156,29 @@ public class ShopServiceImpl implements ShopService {
     }
 
     @Override
-    @Transactional(readOnly = true)
+    @Transactional // primary, cùng lý do với getShopById
     public List<ShopResponse> getAllShops() {
         return shopRepository.findAll().stream()
                 .map(ShopMapper::toShopResponse)
                 .toList();
     }
+
+    /**
+     * Marker sau khi ghi, đọc lại từ shop_markers (trigger đã cập nhật khi flush)
+     * để index cập nhật tại chỗ giống hệt index load lại từ DB (ảnh bìa, tag ids...)
+     */
+    private ShopMarker toIndexedMarker(Shop shop) {
+        shopRepository.flush();
+        List<Object[]> rows = shopRepository.findIndexedShopMarker(shop.getId());
+        return rows.isEmpty() ? ShopMapper.toShopMarker(shop) : ShopMapper.toIndexedShopMarker(rows.getFirst());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamAllShops(Consumer<ShopResponse> consumer) {
+        // Projection không tạo entity nên persistence context không phình theo số shops
+        try (Stream<Object[]> rows = shopRepository.streamAll()) {
+            rows.forEach(row -> consumer.accept(ShopMapper.toShopResponse(row)));
+        }
+    }
 }
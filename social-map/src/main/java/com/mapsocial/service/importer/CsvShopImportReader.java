@@ -0,0 +1,67 @@
+package com.mapsocial.service.importer;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * CSV có dòng header, tên cột không phân biệt hoa thường (name, latitude, longitude, tags, ...)
+ */
+class CsvShopImportReader extends ShopImportReader {
+
+    private static final CSVFormat FORMAT = CSVFormat.DEFAULT.builder()
+            .setHeader()
+            .setSkipHeaderRecord(true)
+            .setIgnoreEmptyLines(true)
+            .setTrim(true)
+            .build();
+
+    private final CSVParser parser;
+    private final Iterator<CSVRecord> records;
+    private long position = 0;
+
+    CsvShopImportReader(InputStream in) throws IOException {
+        this.parser = CSVParser.parse(new InputStreamReader(in, StandardCharsets.UTF_8), FORMAT);
+        this.records = parser.iterator();
+    }
+
+    @Override
+    public Map<String, String> next() throws IOException {
+        try {
+            if (!records.hasNext()) {
+                return null;
+            }
+            CSVRecord record = records.next();
+            position = record.getRecordNumber();
+
+            Map<String, String> fields = new HashMap<>();
+            for (Map.Entry<String, String> entry : record.toMap().entrySet()) {
+                fields.put(entry.getKey().trim().toLowerCase(Locale.ROOT), entry.getValue());
+            }
+            return fields;
+        } catch (UncheckedIOException e) {
+            // Iterator của commons-csv bọc lỗi parse trong UncheckedIOException
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+}
@@ -0,0 +1,95 @@
+package com.mapsocial.service.importer;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * GeoJSON FeatureCollection: mỗi Feature là một shop
+ * geometry Point [lng, lat] là vị trí, properties là các cột như CSV (tags / image_urls có thể là mảng)
+ *
+ * Parser streaming của Jackson chỉ giữ một feature trong bộ nhớ tại một thời điểm.
+ */
+class GeoJsonShopImportReader extends ShopImportReader {
+
+    private final JsonParser parser;
+    private long position = 0;
+
+    GeoJsonShopImportReader(InputStream in, ObjectMapper objectMapper) throws IOException {
+        this.parser = objectMapper.createParser(in);
+        seekFeatures();
+    }
+
+    @Override
+    public Map<String, String> next() throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null || token == JsonToken.END_ARRAY) {
+            return null;
+        }
+        position++;
+
+        JsonNode feature = parser.readValueAsTree();
+        Map<String, String> fields = new HashMap<>();
+
+        JsonNode properties = feature.path("properties");
+        for (Iterator<Map.Entry<String, JsonNode>> it = properties.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> property = it.next();
+            JsonNode value = property.getValue();
+            if (value.isNull()) {
+                continue;
+            }
+            String key = property.getKey().toLowerCase(Locale.ROOT);
+            if (value.isArray()) {
+                List<String> items = new ArrayList<>();
+                value.forEach(item -> items.add(item.asText()));
+                fields.put(key, String.join(ShopImportRow.LIST_SEPARATOR, items));
+            } else {
+                fields.put(key, value.asText());
+            }
+        }
+
+        JsonNode geometry = feature.path("geometry");
+        JsonNode coordinates = geometry.path("coordinates");
+        if ("Point".equals(geometry.path("type").asText()) && coordinates.size() >= 2) {
+            fields.put(ShopImportRow.LONGITUDE, coordinates.get(0).asText());
+            fields.put(ShopImportRow.LATITUDE, coordinates.get(1).asText());
+        }
+        return fields;
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+
+    /**
+     * Di chuyển parser tới đầu mảng "features" của FeatureCollection
+     */
+    private void seekFeatures() throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("GeoJSON must be a FeatureCollection object");
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("features".equals(name)) {
+                if (value != JsonToken.START_ARRAY) {
+                    throw new IOException("GeoJSON \"features\" must be an array");
+                }
+                return;
+            }
+            parser.skipChildren();
+        }
+        throw new IOException("GeoJSON FeatureCollection has no \"features\"");
+    }
+}
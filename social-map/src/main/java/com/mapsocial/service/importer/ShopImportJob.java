@@ -0,0 +1,116 @@
+package com.mapsocial.service.importer;
+
+import com.mapsocial.dto.response.shop.ShopImportJobResponse;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Trạng thái của một job import, được worker cập nhật và client đọc song song qua API
+ */
+public class ShopImportJob {
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    @Getter
+    private final UUID id = UUID.randomUUID();
+    @Getter
+    private final UUID ownerId;
+    private final String format;
+    private final long totalBytes;
+    private final int maxErrors;
+
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong imported = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final List<String> errors = new ArrayList<>();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile String message;
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+
+    public ShopImportJob(UUID ownerId, String format, long totalBytes, int maxErrors) {
+        this.ownerId = ownerId;
+        this.format = format;
+        this.totalBytes = totalBytes;
+        this.maxErrors = maxErrors;
+    }
+
+    public void start() {
+        startedAt = LocalDateTime.now();
+        status = Status.RUNNING;
+    }
+
+    public void complete() {
+        bytesRead.set(totalBytes);
+        finish(Status.COMPLETED, null);
+    }
+
+    public void fail(String message) {
+        finish(Status.FAILED, message);
+    }
+
+    public void addBytesRead(long bytes) {
+        bytesRead.addAndGet(bytes);
+    }
+
+    public void rowProcessed() {
+        processed.incrementAndGet();
+    }
+
+    public void rowsImported(int count) {
+        imported.addAndGet(count);
+    }
+
+    public long getImportedRows() {
+        return imported.get();
+    }
+
+    /**
+     * Ghi nhận các dòng bị bỏ qua, chỉ giữ lại maxErrors lỗi đầu tiên
+     */
+    public void reject(int count, String error) {
+        rejected.addAndGet(count);
+        synchronized (errors) {
+            if (errors.size() < maxErrors) {
+                errors.add(error);
+            }
+        }
+    }
+
+    public ShopImportJobResponse toResponse() {
+        List<String> errorsSnapshot;
+        synchronized (errors) {
+            errorsSnapshot = new ArrayList<>(errors);
+        }
+        int progress = totalBytes > 0 ? (int) Math.min(100, bytesRead.get() * 100 / totalBytes) : 0;
+
+        return ShopImportJobResponse.builder()
+                .jobId(id)
+                .status(status.name())
+                .format(format)
+                .progress(status == Status.COMPLETED ? 100 : progress)
+                .processedRows(processed.get())
+                .importedRows(imported.get())
+                .rejectedRows(rejected.get())
+                .errors(errorsSnapshot)
+                .message(message)
+                .startedAt(startedAt)
+                .finishedAt(finishedAt)
+                .build();
+    }
+
+    private void finish(Status status, String message) {
+        this.message = message;
+        this.finishedAt = LocalDateTime.now();
+        this.status = status;
+    }
+}
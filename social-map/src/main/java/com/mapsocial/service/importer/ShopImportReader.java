@@ -0,0 +1,57 @@
+package com.mapsocial.service.importer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Đọc tuần tự (streaming) từng shop trong file import, không load cả file vào bộ nhớ
+ * Mỗi record là map tên cột -> giá trị dạng chuỗi, validate ở ShopImportRow.parse
+ */
+public abstract class ShopImportReader implements Closeable {
+
+    public static final String FORMAT_CSV = "csv";
+    public static final String FORMAT_GEOJSON = "geojson";
+
+    public static ShopImportReader open(String format, InputStream in, ObjectMapper objectMapper) throws IOException {
+        return switch (format) {
+            case FORMAT_CSV -> new CsvShopImportReader(in);
+            case FORMAT_GEOJSON -> new GeoJsonShopImportReader(in, objectMapper);
+            default -> throw new IllegalArgumentException("Unsupported import format: " + format);
+        };
+    }
+
+    /**
+     * Định dạng theo tham số format, nếu không có thì theo đuôi file
+     * @return null nếu không xác định được
+     */
+    public static String detectFormat(String format, String filename) {
+        String value = format != null ? format : filename;
+        if (value == null) {
+            return null;
+        }
+        value = value.toLowerCase(Locale.ROOT);
+        if (value.equals(FORMAT_CSV) || value.endsWith(".csv")) {
+            return FORMAT_CSV;
+        }
+        if (value.equals(FORMAT_GEOJSON) || value.endsWith(".geojson") || value.endsWith(".json")) {
+            return FORMAT_GEOJSON;
+        }
+        return null;
+    }
+
+    /**
+     * @return record tiếp theo, null nếu hết file
+     * @throws IOException nếu file hỏng (không đọc tiếp được)
+     */
+    public abstract Map<String, String> next() throws IOException;
+
+    /**
+     * Số thứ tự (từ 1) của record vừa đọc, dùng trong thông báo lỗi
+     */
+    public abstract long position();
+}
@@ -0,0 +1,174 @@
+package com.mapsocial.service.importer;
+
+import com.mapsocial.enums.ShopStatus;
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+/**
+ * Một shop đã validate, sẵn sàng ghi xuống DB
+ *
+ * Cột (không phân biệt hoa thường): name*, latitude*, longitude*, address, description,
+ * phone_number, opening_time, closing_time (HH:mm), status (mặc định OPEN),
+ * tags (tên hoặc ID, cách nhau bởi '|'), image_urls (cách nhau bởi '|')
+ */
+@Value
+@Builder
+public class ShopImportRow {
+
+    public static final String NAME = "name";
+    public static final String LATITUDE = "latitude";
+    public static final String LONGITUDE = "longitude";
+    public static final String ADDRESS = "address";
+    public static final String DESCRIPTION = "description";
+    public static final String PHONE_NUMBER = "phone_number";
+    public static final String OPENING_TIME = "opening_time";
+    public static final String CLOSING_TIME = "closing_time";
+    public static final String STATUS = "status";
+    public static final String TAGS = "tags";
+    public static final String IMAGE_URLS = "image_urls";
+    public static final String LIST_SEPARATOR = "|";
+
+    // Giới hạn theo độ dài cột của entity Shop
+    private static final int MAX_NAME_LENGTH = 255;
+    private static final int MAX_ADDRESS_LENGTH = 255;
+    private static final int MAX_DESCRIPTION_LENGTH = 500;
+    private static final int MAX_PHONE_LENGTH = 255;
+    private static final int MAX_IMAGE_URL_LENGTH = 1000;
+
+    String name;
+    double latitude;
+    double longitude;
+    String address;
+    String description;
+    String phoneNumber;
+    LocalTime openingTime;
+    LocalTime closingTime;
+    ShopStatus status;
+    List<UUID> tagIds;
+    List<String> imageUrls;
+
+    /**
+     * @param tags tag ID (chuỗi) và tên tag (chữ thường) -> ID
+     * @throws IllegalArgumentException nếu record không hợp lệ, message là lý do
+     */
+    public static ShopImportRow parse(Map<String, String> fields, Map<String, UUID> tags) {
+        String name = text(fields, NAME, MAX_NAME_LENGTH);
+        if (name == null) {
+            throw new IllegalArgumentException("name is required");
+        }
+
+        double latitude = coordinate(fields, LATITUDE, 90);
+        double longitude = coordinate(fields, LONGITUDE, 180);
+
+        LocalTime openingTime = time(fields, OPENING_TIME);
+        LocalTime closingTime = time(fields, CLOSING_TIME);
+        if ((openingTime == null) != (closingTime == null)) {
+            throw new IllegalArgumentException("opening_time and closing_time must be given together");
+        }
+
+        ShopStatus status = ShopStatus.OPEN;
+        String statusValue = blankToNull(fields.get(STATUS));
+        if (statusValue != null) {
+            try {
+                status = ShopStatus.valueOf(statusValue.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("unknown status '" + statusValue + "'");
+            }
+        }
+
+        List<UUID> tagIds = new ArrayList<>();
+        for (String tag : list(fields.get(TAGS))) {
+            UUID tagId = tags.get(tag.toLowerCase(Locale.ROOT));
+            if (tagId == null) {
+                throw new IllegalArgumentException("unknown tag '" + tag + "'");
+            }
+            if (!tagIds.contains(tagId)) {
+                tagIds.add(tagId);
+            }
+        }
+
+        List<String> imageUrls = list(fields.get(IMAGE_URLS));
+        for (String imageUrl : imageUrls) {
+            if (imageUrl.length() > MAX_IMAGE_URL_LENGTH) {
+                throw new IllegalArgumentException("image url longer than " + MAX_IMAGE_URL_LENGTH + " characters");
+            }
+        }
+
+        return ShopImportRow.builder()
+                .name(name)
+                .latitude(latitude)
+                .longitude(longitude)
+                .address(text(fields, ADDRESS, MAX_ADDRESS_LENGTH))
+                .description(text(fields, DESCRIPTION, MAX_DESCRIPTION_LENGTH))
+                .phoneNumber(text(fields, PHONE_NUMBER, MAX_PHONE_LENGTH))
+                .openingTime(openingTime)
+                .closingTime(closingTime)
+                .status(status)
+                .tagIds(tagIds)
+                .imageUrls(imageUrls)
+                .build();
+    }
+
+    private static String text(Map<String, String> fields, String key, int maxLength) {
+        String value = blankToNull(fields.get(key));
+        if (value != null && value.length() > maxLength) {
+            throw new IllegalArgumentException(key + " longer than " + maxLength + " characters");
+        }
+        return value;
+    }
+
+    private static double coordinate(Map<String, String> fields, String key, double limit) {
+        String value = blankToNull(fields.get(key));
+        if (value == null) {
+            throw new IllegalArgumentException(key + " is required");
+        }
+        double coordinate;
+        try {
+            coordinate = Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " is not a number");
+        }
+        if (!(coordinate >= -limit && coordinate <= limit)) {
+            throw new IllegalArgumentException(key + " out of range");
+        }
+        return coordinate;
+    }
+
+    private static LocalTime time(Map<String, String> fields, String key) {
+        String value = blankToNull(fields.get(key));
+        if (value == null) {
+            return null;
+        }
+        try {
+            return LocalTime.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(key + " must be HH:mm");
+        }
+    }
+
+    private static List<String> list(String value) {
+        List<String> items = new ArrayList<>();
+        if (value == null) {
+            return items;
+        }
+        for (String item : value.split("\\|")) {
+            String trimmed = item.trim();
+            if (!trimmed.isEmpty()) {
+                items.add(trimmed);
+            }
+        }
+        return items;
+    }
+
+    private static String blankToNull(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+}
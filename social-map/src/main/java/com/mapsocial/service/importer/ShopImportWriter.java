@@ -0,0 +1,70 @@
+package com.mapsocial.service.importer;
+
+import com.mapsocial.enums.ShopRole;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Ghi một lô shops bằng JDBC batch (không qua JPA): không dirty checking, không load tag / user,
+ * mỗi bảng một batch INSERT (reWriteBatchedInserts gộp thành multi-row INSERT)
+ * Point được dựng trong SQL nên không cần GeometryFactory cho từng dòng.
+ */
+@Component
+@RequiredArgsConstructor
+public class ShopImportWriter {
+
+    private static final String INSERT_SHOP =
+            "INSERT INTO shops (id, latitude, longitude, location, created_at, updated_at, name, address, " +
+            "description, phone_number, opening_time, closing_time, status, rating, review_count) " +
+            "VALUES (?, ?, ?, ST_SetSRID(ST_MakePoint(?, ?), 4326)::geography, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0.0, 0)";
+    private static final String INSERT_IMAGE = "INSERT INTO shop_images (shop_id, image_url) VALUES (?, ?)";
+    private static final String INSERT_TAG = "INSERT INTO shop_tags (shop_id, tag_id) VALUES (?, ?)";
+    private static final String INSERT_OWNER =
+            "INSERT INTO user_shop (id, user_id, shop_id, manager_role, joined_at) VALUES (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Lưu cả lô trong một transaction, ownerId là OWNER của mọi shop
+     */
+    @Transactional
+    public void insert(List<ShopImportRow> rows, UUID ownerId) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> shops = new ArrayList<>(rows.size());
+        List<Object[]> images = new ArrayList<>();
+        List<Object[]> tags = new ArrayList<>();
+        List<Object[]> owners = new ArrayList<>(rows.size());
+
+        for (ShopImportRow row : rows) {
+            UUID shopId = UUID.randomUUID();
+            shops.add(new Object[]{
+                    shopId, row.getLatitude(), row.getLongitude(), row.getLongitude(), row.getLatitude(),
+                    now, now, row.getName(), row.getAddress(), row.getDescription(), row.getPhoneNumber(),
+                    row.getOpeningTime(), row.getClosingTime(), row.getStatus().name()
+            });
+            for (String imageUrl : row.getImageUrls()) {
+                images.add(new Object[]{shopId, imageUrl});
+            }
+            for (UUID tagId : row.getTagIds()) {
+                tags.add(new Object[]{shopId, tagId});
+            }
+            owners.add(new Object[]{UUID.randomUUID(), ownerId, shopId, ShopRole.OWNER.name(), now});
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_SHOP, shops);
+        if (!images.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_IMAGE, images);
+        }
+        if (!tags.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_TAG, tags);
+        }
+        jdbcTemplate.batchUpdate(INSERT_OWNER, owners);
+    }
+}
@@ -0,0 +1,122 @@
+package com.mapsocial.service.map;
+
+import java.util.Arrays;
+
+/**
+ * Kernel clustering theo lưới chỉ dùng mảng primitive
+ *
+ * - Caller tính sẵn key của ô (cellKey(x, y) gộp hai chỉ số ô vào một long, không tạo String)
+ * - Map ô -> cluster là open addressing (linear probing) trên long[] / int[], không boxing
+ * - Count, tổng lat/lng thật và điểm đầu tiên của mỗi cluster có được trong một lượt duyệt duy nhất
+ *
+ * Số lần cấp phát cố định cho mỗi lần gọi, không phụ thuộc số điểm.
+ */
+public class GridClusterer {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private GridClusterer() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    /**
+     * Kết quả clustering: cluster i có counts[i] điểm, tâm = (sumLat[i] / counts[i], sumLng[i] / counts[i]),
+     * first[i] = chỉ số điểm đầu tiên của cluster (key ô của cluster = cellKeys[first[i]])
+     */
+    public static final class Result {
+        public final int clusterCount;
+        public final int[] counts;
+        public final double[] sumLat;
+        public final double[] sumLng;
+        public final int[] first;
+
+        private Result(int clusterCount, int[] counts, double[] sumLat, double[] sumLng, int[] first) {
+            this.clusterCount = clusterCount;
+            this.counts = counts;
+            this.sumLat = sumLat;
+            this.sumLng = sumLng;
+            this.first = first;
+        }
+    }
+
+    /**
+     * Key của ô (x, y); x / y âm vẫn giữ nguyên khi tách lại bằng cellX / cellY
+     */
+    public static long cellKey(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    public static int cellX(long key) {
+        return (int) (key >> 32);
+    }
+
+    public static int cellY(long key) {
+        return (int) key;
+    }
+
+    /**
+     * Gom các điểm cùng key ô; latitudes / longitudes là tọa độ thật, chỉ dùng để cộng dồn tâm cluster
+     */
+    public static Result cluster(long[] cellKeys, double[] latitudes, double[] longitudes, int size) {
+        int capacity = tableCapacity(size);
+        int mask = capacity - 1;
+        long[] keys = new long[capacity];
+        int[] slots = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+
+        // Số cluster tối đa = số điểm, cấp phát một lần
+        int[] counts = new int[size];
+        double[] sumLat = new double[size];
+        double[] sumLng = new double[size];
+        int[] first = new int[size];
+        int clusterCount = 0;
+
+        for (int p = 0; p < size; p++) {
+            long key = cellKeys[p];
+
+            int index = mix(key) & mask;
+            while (keys[index] != EMPTY && keys[index] != key) {
+                index = (index + 1) & mask;
+            }
+
+            int cluster;
+            if (keys[index] == EMPTY) {
+                keys[index] = key;
+                cluster = clusterCount++;
+                slots[index] = cluster;
+                first[cluster] = p;
+            } else {
+                cluster = slots[index];
+            }
+
+            counts[cluster]++;
+            sumLat[cluster] += latitudes[p];
+            sumLng[cluster] += longitudes[p];
+        }
+
+        return new Result(clusterCount, counts, sumLat, sumLng, first);
+    }
+
+    /**
+     * Lũy thừa của 2, load factor <= 0.5
+     */
+    private static int tableCapacity(int size) {
+        int capacity = 16;
+        while (capacity < size * 2L && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Trộn bit (murmur3 finalizer) để các ô lân cận không dồn vào cùng vùng của bảng
+     */
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
@@ -0,0 +1,121 @@
+package com.mapsocial.service.map;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.geom.util.GeometryFixer;
+import org.locationtech.jts.io.WKTWriter;
+import org.locationtech.jts.simplify.TopologyPreservingSimplifier;
+
+import java.util.List;
+
+/**
+ * Vùng người dùng vẽ trên bản đồ (khu phố, ranh giới quận...) đã chuẩn hóa để lọc shops
+ *
+ * - Polygon tự cắt được sửa (GeometryFixer), sau đó đơn giản hóa với sai số truyền vào
+ *   (TopologyPreservingSimplifier, không làm polygon tự cắt hay mất lỗ), nên chi phí kiểm tra
+ *   không phụ thuộc độ chi tiết của ranh giới client gửi lên
+ * - contains() dùng PreparedGeometry (index các cạnh), đủ nhanh để lọc từng marker lấy từ index trong bộ nhớ
+ * - Envelope dùng làm bbox prefilter (index trong bộ nhớ hoặc && trong PostGIS)
+ */
+public class MapArea {
+
+    public static final int MAX_VERTICES = 10000;
+
+    // GeometryFactory thread-safe, dùng chung
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory(new PrecisionModel(), 4326);
+
+    private final Geometry geometry;
+    private final PreparedGeometry prepared;
+    private final Envelope envelope;
+
+    private MapArea(Geometry geometry) {
+        this.geometry = geometry;
+        this.prepared = PreparedGeometryFactory.prepare(geometry);
+        this.envelope = geometry.getEnvelopeInternal();
+    }
+
+    /**
+     * @param ring các đỉnh [lng, lat] theo thứ tự GeoJSON, không cần lặp lại đỉnh đầu ở cuối
+     * @param tolerance sai số đơn giản hóa (độ), 0 thì giữ nguyên các đỉnh
+     * @throws IllegalArgumentException nếu tọa độ không hợp lệ, quá nhiều đỉnh hoặc vùng có diện tích bằng 0
+     */
+    public static MapArea of(List<List<Double>> ring, double tolerance) {
+        if (ring == null || ring.size() < 3 || ring.size() > MAX_VERTICES + 1) {
+            throw new IllegalArgumentException("Polygon must have 3 to " + MAX_VERTICES + " vertices");
+        }
+
+        Coordinate[] vertices = new Coordinate[ring.size()];
+        for (int i = 0; i < ring.size(); i++) {
+            List<Double> point = ring.get(i);
+            if (point == null || point.size() != 2 || point.get(0) == null || point.get(1) == null) {
+                throw new IllegalArgumentException("Polygon vertex must be [lng, lat]");
+            }
+            double lng = point.get(0);
+            double lat = point.get(1);
+            if (lng < -180 || lng > 180 || lat < -90 || lat > 90) {
+                throw new IllegalArgumentException("Polygon vertex out of range: [" + lng + ", " + lat + "]");
+            }
+            vertices[i] = new Coordinate(lng, lat);
+        }
+
+        // Đóng ring nếu client không lặp lại đỉnh đầu
+        if (!vertices[0].equals2D(vertices[vertices.length - 1])) {
+            Coordinate[] closed = new Coordinate[vertices.length + 1];
+            System.arraycopy(vertices, 0, closed, 0, vertices.length);
+            closed[vertices.length] = vertices[0].copy();
+            vertices = closed;
+        }
+        if (vertices.length < 4) {
+            throw new IllegalArgumentException("Polygon must have at least 3 distinct vertices");
+        }
+        // MAX_VERTICES đỉnh không tính đỉnh đóng ring: ring chưa đóng được tối đa MAX_VERTICES phần tử
+        if (vertices.length > MAX_VERTICES + 1) {
+            throw new IllegalArgumentException("Polygon must have 3 to " + MAX_VERTICES + " vertices");
+        }
+
+        Geometry geometry = GeometryFixer.fix(GEOMETRY_FACTORY.createPolygon(vertices));
+        if (tolerance > 0) {
+            geometry = TopologyPreservingSimplifier.simplify(geometry, tolerance);
+        }
+        if (geometry.isEmpty() || geometry.getArea() == 0) {
+            throw new IllegalArgumentException("Polygon has no area");
+        }
+        return new MapArea(geometry);
+    }
+
+    public boolean contains(ShopMarker marker) {
+        return prepared.intersects(GEOMETRY_FACTORY.createPoint(new Coordinate(marker.getLongitude(), marker.getLatitude())));
+    }
+
+    public double north() {
+        return envelope.getMaxY();
+    }
+
+    public double south() {
+        return envelope.getMinY();
+    }
+
+    public double east() {
+        return envelope.getMaxX();
+    }
+
+    public double west() {
+        return envelope.getMinX();
+    }
+
+    public int getVertexCount() {
+        return geometry.getNumPoints();
+    }
+
+    /**
+     * WKT (POLYGON / MULTIPOLYGON, thứ tự lng lat) cho ST_GeomFromText
+     */
+    public String toWkt() {
+        return new WKTWriter().write(geometry);
+    }
+}
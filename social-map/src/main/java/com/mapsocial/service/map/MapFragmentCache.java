@@ -0,0 +1,293 @@
+package com.mapsocial.service.map;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mapsocial.dto.response.ShopClusterResponse;
+import com.mapsocial.util.TileMath;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache các mảnh kết quả bản đồ theo tile (z/x/y) để các viewport khác nhau dùng chung
+ * Hai tầng: Caffeine local (nhanh) và Redis (chia sẻ giữa các instance)
+ *
+ * Khi một shop thay đổi chỉ các tile chứa vị trí cũ / mới của shop bị xóa. Việc xóa chạy trong ShopIndexListener
+ * nên mỗi instance chỉ xóa SAU KHI index của chính nó đã áp thay đổi (kể cả thay đổi nhận qua Redis):
+ * fragment build từ index cũ trước thời điểm đó, kể cả bản đã ghi lên Redis, đều bị xóa theo.
+ * Redis channel riêng chỉ còn dùng cho invalidateAll.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MapFragmentCache implements MessageListener, ShopIndexListener {
+
+    public static final String MODE_CLUSTER = "c";
+    public static final String MODE_SHOP = "s";
+
+    private static final String KEY_PREFIX = "map:fragment:";
+    private static final String INVALIDATION_CHANNEL = "map-fragment-invalidation";
+    private static final String INVALIDATE_ALL = "*";
+    private static final int REDIS_DELETE_BATCH = 1000;
+    private static final TypeReference<List<ShopClusterResponse>> FRAGMENT_TYPE = new TypeReference<>() {};
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer redisContainer;
+    private final ObjectMapper objectMapper;
+    private final ShopSpatialIndex shopSpatialIndex;
+
+    @Value("${social-map.map.fragment-cache.max-size:50000}")
+    private long maxSize;
+
+    @Value("${social-map.map.fragment-cache.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    private final AtomicLong generation = new AtomicLong();
+    // Listener chạy trong write lock của index: xóa trên Redis ở thread riêng, không giữ lock trong lúc chờ Redis
+    private final ExecutorService redisEvictor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "map-fragment-evict");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Cache<String, List<ShopClusterResponse>> fragments;
+
+    /**
+     * Build fragment của một tile khi cả local lẫn Redis đều miss
+     */
+    @FunctionalInterface
+    public interface FragmentBuilder {
+        List<ShopClusterResponse> build(int zoom, int x, int y);
+    }
+
+    @PostConstruct
+    public void init() {
+        fragments = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+        redisContainer.addMessageListener(this, new ChannelTopic(INVALIDATION_CHANNEL));
+        shopSpatialIndex.addListener(this);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        redisEvictor.shutdown();
+    }
+
+    /**
+     * Lấy và ghép fragments của các tile (packed x/y) tại zoom level
+     */
+    public List<ShopClusterResponse> getAll(String mode, int zoom, List<Long> tiles, FragmentBuilder builder) {
+        // Đọc generation trước cả Redis: invalidation đến trong lúc load / build thì không giữ lại bản vừa đọc
+        long observed = generation.get();
+        Map<String, Long> tileByKey = new LinkedHashMap<>();
+        for (Long tile : tiles) {
+            tileByKey.put(key(mode, zoom, TileMath.unpackX(tile), TileMath.unpackY(tile)), tile);
+        }
+
+        Map<String, List<ShopClusterResponse>> found = new HashMap<>(fragments.getAllPresent(tileByKey.keySet()));
+
+        List<String> missing = new ArrayList<>();
+        for (String key : tileByKey.keySet()) {
+            if (!found.containsKey(key)) {
+                missing.add(key);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            Map<String, List<ShopClusterResponse>> loaded = loadFromRedis(missing);
+            found.putAll(loaded);
+            if (generation.get() == observed) {
+                fragments.putAll(loaded);
+            }
+        }
+
+        Map<String, List<ShopClusterResponse>> built = new HashMap<>();
+        for (Map.Entry<String, Long> entry : tileByKey.entrySet()) {
+            if (!found.containsKey(entry.getKey())) {
+                long tile = entry.getValue();
+                List<ShopClusterResponse> fragment = builder.build(zoom, TileMath.unpackX(tile), TileMath.unpackY(tile));
+                built.put(entry.getKey(), fragment);
+                found.put(entry.getKey(), fragment);
+            }
+        }
+
+        if (!built.isEmpty()) {
+            fragments.putAll(built);
+            saveToRedis(built);
+
+            // Có shop thay đổi trong lúc build -> không giữ lại các fragment vừa build
+            if (generation.get() != observed) {
+                evict(built.keySet());
+            }
+        }
+
+        // Bản sao cho caller: các DTO trong cache dùng chung giữa các request
+        List<ShopClusterResponse> result = new ArrayList<>();
+        for (String key : tileByKey.keySet()) {
+            for (ShopClusterResponse item : found.get(key)) {
+                result.add(item.toBuilder().build());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Index load lại từ DB (khởi động / reconcile): bỏ bản local,
+     * bản trên Redis hết hạn theo TTL thay vì quét xóa từ mọi instance
+     */
+    @Override
+    public void onIndexLoaded(Collection<ShopMarker> markers) {
+        generation.incrementAndGet();
+        fragments.invalidateAll();
+    }
+
+    @Override
+    public void onMarkerAdded(ShopMarker marker) {
+        invalidate(marker);
+    }
+
+    @Override
+    public void onMarkerRemoved(ShopMarker marker) {
+        invalidate(marker);
+    }
+
+    /**
+     * Xóa toàn bộ fragments (local, Redis và local của các instance khác)
+     * Dùng khi nhiều shops thay đổi cùng lúc (import hàng loạt) thay vì xóa theo từng shop
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        fragments.invalidateAll();
+
+        try (Cursor<String> cursor = stringRedisTemplate.scan(
+                ScanOptions.scanOptions().match(KEY_PREFIX + "*").count(REDIS_DELETE_BATCH).build())) {
+            List<String> batch = new ArrayList<>(REDIS_DELETE_BATCH);
+            while (cursor.hasNext()) {
+                batch.add(cursor.next());
+                if (batch.size() == REDIS_DELETE_BATCH) {
+                    stringRedisTemplate.delete(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                stringRedisTemplate.delete(batch);
+            }
+            stringRedisTemplate.convertAndSend(INVALIDATION_CHANNEL, INVALIDATE_ALL);
+        } catch (Exception e) {
+            log.warn("Failed to invalidate map fragments in Redis: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Nhận invalidation từ các instance khác
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        if (INVALIDATE_ALL.equals(new String(message.getBody(), StandardCharsets.UTF_8))) {
+            generation.incrementAndGet();
+            fragments.invalidateAll();
+        }
+    }
+
+    /**
+     * Xóa các tile chứa vị trí của marker, gọi sau khi index đã cập nhật
+     */
+    private void invalidate(ShopMarker marker) {
+        List<String> keys = new ArrayList<>(2 * (TileMath.MAX_ZOOM + 1));
+        for (int zoom = 0; zoom <= TileMath.MAX_ZOOM; zoom++) {
+            int x = TileMath.tileX(marker.getLongitude(), zoom);
+            int y = TileMath.tileY(marker.getLatitude(), zoom);
+            keys.add(key(MODE_CLUSTER, zoom, x, y));
+            keys.add(key(MODE_SHOP, zoom, x, y));
+        }
+
+        generation.incrementAndGet();
+        fragments.invalidateAll(keys);
+        redisEvictor.execute(() -> {
+            evictFromRedis(keys);
+            // Request đọc bản cũ trên Redis trước khi xóa xong không được giữ lại bản đó ở local
+            generation.incrementAndGet();
+            fragments.invalidateAll(keys);
+        });
+    }
+
+    private void evict(Collection<String> keys) {
+        fragments.invalidateAll(keys);
+        evictFromRedis(keys);
+    }
+
+    private void evictFromRedis(Collection<String> keys) {
+        try {
+            stringRedisTemplate.delete(keys.stream().map(k -> KEY_PREFIX + k).toList());
+        } catch (Exception e) {
+            log.warn("Failed to evict map fragments from Redis: {}", e.getMessage());
+        }
+    }
+
+    private Map<String, List<ShopClusterResponse>> loadFromRedis(List<String> keys) {
+        Map<String, List<ShopClusterResponse>> result = new HashMap<>();
+        try {
+            List<String> values = stringRedisTemplate.opsForValue()
+                    .multiGet(keys.stream().map(k -> KEY_PREFIX + k).toList());
+            if (values == null) {
+                return result;
+            }
+            for (int i = 0; i < keys.size(); i++) {
+                String json = values.get(i);
+                if (json != null) {
+                    List<ShopClusterResponse> fragment = objectMapper.readValue(json, FRAGMENT_TYPE);
+                    result.put(keys.get(i), fragment);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to load map fragments from Redis: {}", e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * Ghi mọi fragment vừa build trong một pipeline (một round trip thay vì một SET mỗi tile)
+     */
+    private void saveToRedis(Map<String, List<ShopClusterResponse>> built) {
+        try {
+            Map<byte[], byte[]> values = new LinkedHashMap<>();
+            for (Map.Entry<String, List<ShopClusterResponse>> entry : built.entrySet()) {
+                values.put((KEY_PREFIX + entry.getKey()).getBytes(StandardCharsets.UTF_8),
+                        objectMapper.writeValueAsBytes(entry.getValue()));
+            }
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Map.Entry<byte[], byte[]> value : values.entrySet()) {
+                    connection.stringCommands().setEx(value.getKey(), ttlSeconds, value.getValue());
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("Failed to save map fragments to Redis: {}", e.getMessage());
+        }
+    }
+
+    private static String key(String mode, int zoom, int x, int y) {
+        return mode + ":" + zoom + ":" + x + ":" + y;
+    }
+}
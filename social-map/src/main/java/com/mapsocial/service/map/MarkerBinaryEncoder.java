@@ -0,0 +1,159 @@
+package com.mapsocial.service.map;
+
+import com.mapsocial.dto.response.ShopClusterResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Encode danh sách markers (shops / clusters) thành payload nhị phân dạng cột, little-endian
+ * Gọn hơn JSON nhiều lần: không lặp tên field, tọa độ là float32, chuỗi lặp lại nằm trong string table
+ *
+ * Layout (n = số markers):
+ * <pre>
+ *   "SMK" + version (1 byte)
+ *   varint n
+ *   varint m, m x (varint độ dài + UTF-8)          string table (name, address, imageUrl, status, clusterId)
+ *   n x uint8                                    loại: 0 = shop, 1 = cluster
+ *   n x float32                                  latitude
+ *   n x float32                                  longitude
+ *   n x varint                                   count
+ *   n x 16 byte                                  id (UUID, toàn 0 nếu không có)
+ *   5 cột n x varint                             name, address, imageUrl, status, clusterId
+ *                                                (chỉ số string table + 1, 0 = null)
+ *   n x float32                                  rating (NaN = null)
+ *   4 cột n x float32                            north, south, east, west của ô cluster (NaN = null)
+ * </pre>
+ * Decoder tương ứng nằm ở frontend (shopMapService.decodeMarkers)
+ */
+public class MarkerBinaryEncoder {
+
+    public static final String MEDIA_TYPE = "application/x-socialmap-markers";
+
+    private static final byte[] MAGIC = {'S', 'M', 'K'};
+    private static final int VERSION = 2;
+    private static final int KIND_SHOP = 0;
+    private static final int KIND_CLUSTER = 1;
+
+    private MarkerBinaryEncoder() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    public static byte[] encode(List<ShopClusterResponse> markers) {
+        int n = markers.size();
+
+        // String table: giá trị trùng nhau (status, địa chỉ cùng đường, ...) chỉ ghi một lần
+        Map<String, Integer> strings = new HashMap<>();
+        List<String> table = new ArrayList<>();
+        int[][] stringColumns = new int[5][n];
+        for (int i = 0; i < n; i++) {
+            ShopClusterResponse marker = markers.get(i);
+            stringColumns[0][i] = intern(strings, table, marker.getName());
+            stringColumns[1][i] = intern(strings, table, marker.getAddress());
+            stringColumns[2][i] = intern(strings, table, marker.getImageUrl());
+            stringColumns[3][i] = intern(strings, table, marker.getStatus());
+            stringColumns[4][i] = intern(strings, table, marker.getClusterId());
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + n * 48);
+        out.writeBytes(MAGIC);
+        out.write(VERSION);
+        writeVarint(out, n);
+
+        writeVarint(out, table.size());
+        for (String value : table) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, bytes.length);
+            out.writeBytes(bytes);
+        }
+
+        for (ShopClusterResponse marker : markers) {
+            out.write("cluster".equals(marker.getType()) ? KIND_CLUSTER : KIND_SHOP);
+        }
+        for (ShopClusterResponse marker : markers) {
+            writeFloat(out, marker.getLatitude() != null ? marker.getLatitude().floatValue() : Float.NaN);
+        }
+        for (ShopClusterResponse marker : markers) {
+            writeFloat(out, marker.getLongitude() != null ? marker.getLongitude().floatValue() : Float.NaN);
+        }
+        for (ShopClusterResponse marker : markers) {
+            writeVarint(out, marker.getCount() != null ? marker.getCount() : 0);
+        }
+        for (ShopClusterResponse marker : markers) {
+            writeUuid(out, marker.getId());
+        }
+        for (int[] column : stringColumns) {
+            for (int index : column) {
+                writeVarint(out, index);
+            }
+        }
+        for (ShopClusterResponse marker : markers) {
+            writeFloat(out, marker.getRating() != null ? marker.getRating().floatValue() : Float.NaN);
+        }
+        for (ShopClusterResponse marker : markers) {
+            writeFloat(out, marker.getNorth() != null ? marker.getNorth().floatValue() : Float.NaN);
+        }
+        for (ShopClusterResponse marker : markers) {
+            writeFloat(out, marker.getSouth() != null ? marker.getSouth().floatValue() : Float.NaN);
+        }
+        for (ShopClusterResponse marker : markers) {
+            writeFloat(out, marker.getEast() != null ? marker.getEast().floatValue() : Float.NaN);
+        }
+        for (ShopClusterResponse marker : markers) {
+            writeFloat(out, marker.getWest() != null ? marker.getWest().floatValue() : Float.NaN);
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * @return chỉ số trong string table + 1, 0 nếu value null
+     */
+    private static int intern(Map<String, Integer> strings, List<String> table, String value) {
+        if (value == null) {
+            return 0;
+        }
+        return strings.computeIfAbsent(value, v -> {
+            table.add(v);
+            return table.size();
+        });
+    }
+
+    private static void writeUuid(ByteArrayOutputStream out, String value) {
+        long most = 0;
+        long least = 0;
+        if (value != null) {
+            UUID uuid = UUID.fromString(value);
+            most = uuid.getMostSignificantBits();
+            least = uuid.getLeastSignificantBits();
+        }
+        // UUID giữ thứ tự byte big-endian như dạng chuỗi để decoder chỉ cần hex lần lượt
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (most >>> shift) & 0xFF);
+        }
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (least >>> shift) & 0xFF);
+        }
+    }
+
+    private static void writeFloat(ByteArrayOutputStream out, float value) {
+        int bits = Float.floatToIntBits(value);
+        out.write(bits & 0xFF);
+        out.write((bits >>> 8) & 0xFF);
+        out.write((bits >>> 16) & 0xFF);
+        out.write((bits >>> 24) & 0xFF);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
@@ -0,0 +1,160 @@
+package com.mapsocial.service.map;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encoder tối giản cho Mapbox Vector Tile (spec v2.1) - chỉ hỗ trợ một layer gồm các POINT
+ * Tự encode protobuf để không phải kéo thêm thư viện protobuf chỉ cho vài message
+ */
+public class MvtEncoder {
+
+    public static final int DEFAULT_EXTENT = 4096;
+
+    // Field numbers theo vector_tile.proto
+    private static final int TILE_LAYERS = 3;
+    private static final int LAYER_NAME = 1;
+    private static final int LAYER_FEATURES = 2;
+    private static final int LAYER_KEYS = 3;
+    private static final int LAYER_VALUES = 4;
+    private static final int LAYER_EXTENT = 5;
+    private static final int LAYER_VERSION = 15;
+    private static final int FEATURE_TAGS = 2;
+    private static final int FEATURE_TYPE = 3;
+    private static final int FEATURE_GEOMETRY = 4;
+    private static final int VALUE_STRING = 1;
+    private static final int VALUE_DOUBLE = 3;
+    private static final int VALUE_SINT = 6;
+    private static final int VALUE_BOOL = 7;
+
+    private static final int GEOM_TYPE_POINT = 1;
+    private static final int CMD_MOVE_TO_ONCE = (1 & 0x7) | (1 << 3);
+
+    private final String layerName;
+    private final int extent;
+    private final Map<String, Integer> keys = new LinkedHashMap<>();
+    private final Map<Object, Integer> values = new LinkedHashMap<>();
+    private final List<byte[]> features = new ArrayList<>();
+
+    public MvtEncoder(String layerName, int extent) {
+        this.layerName = layerName;
+        this.extent = extent;
+    }
+
+    public int getExtent() {
+        return extent;
+    }
+
+    /**
+     * Thêm một điểm, tọa độ tính theo hệ tọa độ tile [0, extent)
+     * Property có giá trị null sẽ bị bỏ qua
+     */
+    public void addPoint(int x, int y, Map<String, Object> properties) {
+        ByteArrayOutputStream tags = new ByteArrayOutputStream();
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            if (property.getValue() == null) {
+                continue;
+            }
+            writeVarint(tags, keys.computeIfAbsent(property.getKey(), k -> keys.size()));
+            writeVarint(tags, values.computeIfAbsent(normalize(property.getValue()), v -> values.size()));
+        }
+
+        ByteArrayOutputStream geometry = new ByteArrayOutputStream();
+        writeVarint(geometry, CMD_MOVE_TO_ONCE);
+        writeVarint(geometry, zigZag(x) & 0xFFFFFFFFL);
+        writeVarint(geometry, zigZag(y) & 0xFFFFFFFFL);
+
+        ByteArrayOutputStream feature = new ByteArrayOutputStream();
+        writeBytes(feature, FEATURE_TAGS, tags.toByteArray());
+        writeTag(feature, FEATURE_TYPE, 0);
+        writeVarint(feature, GEOM_TYPE_POINT);
+        writeBytes(feature, FEATURE_GEOMETRY, geometry.toByteArray());
+
+        features.add(feature.toByteArray());
+    }
+
+    public boolean isEmpty() {
+        return features.isEmpty();
+    }
+
+    public byte[] encode() {
+        ByteArrayOutputStream layer = new ByteArrayOutputStream();
+        writeTag(layer, LAYER_VERSION, 0);
+        writeVarint(layer, 2);
+        writeBytes(layer, LAYER_NAME, layerName.getBytes(StandardCharsets.UTF_8));
+        for (byte[] feature : features) {
+            writeBytes(layer, LAYER_FEATURES, feature);
+        }
+        for (String key : keys.keySet()) {
+            writeBytes(layer, LAYER_KEYS, key.getBytes(StandardCharsets.UTF_8));
+        }
+        for (Object value : values.keySet()) {
+            writeBytes(layer, LAYER_VALUES, encodeValue(value));
+        }
+        writeTag(layer, LAYER_EXTENT, 0);
+        writeVarint(layer, extent);
+
+        ByteArrayOutputStream tile = new ByteArrayOutputStream();
+        writeBytes(tile, TILE_LAYERS, layer.toByteArray());
+        return tile.toByteArray();
+    }
+
+    private static Object normalize(Object value) {
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Float) {
+            return ((Float) value).doubleValue();
+        }
+        if (value instanceof Long || value instanceof Double || value instanceof Boolean) {
+            return value;
+        }
+        return value.toString();
+    }
+
+    private static byte[] encodeValue(Object value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (value instanceof Long l) {
+            writeTag(out, VALUE_SINT, 0);
+            writeVarint(out, (l << 1) ^ (l >> 63));
+        } else if (value instanceof Double d) {
+            writeTag(out, VALUE_DOUBLE, 1);
+            long bits = Double.doubleToLongBits(d);
+            for (int i = 0; i < 8; i++) {
+                out.write((int) (bits >>> (8 * i)) & 0xFF);
+            }
+        } else if (value instanceof Boolean b) {
+            writeTag(out, VALUE_BOOL, 0);
+            writeVarint(out, b ? 1 : 0);
+        } else {
+            writeBytes(out, VALUE_STRING, value.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    private static int zigZag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    private static void writeTag(ByteArrayOutputStream out, int field, int wireType) {
+        writeVarint(out, ((long) field << 3) | wireType);
+    }
+
+    private static void writeBytes(ByteArrayOutputStream out, int field, byte[] bytes) {
+        writeTag(out, field, 2);
+        writeVarint(out, bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
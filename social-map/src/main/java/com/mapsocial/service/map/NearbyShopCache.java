@@ -0,0 +1,100 @@
+package com.mapsocial.service.map;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache ứng viên cho API nearby theo ô geohash (+ bán kính)
+ * Mọi request có vị trí trong cùng một ô dùng chung một lần query KNN quanh tâm ô,
+ * khoảng cách chính xác tới vị trí thật được tính lại trong Java.
+ *
+ * Shop thay đổi có thể ảnh hưởng tới bất kỳ ô nào trong bán kính nên xóa toàn bộ cache;
+ * dùng generation giống ShopTileCache để kết quả build trong lúc có thay đổi không bị giữ lại.
+ * Invalidation đi theo ShopIndexListener như ShopTileCache, nên mọi instance đều xóa cache
+ * khi index của nó nhận thay đổi (kể cả thay đổi từ instance khác qua Redis).
+ */
+@Component
+@RequiredArgsConstructor
+public class NearbyShopCache implements ShopIndexListener {
+
+    private final ShopSpatialIndex shopSpatialIndex;
+
+    @Value("${social-map.map.nearby-cache.max-size:10000}")
+    private long maxSize;
+
+    @Value("${social-map.map.nearby-cache.ttl-seconds:30}")
+    private long ttlSeconds;
+
+    private final AtomicLong generation = new AtomicLong();
+    private Cache<String, Candidates> candidates;
+
+    /**
+     * Các shop gần tâm ô nhất, sắp theo khoảng cách tới tâm ô
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class Candidates {
+        private final List<ShopMarker> markers;
+        // Khoảng cách (tới tâm ô) của ứng viên xa nhất; mọi shop gần hơn đều có trong danh sách
+        private final double reach;
+        // true nếu đã lấy hết shops trong bán kính (không bị cắt bởi giới hạn số ứng viên)
+        private final boolean complete;
+    }
+
+    @PostConstruct
+    public void init() {
+        candidates = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+        shopSpatialIndex.addListener(this);
+    }
+
+    public Candidates get(String geohash, int radiusMeters, Supplier<Candidates> loader) {
+        String key = geohash + ":" + radiusMeters;
+        Candidates cached = candidates.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        long observed = generation.get();
+        Candidates loaded = loader.get();
+        candidates.put(key, loaded);
+
+        if (generation.get() != observed) {
+            candidates.invalidate(key);
+        }
+        return loaded;
+    }
+
+    @Override
+    public void onIndexLoaded(Collection<ShopMarker> markers) {
+        invalidateAll();
+    }
+
+    @Override
+    public void onMarkerAdded(ShopMarker marker) {
+        invalidateAll();
+    }
+
+    @Override
+    public void onMarkerRemoved(ShopMarker marker) {
+        invalidateAll();
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        candidates.invalidateAll();
+    }
+}
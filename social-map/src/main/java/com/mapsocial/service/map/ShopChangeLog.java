@@ -0,0 +1,120 @@
+package com.mapsocial.service.map;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Version dữ liệu của spatial index kèm nhật ký các shop đã thay đổi (ring buffer)
+ * Dùng cho delta API: client gửi version đã có, server trả về các shop thay đổi sau version đó
+ *
+ * Version chỉ có nghĩa trong một instance nên token gửi cho client gồm cả epoch của instance
+ * ("epoch.version"). Token của instance khác / đã quá cũ -> client phải load lại toàn bộ.
+ *
+ * Không dùng nguồn version chung (counter Redis, sequence DB): thay đổi đến mỗi instance qua Redis pub/sub
+ * không theo thứ tự của version chung, nên "các thay đổi sau version X" không xác định được chắc chắn
+ * trên một instance chưa nhận đủ. Vì vậy /map/delta yêu cầu sticky routing (ghi trong API docs);
+ * không sticky thì vẫn đúng, chỉ mất lợi ích delta (luôn reset).
+ */
+@Component
+@RequiredArgsConstructor
+public class ShopChangeLog implements ShopIndexListener {
+
+    private final ShopSpatialIndex shopSpatialIndex;
+
+    @Value("${social-map.map.change-log.capacity:10000}")
+    private int capacity;
+
+    private final String epoch = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+
+    private long[] versions;
+    private UUID[] shopIds;
+    private int head = 0; // Vị trí ghi tiếp theo
+    private int size = 0;
+    private long version = 0;
+    private long floor = 0; // Các thay đổi có version <= floor không còn trong log
+
+    @PostConstruct
+    public void init() {
+        versions = new long[capacity];
+        shopIds = new UUID[capacity];
+        shopSpatialIndex.addListener(this);
+    }
+
+    @Override
+    public synchronized void onIndexLoaded(Collection<ShopMarker> markers) {
+        // Index build lại từ đầu -> mọi token cũ đều phải load lại
+        version++;
+        floor = version;
+        size = 0;
+    }
+
+    @Override
+    public void onMarkerAdded(ShopMarker marker) {
+        record(marker.getId());
+    }
+
+    @Override
+    public void onMarkerRemoved(ShopMarker marker) {
+        record(marker.getId());
+    }
+
+    /**
+     * Token của version hiện tại - phải đọc TRƯỚC khi query index
+     * để các thay đổi xảy ra giữa hai bước được gửi lại ở lần delta sau
+     */
+    public synchronized String currentToken() {
+        return epoch + "." + version;
+    }
+
+    /**
+     * Các shop đã thay đổi sau token
+     * @return null nếu token không hợp lệ, của instance khác hoặc đã quá cũ
+     */
+    public synchronized Set<UUID> changedSince(String token) {
+        if (token == null) {
+            return null;
+        }
+        int separator = token.indexOf('.');
+        if (separator < 0 || !epoch.equals(token.substring(0, separator))) {
+            return null;
+        }
+
+        long since;
+        try {
+            since = Long.parseLong(token.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (since < floor || since > version) {
+            return null;
+        }
+
+        Set<UUID> changed = new HashSet<>();
+        // Duyệt từ mới về cũ, dừng khi gặp version client đã có
+        for (int i = 0; i < size; i++) {
+            int index = Math.floorMod(head - 1 - i, capacity);
+            if (versions[index] <= since) {
+                break;
+            }
+            changed.add(shopIds[index]);
+        }
+        return changed;
+    }
+
+    private synchronized void record(UUID shopId) {
+        version++;
+        if (size == capacity) {
+            floor = versions[head];
+        } else {
+            size++;
+        }
+        versions[head] = version;
+        shopIds[head] = shopId;
+        head = (head + 1) % capacity;
+    }
+}
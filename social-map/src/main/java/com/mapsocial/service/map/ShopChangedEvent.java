@@ -0,0 +1,39 @@
+package com.mapsocial.service.map;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+/**
+ * Event phát ra sau mỗi lần tạo / cập nhật / xóa shop
+ * previous = trạng thái trước khi thay đổi (null nếu là shop mới)
+ * current  = trạng thái sau khi thay đổi (null nếu shop bị xóa)
+ * version  = updated_at của current, hoặc thời điểm xóa; spatial index bỏ qua thay đổi cũ hơn bản đang giữ
+ */
+@Getter
+@RequiredArgsConstructor
+public class ShopChangedEvent {
+    private final UUID shopId;
+    private final ShopMarker previous;
+    private final ShopMarker current;
+    private final long version;
+
+    public ShopChangedEvent(UUID shopId, ShopMarker previous, ShopMarker current) {
+        this(shopId, previous, current, current != null ? current.getVersion() : versionOf(LocalDateTime.now()));
+    }
+
+    public boolean isDeleted() {
+        return current == null;
+    }
+
+    /**
+     * Version từ updated_at (LocalDateTime theo giờ của server, cùng cách ghi với Marker.prePersist / preUpdate)
+     * @return 0 nếu không có updated_at
+     */
+    public static long versionOf(LocalDateTime updatedAt) {
+        return updatedAt != null ? updatedAt.toInstant(ZoneOffset.UTC).toEpochMilli() : 0;
+    }
+}
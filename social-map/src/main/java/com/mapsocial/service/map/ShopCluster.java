@@ -0,0 +1,22 @@
+package com.mapsocial.service.map;
+
+import lombok.Value;
+
+/**
+ * Một node trong cluster pyramid: ô lưới (cellX, cellY) tại một zoom level
+ * single != null khi ô chỉ chứa đúng một shop
+ */
+@Value
+public class ShopCluster {
+    int zoom;
+    int cellX;
+    int cellY;
+    int count;
+    double latitude;
+    double longitude;
+    ShopMarker single;
+
+    public ShopClusterId getClusterId() {
+        return new ShopClusterId(zoom, cellX, cellY);
+    }
+}
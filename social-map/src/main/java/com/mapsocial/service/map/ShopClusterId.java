@@ -0,0 +1,75 @@
+package com.mapsocial.service.map;
+
+import com.mapsocial.util.TileMath;
+
+/**
+ * Định danh một ô của cluster pyramid: ô (cellX, cellY) tại zoom level
+ * Ô là tile của zoom (zoom + CELL_ZOOM_OFFSET), nên từ id suy ra được bounds mà không cần lưu danh sách shops.
+ *
+ * Dạng chuỗi "zoom-cellX-cellY" (vd. "12-13056-7700"), dùng trực tiếp làm path variable.
+ */
+public record ShopClusterId(int zoom, int cellX, int cellY) {
+
+    private static final String SEPARATOR = "-";
+
+    public ShopClusterId {
+        if (zoom < 0 || zoom > TileMath.MAX_ZOOM || cellX < 0 || cellY < 0
+                || cellX >= 1 << gridZoom(zoom) || cellY >= 1 << gridZoom(zoom)) {
+            throw new IllegalArgumentException("Invalid cluster cell: " + zoom + "/" + cellX + "/" + cellY);
+        }
+    }
+
+    /**
+     * Ô chứa điểm (latitude, longitude) tại zoom level
+     */
+    public static ShopClusterId containing(double latitude, double longitude, int zoom) {
+        int gridZoom = gridZoom(zoom);
+        return new ShopClusterId(zoom, TileMath.tileX(longitude, gridZoom), TileMath.tileY(latitude, gridZoom));
+    }
+
+    /**
+     * @throws IllegalArgumentException nếu chuỗi không đúng định dạng hoặc ô nằm ngoài lưới
+     */
+    public static ShopClusterId parse(String value) {
+        String[] parts = value.split(SEPARATOR);
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Invalid cluster id: " + value);
+        }
+        try {
+            return new ShopClusterId(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cluster id: " + value, e);
+        }
+    }
+
+    public boolean contains(ShopMarker marker) {
+        int gridZoom = gridZoom(zoom);
+        return TileMath.tileX(marker.getLongitude(), gridZoom) == cellX
+                && TileMath.tileY(marker.getLatitude(), gridZoom) == cellY;
+    }
+
+    public double north() {
+        return TileMath.tileLatitude(cellY, gridZoom(zoom));
+    }
+
+    public double south() {
+        return TileMath.tileLatitude(cellY + 1, gridZoom(zoom));
+    }
+
+    public double east() {
+        return TileMath.tileLongitude(cellX + 1, gridZoom(zoom));
+    }
+
+    public double west() {
+        return TileMath.tileLongitude(cellX, gridZoom(zoom));
+    }
+
+    @Override
+    public String toString() {
+        return zoom + SEPARATOR + cellX + SEPARATOR + cellY;
+    }
+
+    private static int gridZoom(int zoom) {
+        return zoom + ShopClusterPyramid.CELL_ZOOM_OFFSET;
+    }
+}
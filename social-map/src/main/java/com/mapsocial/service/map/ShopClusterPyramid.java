@@ -0,0 +1,237 @@
+package com.mapsocial.service.map;
+
+import com.mapsocial.util.TileMath;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Cluster pyramid cho tất cả zoom levels 0-20, build sẵn một lần và cập nhật incremental
+ *
+ * Mỗi zoom z được chia thành lưới ô theo tile của zoom (z + CELL_ZOOM_OFFSET),
+ * tức mỗi tile 256px có 4x4 ô ~64px. Mỗi ô chỉ giữ count và tổng tọa độ nên thêm / xóa
+ * một shop là O(số zoom levels), còn viewport request chỉ đọc các ô trong viewport.
+ */
+@Component
+@RequiredArgsConstructor
+public class ShopClusterPyramid implements ShopIndexListener {
+
+    public static final int CELL_ZOOM_OFFSET = 2;
+
+    private final ShopSpatialIndex shopSpatialIndex;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Map<Long, Cell>> levels = new ArrayList<>();
+
+    @PostConstruct
+    public void register() {
+        for (int zoom = 0; zoom <= TileMath.MAX_ZOOM; zoom++) {
+            levels.add(new HashMap<>());
+        }
+        shopSpatialIndex.addListener(this);
+    }
+
+    @Override
+    public void onIndexLoaded(Collection<ShopMarker> markers) {
+        lock.writeLock().lock();
+        try {
+            levels.forEach(Map::clear);
+            for (ShopMarker marker : markers) {
+                add(marker);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onMarkerAdded(ShopMarker marker) {
+        lock.writeLock().lock();
+        try {
+            add(marker);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onMarkerRemoved(ShopMarker marker) {
+        lock.writeLock().lock();
+        try {
+            for (int zoom = 0; zoom <= TileMath.MAX_ZOOM; zoom++) {
+                long key = cellKey(marker, zoom);
+                Map<Long, Cell> level = levels.get(zoom);
+                Cell cell = level.get(key);
+                if (cell == null) {
+                    continue;
+                }
+
+                cell.count--;
+                cell.sumLat -= marker.getLatitude();
+                cell.sumLng -= marker.getLongitude();
+
+                if (cell.count <= 0) {
+                    level.remove(key);
+                } else if (cell.count == 1) {
+                    cell.single = findRemaining(zoom, key);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Lấy các ô cluster tại zoom level giao với bounding box
+     */
+    public List<ShopCluster> getClusters(double north, double south, double east, double west, int zoom) {
+        int z = Math.max(0, Math.min(TileMath.MAX_ZOOM, zoom));
+        int gridZoom = z + CELL_ZOOM_OFFSET;
+
+        int minX = TileMath.tileX(west, gridZoom);
+        int maxX = TileMath.tileX(east, gridZoom);
+        int minY = TileMath.tileY(north, gridZoom);
+        int maxY = TileMath.tileY(south, gridZoom);
+
+        lock.readLock().lock();
+        try {
+            Map<Long, Cell> level = levels.get(z);
+            List<ShopCluster> result = new ArrayList<>();
+
+            long rangeSize = (long) (maxX - minX + 1) * (maxY - minY + 1);
+            if (rangeSize <= level.size()) {
+                // Viewport nhỏ so với số ô có dữ liệu -> duyệt theo range
+                for (int x = minX; x <= maxX; x++) {
+                    for (int y = minY; y <= maxY; y++) {
+                        Cell cell = level.get(TileMath.pack(x, y));
+                        if (cell != null) {
+                            result.add(toCluster(z, x, y, cell));
+                        }
+                    }
+                }
+            } else {
+                // Viewport lớn hơn số ô có dữ liệu -> duyệt các ô có dữ liệu
+                for (Map.Entry<Long, Cell> entry : level.entrySet()) {
+                    int x = TileMath.unpackX(entry.getKey());
+                    int y = TileMath.unpackY(entry.getKey());
+                    if (x >= minX && x <= maxX && y >= minY && y <= maxY) {
+                        result.add(toCluster(z, x, y, entry.getValue()));
+                    }
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Lấy các ô cluster nằm trong đúng một tile z/x/y (tối đa 4x4 ô)
+     */
+    public List<ShopCluster> getClustersInTile(int zoom, int tileX, int tileY) {
+        int cellsPerTile = 1 << CELL_ZOOM_OFFSET;
+        int minX = tileX * cellsPerTile;
+        int minY = tileY * cellsPerTile;
+
+        lock.readLock().lock();
+        try {
+            Map<Long, Cell> level = levels.get(zoom);
+            List<ShopCluster> result = new ArrayList<>();
+            for (int x = minX; x < minX + cellsPerTile; x++) {
+                for (int y = minY; y < minY + cellsPerTile; y++) {
+                    Cell cell = level.get(TileMath.pack(x, y));
+                    if (cell != null) {
+                        result.add(toCluster(zoom, x, y, cell));
+                    }
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Các ô con (tối đa 2x2) của ô parent tại zoom level kế tiếp
+     */
+    public List<ShopCluster> getChildren(ShopClusterId parent) {
+        int childZoom = parent.zoom() + 1;
+        if (childZoom > TileMath.MAX_ZOOM) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            Map<Long, Cell> level = levels.get(childZoom);
+            List<ShopCluster> result = new ArrayList<>(4);
+            for (int x = parent.cellX() * 2; x <= parent.cellX() * 2 + 1; x++) {
+                for (int y = parent.cellY() * 2; y <= parent.cellY() * 2 + 1; y++) {
+                    Cell cell = level.get(TileMath.pack(x, y));
+                    if (cell != null) {
+                        result.add(toCluster(childZoom, x, y, cell));
+                    }
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void add(ShopMarker marker) {
+        for (int zoom = 0; zoom <= TileMath.MAX_ZOOM; zoom++) {
+            Cell cell = levels.get(zoom).computeIfAbsent(cellKey(marker, zoom), k -> new Cell());
+            cell.count++;
+            cell.sumLat += marker.getLatitude();
+            cell.sumLng += marker.getLongitude();
+            cell.single = cell.count == 1 ? marker : null;
+        }
+    }
+
+    /**
+     * Tìm shop còn lại duy nhất trong ô (sau khi một shop bị xóa khỏi ô có 2 shops)
+     * Được gọi trong write lock của spatial index nên index đã phản ánh thay đổi mới nhất
+     */
+    private ShopMarker findRemaining(int zoom, long key) {
+        int gridZoom = zoom + CELL_ZOOM_OFFSET;
+        int x = TileMath.unpackX(key);
+        int y = TileMath.unpackY(key);
+
+        List<ShopMarker> candidates = shopSpatialIndex.query(
+                TileMath.tileLatitude(y, gridZoom),
+                TileMath.tileLatitude(y + 1, gridZoom),
+                TileMath.tileLongitude(x + 1, gridZoom),
+                TileMath.tileLongitude(x, gridZoom)
+        );
+        for (ShopMarker candidate : candidates) {
+            if (cellKey(candidate, zoom) == key) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    static long cellKey(ShopMarker marker, int zoom) {
+        int gridZoom = zoom + CELL_ZOOM_OFFSET;
+        return TileMath.pack(
+                TileMath.tileX(marker.getLongitude(), gridZoom),
+                TileMath.tileY(marker.getLatitude(), gridZoom)
+        );
+    }
+
+    private static ShopCluster toCluster(int zoom, int x, int y, Cell cell) {
+        return new ShopCluster(zoom, x, y, cell.count,
+                cell.sumLat / cell.count, cell.sumLng / cell.count, cell.single);
+    }
+
+    private static class Cell {
+        int count;
+        double sumLat;
+        double sumLng;
+        ShopMarker single;
+    }
+}
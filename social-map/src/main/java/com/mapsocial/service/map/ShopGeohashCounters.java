@@ -0,0 +1,151 @@
+package com.mapsocial.service.map;
+
+import com.mapsocial.util.Geohash;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Bộ đếm số shop theo tiền tố geohash (precision 3 - 8), đồng bộ theo spatial index
+ * Tăng / giảm khi marker được thêm / gỡ (tạo, di chuyển, xóa, đổi status đều đi qua index),
+ * nên heatmap chỉ đọc counters, không quét bảng shops hay index lúc request.
+ */
+@Component
+@RequiredArgsConstructor
+public class ShopGeohashCounters implements ShopIndexListener {
+
+    public static final int MIN_PRECISION = 3;
+    public static final int MAX_PRECISION = 8;
+
+    private final ShopSpatialIndex shopSpatialIndex;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // counts[p - MIN_PRECISION]: geohash precision p -> số shop
+    @SuppressWarnings("unchecked")
+    private final Map<String, Integer>[] counts = new HashMap[MAX_PRECISION - MIN_PRECISION + 1];
+    private volatile boolean ready = false;
+
+    /**
+     * Một ô heatmap: geohash + số shop
+     */
+    public record Cell(String geohash, int count) {
+    }
+
+    @PostConstruct
+    public void register() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new HashMap<>();
+        }
+        shopSpatialIndex.addListener(this);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Override
+    public void onIndexLoaded(Collection<ShopMarker> markers) {
+        lock.writeLock().lock();
+        try {
+            for (Map<String, Integer> level : counts) {
+                level.clear();
+            }
+            for (ShopMarker marker : markers) {
+                adjust(marker, 1);
+            }
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onMarkerAdded(ShopMarker marker) {
+        lock.writeLock().lock();
+        try {
+            adjust(marker, 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onMarkerRemoved(ShopMarker marker) {
+        lock.writeLock().lock();
+        try {
+            adjust(marker, -1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Số ô precision cần để phủ bbox
+     */
+    public static long cellsCovering(double north, double south, double east, double west, int precision) {
+        double height = Geohash.cellHeight(precision);
+        double width = Geohash.cellWidth(precision);
+        long rows = (long) Math.floor((north + 90) / height) - (long) Math.floor((south + 90) / height) + 1;
+        long columns = (long) Math.floor((east + 180) / width) - (long) Math.floor((west + 180) / width) + 1;
+        return rows * columns;
+    }
+
+    /**
+     * Các ô precision có shop giao với bbox
+     * Duyệt lưới ô phủ bbox nếu ít hơn số ô có shop ở level đó, ngược lại duyệt counters
+     */
+    public List<Cell> query(double north, double south, double east, double west, int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION);
+        }
+
+        lock.readLock().lock();
+        try {
+            Map<String, Integer> level = counts[precision - MIN_PRECISION];
+            List<Cell> cells = new ArrayList<>();
+
+            if (cellsCovering(north, south, east, west, precision) <= level.size()) {
+                double height = Geohash.cellHeight(precision);
+                double width = Geohash.cellWidth(precision);
+                long firstRow = (long) Math.floor((south + 90) / height);
+                long lastRow = (long) Math.floor((north + 90) / height);
+                long firstColumn = (long) Math.floor((west + 180) / width);
+                long lastColumn = (long) Math.floor((east + 180) / width);
+
+                for (long row = firstRow; row <= lastRow; row++) {
+                    double latitude = -90 + (row + 0.5) * height;
+                    for (long column = firstColumn; column <= lastColumn; column++) {
+                        double longitude = -180 + (column + 0.5) * width;
+                        String geohash = Geohash.encode(latitude, longitude, precision);
+                        Integer count = level.get(geohash);
+                        if (count != null) {
+                            cells.add(new Cell(geohash, count));
+                        }
+                    }
+                }
+            } else {
+                for (Map.Entry<String, Integer> entry : level.entrySet()) {
+                    double[] bounds = Geohash.bounds(entry.getKey());
+                    if (bounds[0] <= north && bounds[2] >= south && bounds[1] <= east && bounds[3] >= west) {
+                        cells.add(new Cell(entry.getKey(), entry.getValue()));
+                    }
+                }
+            }
+            return cells;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void adjust(ShopMarker marker, int delta) {
+        String geohash = Geohash.encode(marker.getLatitude(), marker.getLongitude(), MAX_PRECISION);
+        for (int precision = MIN_PRECISION; precision <= MAX_PRECISION; precision++) {
+            counts[precision - MIN_PRECISION].merge(geohash.substring(0, precision), delta,
+                    (current, change) -> current + change == 0 ? null : current + change);
+        }
+    }
+}
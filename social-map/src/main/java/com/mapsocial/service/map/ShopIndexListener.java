@@ -0,0 +1,19 @@
+package com.mapsocial.service.map;
+
+import java.util.Collection;
+
+/**
+ * Callback cho các cấu trúc dữ liệu phụ được xây dựng trên spatial index
+ * (cluster pyramid, ...). Được gọi trong write lock của index, sau khi index đã cập nhật.
+ */
+public interface ShopIndexListener {
+
+    /**
+     * Index vừa load lại toàn bộ từ DB - listener cần build lại từ đầu
+     */
+    void onIndexLoaded(Collection<ShopMarker> markers);
+
+    void onMarkerAdded(ShopMarker marker);
+
+    void onMarkerRemoved(ShopMarker marker);
+}
@@ -0,0 +1,123 @@
+package com.mapsocial.service.map;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mapsocial.dto.response.ShopMapUpdateMessage;
+import com.mapsocial.mapper.ShopMapper;
+import com.mapsocial.util.TileMath;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Đẩy thay đổi của shop tới client qua STOMP, theo tile: /topic/map/{z}/{x}/{y}
+ * Client subscribe các tile đang hiển thị thay vì poll lại /api/shops/map.
+ *
+ * Mỗi thay đổi chỉ gửi tới các tile chứa vị trí cũ / mới của shop (ở mọi zoom level):
+ * - tile chứa vị trí mới (shop hiển thị được) -> upsert
+ * - tile chỉ chứa vị trí cũ, hoặc shop bị xóa / không còn hiển thị -> remove
+ *
+ * Client có thể kết nối vào instance khác nên message đi qua Redis channel,
+ * mỗi instance (kể cả instance phát) gửi lại cho broker STOMP của mình.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ShopLiveUpdatePublisher implements MessageListener {
+
+    public static final String TOPIC_PREFIX = "/topic/map/";
+
+    private static final String UPDATE_CHANNEL = "map-live-updates";
+    private static final TypeReference<Map<String, ShopMapUpdateMessage>> PAYLOAD_TYPE = new TypeReference<>() {};
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer redisContainer;
+    private final ObjectMapper objectMapper;
+
+    @PostConstruct
+    public void init() {
+        redisContainer.addMessageListener(this, new ChannelTopic(UPDATE_CHANNEL));
+    }
+
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onShopChanged(ShopChangedEvent event) {
+        Map<String, ShopMapUpdateMessage> messages = buildMessages(event);
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        try {
+            stringRedisTemplate.convertAndSend(UPDATE_CHANNEL, objectMapper.writeValueAsString(messages));
+        } catch (Exception e) {
+            // Redis lỗi -> ít nhất client của instance này vẫn nhận được
+            log.warn("Failed to publish map live update, sending locally: {}", e.getMessage());
+            send(messages);
+        }
+    }
+
+    /**
+     * Nhận thay đổi (của mọi instance) và gửi cho các client đang subscribe tại instance này
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            send(objectMapper.readValue(new String(message.getBody(), StandardCharsets.UTF_8), PAYLOAD_TYPE));
+        } catch (Exception e) {
+            log.warn("Failed to handle map live update: {}", e.getMessage());
+        }
+    }
+
+    public static String destination(int zoom, int x, int y) {
+        return TOPIC_PREFIX + zoom + "/" + x + "/" + y;
+    }
+
+    private Map<String, ShopMapUpdateMessage> buildMessages(ShopChangedEvent event) {
+        ShopMarker previous = event.getPrevious();
+        ShopMarker current = event.getCurrent();
+        boolean wasVisible = previous != null && previous.isVisibleOnMap();
+        boolean isVisible = current != null && current.isVisibleOnMap();
+
+        Map<String, ShopMapUpdateMessage> messages = new LinkedHashMap<>();
+        if (wasVisible) {
+            ShopMapUpdateMessage remove = ShopMapper.toRemoveMessage(event.getShopId());
+            for (int zoom = 0; zoom <= TileMath.MAX_ZOOM; zoom++) {
+                messages.put(destination(zoom,
+                        TileMath.tileX(previous.getLongitude(), zoom),
+                        TileMath.tileY(previous.getLatitude(), zoom)), remove);
+            }
+        }
+        if (isVisible) {
+            // Ghi đè remove ở các tile vẫn chứa shop sau khi di chuyển
+            ShopMapUpdateMessage upsert = ShopMapper.toUpsertMessage(current);
+            for (int zoom = 0; zoom <= TileMath.MAX_ZOOM; zoom++) {
+                messages.put(destination(zoom,
+                        TileMath.tileX(current.getLongitude(), zoom),
+                        TileMath.tileY(current.getLatitude(), zoom)), upsert);
+            }
+        }
+        return messages;
+    }
+
+    private void send(Map<String, ShopMapUpdateMessage> messages) {
+        for (Map.Entry<String, ShopMapUpdateMessage> entry : messages.entrySet()) {
+            messagingTemplate.convertAndSend(entry.getKey(), entry.getValue());
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.mapsocial.service.map;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.mapsocial.enums.ShopStatus;
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.jackson.Jacksonized;
+
+import java.time.LocalTime;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Snapshot gọn nhẹ của một shop dùng cho bản đồ (chỉ các field cần để vẽ marker)
+ * Immutable để có thể chia sẻ giữa các thread đọc index mà không cần copy
+ */
+@Value
+@Builder(toBuilder = true)
+@Jacksonized
+public class ShopMarker {
+    UUID id;
+    String name;
+    double latitude;
+    double longitude;
+    String address;
+    String imageUrl;
+    Double rating;
+    Integer reviewCount;
+    ShopStatus status;
+    @Builder.Default
+    Set<UUID> tagIds = Set.of();
+    LocalTime openingTime;
+    LocalTime closingTime;
+    // updated_at của shop (ShopChangedEvent.versionOf), 0 nếu không rõ
+    long version;
+
+    /**
+     * Chỉ shop đang OPEN mới được hiển thị trên bản đồ
+     */
+    @JsonIgnore
+    public boolean isVisibleOnMap() {
+        return status == ShopStatus.OPEN;
+    }
+
+    public boolean hasOpeningHours() {
+        return openingTime != null && closingTime != null;
+    }
+
+    /**
+     * Shop có mở cửa tại thời điểm time trong ngày hay không
+     * opening == closing: mở 24h; opening > closing: mở qua đêm (vd 18:00 - 02:00)
+     */
+    public boolean isOpenAt(LocalTime time) {
+        if (!hasOpeningHours()) {
+            return false;
+        }
+        if (openingTime.equals(closingTime)) {
+            return true;
+        }
+        if (openingTime.isBefore(closingTime)) {
+            return !time.isBefore(openingTime) && time.isBefore(closingTime);
+        }
+        return !time.isBefore(openingTime) || time.isBefore(closingTime);
+    }
+}
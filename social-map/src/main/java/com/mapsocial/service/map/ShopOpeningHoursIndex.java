@@ -0,0 +1,163 @@
+package com.mapsocial.service.map;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Index giờ mở cửa: ngày chia thành các slot 15 phút, mỗi slot có hai bitmap shop ordinals
+ * - full: shop mở suốt cả slot -> chắc chắn mở tại mọi thời điểm trong slot
+ * - partial: shop mở / đóng giữa slot -> cần so giờ chính xác
+ *
+ * "Mở lúc T" = full[slot(T)] cộng các shop partial[slot(T)] thỏa ShopMarker.isOpenAt(T),
+ * nên lọc kết quả bbox không phải tính lại khung giờ (kể cả qua đêm) cho từng shop.
+ */
+@Component
+@RequiredArgsConstructor
+public class ShopOpeningHoursIndex implements ShopIndexListener {
+
+    private static final int SLOT_MINUTES = 15;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final int SLOTS = MINUTES_PER_DAY / SLOT_MINUTES;
+
+    private final ShopSpatialIndex shopSpatialIndex;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ShopOrdinals ordinals = new ShopOrdinals();
+    private final RoaringBitmap[] full = new RoaringBitmap[SLOTS];
+    private final RoaringBitmap[] partial = new RoaringBitmap[SLOTS];
+
+    @PostConstruct
+    public void register() {
+        for (int slot = 0; slot < SLOTS; slot++) {
+            full[slot] = new RoaringBitmap();
+            partial[slot] = new RoaringBitmap();
+        }
+        shopSpatialIndex.addListener(this);
+    }
+
+    @Override
+    public void onIndexLoaded(Collection<ShopMarker> markers) {
+        lock.writeLock().lock();
+        try {
+            ordinals.clear();
+            for (int slot = 0; slot < SLOTS; slot++) {
+                full[slot].clear();
+                partial[slot].clear();
+            }
+            for (ShopMarker marker : markers) {
+                add(marker);
+            }
+            for (int slot = 0; slot < SLOTS; slot++) {
+                full[slot].runOptimize();
+                partial[slot].runOptimize();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onMarkerAdded(ShopMarker marker) {
+        lock.writeLock().lock();
+        try {
+            add(marker);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onMarkerRemoved(ShopMarker marker) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinals.release(marker.getId());
+            if (ordinal == null) {
+                return;
+            }
+            for (int slot = 0; slot < SLOTS; slot++) {
+                full[slot].remove(ordinal);
+                partial[slot].remove(ordinal);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Giữ lại các markers mở cửa tại thời điểm time (shop không có giờ mở cửa bị loại)
+     */
+    public List<ShopMarker> filterOpenAt(List<ShopMarker> markers, LocalTime time) {
+        int slot = (time.getHour() * 60 + time.getMinute()) / SLOT_MINUTES;
+
+        lock.readLock().lock();
+        try {
+            RoaringBitmap fullSlot = full[slot];
+            RoaringBitmap partialSlot = partial[slot];
+
+            List<ShopMarker> result = new ArrayList<>();
+            for (ShopMarker marker : markers) {
+                Integer ordinal = ordinals.get(marker.getId());
+                if (ordinal == null) {
+                    continue;
+                }
+                if (fullSlot.contains(ordinal) || (partialSlot.contains(ordinal) && marker.isOpenAt(time))) {
+                    result.add(marker);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void add(ShopMarker marker) {
+        int ordinal = ordinals.assign(marker.getId());
+        if (!marker.hasOpeningHours()) {
+            return;
+        }
+
+        int open = toMinute(marker.getOpeningTime());
+        int close = toMinute(marker.getClosingTime());
+        if (open == close) {
+            // Mở 24h
+            addInterval(ordinal, 0, MINUTES_PER_DAY);
+        } else if (open < close) {
+            addInterval(ordinal, open, close);
+        } else {
+            // Qua đêm: [open, 24:00) và [00:00, close)
+            addInterval(ordinal, open, MINUTES_PER_DAY);
+            addInterval(ordinal, 0, close);
+        }
+    }
+
+    /**
+     * Đánh dấu khoảng [start, end) phút trong ngày
+     */
+    private void addInterval(int ordinal, int start, int end) {
+        if (start >= end) {
+            return;
+        }
+        for (int slot = start / SLOT_MINUTES; slot * SLOT_MINUTES < end; slot++) {
+            int slotStart = slot * SLOT_MINUTES;
+            int slotEnd = slotStart + SLOT_MINUTES;
+            if (start <= slotStart && end >= slotEnd) {
+                full[slot].add(ordinal);
+            } else {
+                partial[slot].add(ordinal);
+            }
+        }
+    }
+
+    private static int toMinute(LocalTime time) {
+        return time.getHour() * 60 + time.getMinute();
+    }
+}
@@ -0,0 +1,53 @@
+package com.mapsocial.service.map;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Gán cho mỗi shop một ordinal int nhỏ để dùng làm bit trong RoaringBitmap
+ * Ordinal của shop bị xóa được tái sử dụng để bitmap luôn dày và nén tốt.
+ *
+ * Không thread-safe: chủ sở hữu (ShopTagIndex, ...) tự bảo vệ bằng lock của mình.
+ */
+class ShopOrdinals {
+
+    private final Map<UUID, Integer> ordinals = new HashMap<>();
+    private final Deque<Integer> free = new ArrayDeque<>();
+    private int next = 0;
+
+    /**
+     * Ordinal hiện có của shop, hoặc cấp mới
+     */
+    int assign(UUID shopId) {
+        Integer ordinal = ordinals.get(shopId);
+        if (ordinal == null) {
+            ordinal = free.isEmpty() ? next++ : free.pop();
+            ordinals.put(shopId, ordinal);
+        }
+        return ordinal;
+    }
+
+    /**
+     * @return ordinal đã giải phóng, null nếu shop chưa có ordinal
+     */
+    Integer release(UUID shopId) {
+        Integer ordinal = ordinals.remove(shopId);
+        if (ordinal != null) {
+            free.push(ordinal);
+        }
+        return ordinal;
+    }
+
+    Integer get(UUID shopId) {
+        return ordinals.get(shopId);
+    }
+
+    void clear() {
+        ordinals.clear();
+        free.clear();
+        next = 0;
+    }
+}
@@ -0,0 +1,303 @@
+package com.mapsocial.service.map;
+
+import com.mapsocial.enums.ShopRankBy;
+import com.mapsocial.util.TileMath;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Top-K shops theo từng ô lưới, cho mỗi tiêu chí xếp hạng (ShopRankBy)
+ * Lưới giống cluster pyramid (ô = tile của zoom + CELL_ZOOM_OFFSET) cho zoom 0 - MAX_RANK_ZOOM:
+ * - Level mịn nhất giữ tất cả shops của ô, đã sắp theo hạng
+ * - Các level khác chỉ giữ CELL_CAPACITY shops tốt nhất của ô
+ *
+ * Top-K của ô cha luôn nằm trong hợp top-K của 4 ô con, nên thêm shop chỉ cần chèn từ dưới lên
+ * (dừng ở level đầu tiên shop không lọt top-K), xóa shop thì ô nào mất shop sẽ lấy lại top-K từ 4 ô con.
+ * Viewport request chỉ đọc các ô trong viewport, không sort toàn bộ shops.
+ */
+@Component
+@RequiredArgsConstructor
+public class ShopRankIndex implements ShopIndexListener {
+
+    public static final int MAX_RANK_ZOOM = 16;
+    private static final int CELL_CAPACITY = 8;
+    private static final int MAX_QUERY_CELLS = 4096; // Viewport phủ nhiều ô hơn thì đọc ở level thô hơn
+
+    private final ShopSpatialIndex shopSpatialIndex;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // grids.get(rankBy).get(zoom): cell key -> shops của ô, tốt nhất trước
+    private final Map<ShopRankBy, List<Map<Long, List<ShopMarker>>>> grids = new EnumMap<>(ShopRankBy.class);
+
+    @PostConstruct
+    public void register() {
+        for (ShopRankBy rankBy : ShopRankBy.values()) {
+            List<Map<Long, List<ShopMarker>>> levels = new ArrayList<>();
+            for (int zoom = 0; zoom <= MAX_RANK_ZOOM; zoom++) {
+                levels.add(new HashMap<>());
+            }
+            grids.put(rankBy, levels);
+        }
+        shopSpatialIndex.addListener(this);
+    }
+
+    @Override
+    public void onIndexLoaded(Collection<ShopMarker> markers) {
+        lock.writeLock().lock();
+        try {
+            for (List<Map<Long, List<ShopMarker>>> levels : grids.values()) {
+                levels.forEach(Map::clear);
+            }
+            for (ShopMarker marker : markers) {
+                add(marker);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onMarkerAdded(ShopMarker marker) {
+        lock.writeLock().lock();
+        try {
+            add(marker);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onMarkerRemoved(ShopMarker marker) {
+        lock.writeLock().lock();
+        try {
+            for (Map.Entry<ShopRankBy, List<Map<Long, List<ShopMarker>>>> grid : grids.entrySet()) {
+                Comparator<ShopMarker> order = comparator(grid.getKey());
+                List<Map<Long, List<ShopMarker>>> levels = grid.getValue();
+
+                for (int zoom = MAX_RANK_ZOOM; zoom >= 0; zoom--) {
+                    long key = ShopClusterPyramid.cellKey(marker, zoom);
+                    List<ShopMarker> cell = levels.get(zoom).get(key);
+                    int index = cell != null ? Collections.binarySearch(cell, marker, order) : -1;
+                    if (index < 0) {
+                        // Không nằm trong top-K ở level này thì cũng không nằm trong top-K các level thô hơn
+                        break;
+                    }
+                    cell.remove(index);
+
+                    if (zoom < MAX_RANK_ZOOM) {
+                        refill(levels, zoom, key, order);
+                    } else if (cell.isEmpty()) {
+                        levels.get(zoom).remove(key);
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Tối đa limit shops tốt nhất trong bounding box theo rankBy, dàn đều theo không gian:
+     * lấy lần lượt shop hạng 1 của mọi ô, rồi hạng 2, ... (round-robin), trong mỗi vòng ưu tiên shop hạng cao hơn,
+     * nên một khu phố đông shop không chiếm hết limit
+     */
+    public List<ShopMarker> top(double north, double south, double east, double west,
+                                int zoom, int limit, ShopRankBy rankBy) {
+        int level = Math.max(0, Math.min(MAX_RANK_ZOOM, zoom));
+        while (level > 0 && cellsCovering(north, south, east, west, level) > MAX_QUERY_CELLS) {
+            level--;
+        }
+        Comparator<ShopMarker> order = comparator(rankBy);
+
+        while (true) {
+            List<List<ShopMarker>> cells = new ArrayList<>();
+            boolean truncated = collect(north, south, east, west, level, limit, rankBy, cells);
+            List<ShopMarker> result = roundRobin(cells, limit, order);
+            if (result.size() >= limit || !truncated) {
+                return result;
+            }
+
+            // Có ô chỉ giữ top-K (đã đầy) mà vẫn chưa đủ limit: còn shops hợp lệ chưa được xét
+            // -> đọc lại ở level mịn hơn, không được thì bổ sung từ spatial index theo thứ tự hạng
+            if (level < MAX_RANK_ZOOM && cellsCovering(north, south, east, west, level + 1) <= MAX_QUERY_CELLS) {
+                level++;
+                continue;
+            }
+            Set<UUID> selected = new HashSet<>();
+            result.forEach(marker -> selected.add(marker.getId()));
+            List<ShopMarker> rest = shopSpatialIndex.query(north, south, east, west);
+            rest.sort(order);
+            for (int i = 0; i < rest.size() && result.size() < limit; i++) {
+                if (!selected.contains(rest.get(i).getId())) {
+                    result.add(rest.get(i));
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Copy (ra khỏi lock) các shops trong bbox của mọi ô ở level, mỗi ô nhiều nhất limit shops
+     * @return true nếu có ô bị cắt ở CELL_CAPACITY (ô có thể còn shops trong bbox không nằm trong top-K)
+     */
+    private boolean collect(double north, double south, double east, double west, int level, int limit,
+                            ShopRankBy rankBy, List<List<ShopMarker>> cells) {
+        int gridZoom = level + ShopClusterPyramid.CELL_ZOOM_OFFSET;
+        int minX = TileMath.tileX(west, gridZoom);
+        int maxX = TileMath.tileX(east, gridZoom);
+        int minY = TileMath.tileY(north, gridZoom);
+        int maxY = TileMath.tileY(south, gridZoom);
+        boolean truncated = false;
+
+        lock.readLock().lock();
+        try {
+            Map<Long, List<ShopMarker>> grid = grids.get(rankBy).get(level);
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    List<ShopMarker> cell = grid.get(TileMath.pack(x, y));
+                    if (cell == null) {
+                        continue;
+                    }
+                    // Ô đầy ở level thô (trong hay ở mép viewport) chỉ là top-K của ô
+                    truncated |= level < MAX_RANK_ZOOM && cell.size() >= CELL_CAPACITY;
+
+                    if (x > minX && x < maxX && y > minY && y < maxY) {
+                        cells.add(List.copyOf(cell.subList(0, Math.min(limit, cell.size()))));
+                        continue;
+                    }
+
+                    // Ô ở mép viewport: chỉ giữ các shops nằm trong bbox
+                    List<ShopMarker> inside = new ArrayList<>();
+                    for (int i = 0; i < cell.size() && inside.size() < limit; i++) {
+                        ShopMarker marker = cell.get(i);
+                        if (marker.getLatitude() <= north && marker.getLatitude() >= south
+                                && marker.getLongitude() <= east && marker.getLongitude() >= west) {
+                            inside.add(marker);
+                        }
+                    }
+                    if (!inside.isEmpty()) {
+                        cells.add(inside);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return truncated;
+    }
+
+    /**
+     * Như top() nhưng cho danh sách markers đã lọc sẵn (vd. theo tag / giờ mở cửa):
+     * gom theo ô của zoom, sắp từng ô rồi lấy round-robin như top()
+     */
+    public static List<ShopMarker> spread(List<ShopMarker> markers, int zoom, int limit, ShopRankBy rankBy) {
+        int level = Math.max(0, Math.min(MAX_RANK_ZOOM, zoom));
+        Comparator<ShopMarker> order = comparator(rankBy);
+
+        Map<Long, List<ShopMarker>> cells = new HashMap<>();
+        for (ShopMarker marker : markers) {
+            cells.computeIfAbsent(ShopClusterPyramid.cellKey(marker, level), k -> new ArrayList<>()).add(marker);
+        }
+        for (List<ShopMarker> cell : cells.values()) {
+            cell.sort(order);
+        }
+        return roundRobin(cells.values(), limit, order);
+    }
+
+    /**
+     * Thứ tự hạng: tiêu chí chính giảm dần, rồi tiêu chí còn lại, cuối cùng id để thứ tự luôn xác định
+     */
+    public static Comparator<ShopMarker> comparator(ShopRankBy rankBy) {
+        Comparator<ShopMarker> byRating = Comparator.comparingDouble(
+                (ShopMarker marker) -> marker.getRating() != null ? marker.getRating() : 0.0).reversed();
+        Comparator<ShopMarker> byReviews = Comparator.comparingInt(
+                (ShopMarker marker) -> marker.getReviewCount() != null ? marker.getReviewCount() : 0).reversed();
+        Comparator<ShopMarker> primary = rankBy == ShopRankBy.REVIEW_COUNT
+                ? byReviews.thenComparing(byRating)
+                : byRating.thenComparing(byReviews);
+        return primary.thenComparing(ShopMarker::getId);
+    }
+
+    private void add(ShopMarker marker) {
+        for (Map.Entry<ShopRankBy, List<Map<Long, List<ShopMarker>>>> grid : grids.entrySet()) {
+            Comparator<ShopMarker> order = comparator(grid.getKey());
+            List<Map<Long, List<ShopMarker>>> levels = grid.getValue();
+
+            for (int zoom = MAX_RANK_ZOOM; zoom >= 0; zoom--) {
+                List<ShopMarker> cell = levels.get(zoom)
+                        .computeIfAbsent(ShopClusterPyramid.cellKey(marker, zoom), k -> new ArrayList<>());
+                int index = -Collections.binarySearch(cell, marker, order) - 1;
+                if (zoom < MAX_RANK_ZOOM && index >= CELL_CAPACITY) {
+                    // Không lọt top-K của ô này thì cũng không lọt top-K của các ô cha
+                    break;
+                }
+                cell.add(index, marker);
+                if (zoom < MAX_RANK_ZOOM && cell.size() > CELL_CAPACITY) {
+                    cell.removeLast();
+                }
+            }
+        }
+    }
+
+    /**
+     * Lấy lại top-K của ô (zoom, key) từ top-K của 4 ô con ở zoom + 1
+     */
+    private void refill(List<Map<Long, List<ShopMarker>>> levels, int zoom, long key, Comparator<ShopMarker> order) {
+        int x = TileMath.unpackX(key);
+        int y = TileMath.unpackY(key);
+        Map<Long, List<ShopMarker>> children = levels.get(zoom + 1);
+
+        List<ShopMarker> merged = new ArrayList<>();
+        for (int childX = x * 2; childX <= x * 2 + 1; childX++) {
+            for (int childY = y * 2; childY <= y * 2 + 1; childY++) {
+                List<ShopMarker> child = children.get(TileMath.pack(childX, childY));
+                if (child != null) {
+                    merged.addAll(child.subList(0, Math.min(CELL_CAPACITY, child.size())));
+                }
+            }
+        }
+
+        if (merged.isEmpty()) {
+            levels.get(zoom).remove(key);
+            return;
+        }
+        merged.sort(order);
+        levels.get(zoom).put(key, new ArrayList<>(merged.subList(0, Math.min(CELL_CAPACITY, merged.size()))));
+    }
+
+    /**
+     * Vòng r lấy shop hạng r của mọi ô (mỗi ô đã sắp theo hạng), trong vòng xếp theo hạng, tới khi đủ limit
+     */
+    private static List<ShopMarker> roundRobin(Collection<List<ShopMarker>> cells, int limit,
+                                               Comparator<ShopMarker> order) {
+        List<ShopMarker> result = new ArrayList<>(limit);
+        for (int round = 0; result.size() < limit; round++) {
+            List<ShopMarker> candidates = new ArrayList<>();
+            for (List<ShopMarker> cell : cells) {
+                if (round < cell.size()) {
+                    candidates.add(cell.get(round));
+                }
+            }
+            if (candidates.isEmpty()) {
+                break;
+            }
+            candidates.sort(order);
+            for (int i = 0; i < candidates.size() && result.size() < limit; i++) {
+                result.add(candidates.get(i));
+            }
+        }
+        return result;
+    }
+
+    private static long cellsCovering(double north, double south, double east, double west, int zoom) {
+        int gridZoom = zoom + ShopClusterPyramid.CELL_ZOOM_OFFSET;
+        long columns = TileMath.tileX(east, gridZoom) - TileMath.tileX(west, gridZoom) + 1L;
+        long rows = TileMath.tileY(south, gridZoom) - TileMath.tileY(north, gridZoom) + 1L;
+        return columns * rows;
+    }
+}
@@ -0,0 +1,373 @@
+package com.mapsocial.service.map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mapsocial.mapper.ShopMapper;
+import com.mapsocial.repository.ShopRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.quadtree.Quadtree;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Spatial index in-memory cho tất cả shops OPEN
+ * Phục vụ bounding box query của bản đồ mà không cần round trip tới PostGIS
+ *
+ * Dùng JTS Quadtree thay vì STRtree vì STRtree không cho insert/remove sau khi build,
+ * trong khi index phải được cập nhật theo từng lần create/update/delete shop.
+ *
+ * Mỗi instance giữ index riêng: thay đổi commit ở instance này được áp dụng ngay tại chỗ
+ * rồi phát qua Redis channel (kèm marker trước / sau) để các instance khác áp dụng cùng thay đổi.
+ * Mỗi thay đổi mang version (updated_at của shop): thay đổi cũ hơn bản index đang giữ bị bỏ qua,
+ * nên hai instance cùng sửa một shop vẫn hội tụ về bản mới nhất. Message bị mất (Redis down...)
+ * được sửa bởi lần đối soát định kỳ (load lại toàn bộ từ DB).
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ShopSpatialIndex implements MessageListener {
+
+    private static final String CHANGE_CHANNEL = "shop-index-changes";
+    private static final long INITIAL_RETRY_DELAY_MILLIS = 1000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 60_000;
+    private static final long TOMBSTONE_RETENTION_MILLIS = Duration.ofHours(1).toMillis();
+
+    private final ShopRepository shopRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer redisContainer;
+    private final ObjectMapper objectMapper;
+
+    // Bỏ qua message do chính instance này phát (đã áp dụng tại chỗ)
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<UUID, ShopMarker> markers = new HashMap<>();
+    private Quadtree tree = new Quadtree();
+    private final List<ShopIndexListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Version lúc shop bị xóa / ẩn khỏi bản đồ, để message cũ đến muộn không thêm lại shop
+    private final Map<UUID, Long> tombstones = new HashMap<>();
+
+    // Load thất bại lúc khởi động (DB chưa sẵn sàng...) thì thử lại với backoff cho tới khi thành công
+    private final ScheduledExecutorService retryExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "shop-index-load");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long retryDelayMillis = INITIAL_RETRY_DELAY_MILLIS;
+
+    // Các thay đổi xảy ra trong lúc đang load từ DB, sẽ được replay sau khi load xong
+    private final Queue<ShopChangedEvent> pendingChanges = new ArrayDeque<>();
+    private boolean loading = false;
+    private volatile boolean ready = false;
+
+    /**
+     * Thay đổi gửi qua Redis channel
+     */
+    record ShopIndexChange(String origin, UUID shopId, ShopMarker previous, ShopMarker current, long version) {
+    }
+
+    @PostConstruct
+    public void init() {
+        redisContainer.addMessageListener(this, new ChannelTopic(CHANGE_CHANNEL));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        retryExecutor.shutdownNow();
+    }
+
+    /**
+     * Load toàn bộ shops OPEN vào index khi ứng dụng khởi động (và khi đối soát / sau import)
+     * Bỏ qua nếu một lần load khác đang chạy
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long start = System.currentTimeMillis();
+
+        lock.writeLock().lock();
+        try {
+            if (loading) {
+                return;
+            }
+            loading = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        List<Object[]> rows;
+        try {
+            // Transaction read-write -> luôn đọc từ primary: replica có thể chưa có
+            // các thay đổi vừa commit (vd. ngay sau import) trong khi pendingChanges chỉ giữ event từ lúc này
+            rows = new TransactionTemplate(transactionManager).execute(status -> shopRepository.findOpenShopMarkers());
+        } catch (Exception e) {
+            long delay = retryDelayMillis;
+            retryDelayMillis = Math.min(delay * 2, MAX_RETRY_DELAY_MILLIS);
+            lock.writeLock().lock();
+            try {
+                loading = false;
+                pendingChanges.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            if (ready) {
+                // Index cũ vẫn phục vụ được, lần đối soát sau sẽ load lại
+                log.error("Failed to reload shop spatial index: {}", e.getMessage(), e);
+            } else {
+                log.error("Failed to load shop spatial index, retrying in {} ms: {}", delay, e.getMessage(), e);
+                scheduleRetry(delay);
+            }
+            return;
+        }
+
+        Map<UUID, ShopMarker> loaded = new HashMap<>(rows.size() * 2);
+        Quadtree loadedTree = new Quadtree();
+        for (Object[] row : rows) {
+            ShopMarker marker = ShopMapper.toIndexedShopMarker(row);
+            loaded.put(marker.getId(), marker);
+            loadedTree.insert(envelopeOf(marker), marker);
+        }
+
+        lock.writeLock().lock();
+        try {
+            // Shop bị xóa sau khi query đọc xong: tombstone mới hơn dòng vừa load
+            long now = ShopChangedEvent.versionOf(LocalDateTime.now());
+            tombstones.values().removeIf(version -> version < now - TOMBSTONE_RETENTION_MILLIS);
+            for (Map.Entry<UUID, Long> tombstone : tombstones.entrySet()) {
+                ShopMarker marker = loaded.get(tombstone.getKey());
+                if (marker != null && marker.getVersion() > 0 && marker.getVersion() < tombstone.getValue()) {
+                    loaded.remove(marker.getId());
+                    loadedTree.remove(envelopeOf(marker), marker);
+                }
+            }
+
+            markers.clear();
+            markers.putAll(loaded);
+            tree = loadedTree;
+
+            Collection<ShopMarker> snapshot = Collections.unmodifiableCollection(loaded.values());
+            for (ShopIndexListener listener : listeners) {
+                listener.onIndexLoaded(snapshot);
+            }
+
+            // Replay các thay đổi đã commit trong lúc load
+            loading = false;
+            ShopChangedEvent event;
+            while ((event = pendingChanges.poll()) != null) {
+                apply(event);
+            }
+
+            ready = true;
+            retryDelayMillis = INITIAL_RETRY_DELAY_MILLIS;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        log.info("Loaded {} shops into spatial index in {} ms", loaded.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Đối soát định kỳ với DB: load lại toàn bộ để sửa các thay đổi không nhận được qua Redis
+     */
+    @Scheduled(fixedDelayString = "${social-map.map.index-reconcile-interval:15m}",
+               initialDelayString = "${social-map.map.index-reconcile-interval:15m}")
+    public void reconcile() {
+        if (ready) {
+            load();
+        }
+    }
+
+    private void scheduleRetry(long delayMillis) {
+        try {
+            retryExecutor.schedule(this::load, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Đang shutdown
+        }
+    }
+
+    /**
+     * Cập nhật index sau khi transaction tạo / sửa / xóa shop đã commit
+     * Chạy trước các cache khác để chúng build lại từ trạng thái mới nhất
+     */
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onShopChanged(ShopChangedEvent event) {
+        applyChange(event);
+
+        try {
+            stringRedisTemplate.convertAndSend(CHANGE_CHANNEL, objectMapper.writeValueAsString(
+                    new ShopIndexChange(instanceId, event.getShopId(), event.getPrevious(), event.getCurrent(),
+                            event.getVersion())));
+        } catch (Exception e) {
+            log.warn("Failed to publish shop index change {}: {}", event.getShopId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Nhận thay đổi đã commit ở instance khác
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            ShopIndexChange change = objectMapper.readValue(
+                    new String(message.getBody(), StandardCharsets.UTF_8), ShopIndexChange.class);
+            if (!instanceId.equals(change.origin())) {
+                applyChange(new ShopChangedEvent(change.shopId(), change.previous(), change.current(), change.version()));
+            }
+        } catch (Exception e) {
+            log.warn("Failed to apply shop index change: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Đăng ký cấu trúc phụ cần đồng bộ theo index (gọi trong @PostConstruct của listener)
+     */
+    public void addListener(ShopIndexListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Index đã load xong hay chưa - nếu chưa thì caller phải fallback về PostGIS
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Lấy tất cả markers nằm trong bounding box
+     */
+    public List<ShopMarker> query(double north, double south, double east, double west) {
+        Envelope bbox = new Envelope(west, east, south, north);
+
+        lock.readLock().lock();
+        try {
+            @SuppressWarnings("unchecked")
+            List<ShopMarker> candidates = tree.query(bbox);
+
+            // Quadtree trả về candidates theo node, cần lọc lại chính xác
+            List<ShopMarker> result = new ArrayList<>(candidates.size());
+            for (ShopMarker marker : candidates) {
+                if (bbox.contains(marker.getLongitude(), marker.getLatitude())) {
+                    result.add(marker);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Đếm số markers trong bounding box
+     */
+    public int count(double north, double south, double east, double west) {
+        return query(north, south, east, west).size();
+    }
+
+    public Optional<ShopMarker> get(UUID shopId) {
+        lock.readLock().lock();
+        try {
+            return Optional.ofNullable(markers.get(shopId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return markers.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void applyChange(ShopChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            if (loading) {
+                pendingChanges.add(event);
+            }
+            apply(event);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(ShopChangedEvent event) {
+        if (isStale(event)) {
+            log.debug("Skipping stale shop index change {} (version {})", event.getShopId(), event.getVersion());
+            return;
+        }
+
+        ShopMarker existing = markers.remove(event.getShopId());
+        if (existing != null) {
+            tree.remove(envelopeOf(existing), existing);
+            if (!loading) {
+                for (ShopIndexListener listener : listeners) {
+                    listener.onMarkerRemoved(existing);
+                }
+            }
+        }
+
+        ShopMarker current = event.getCurrent();
+        if (current != null && current.isVisibleOnMap()) {
+            tombstones.remove(current.getId());
+            markers.put(current.getId(), current);
+            tree.insert(envelopeOf(current), current);
+            if (!loading) {
+                for (ShopIndexListener listener : listeners) {
+                    listener.onMarkerAdded(current);
+                }
+            }
+        } else if (event.getVersion() > 0) {
+            tombstones.put(event.getShopId(), event.getVersion());
+        }
+    }
+
+    /**
+     * Thay đổi cũ hơn marker / tombstone đang giữ (đến muộn hoặc sai thứ tự qua Redis)
+     * Thay đổi không có version (0) luôn được áp dụng
+     */
+    private boolean isStale(ShopChangedEvent event) {
+        if (event.getVersion() <= 0) {
+            return false;
+        }
+        ShopMarker existing = markers.get(event.getShopId());
+        long known = existing != null ? existing.getVersion() : tombstones.getOrDefault(event.getShopId(), 0L);
+        return event.getVersion() < known;
+    }
+
+    private static Envelope envelopeOf(ShopMarker marker) {
+        return new Envelope(marker.getLongitude(), marker.getLongitude(), marker.getLatitude(), marker.getLatitude());
+    }
+}
@@ -0,0 +1,179 @@
+package com.mapsocial.service.map;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Index tag -> bitmap (Roaring) các ordinal của shop, đồng bộ theo spatial index
+ * Kết quả bbox từ spatial index được lọc / đếm theo tag bằng phép toán bitmap
+ * thay vì JOIN shop_tags trong mỗi query.
+ *
+ * Mỗi shop được gán một ordinal int nhỏ (ShopOrdinals) làm vị trí bit.
+ */
+@Component
+@RequiredArgsConstructor
+public class ShopTagIndex implements ShopIndexListener {
+
+    private final ShopSpatialIndex shopSpatialIndex;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ShopOrdinals ordinals = new ShopOrdinals();
+    private final Map<UUID, RoaringBitmap> tagBitmaps = new HashMap<>();
+
+    @PostConstruct
+    public void register() {
+        shopSpatialIndex.addListener(this);
+    }
+
+    @Override
+    public void onIndexLoaded(Collection<ShopMarker> markers) {
+        lock.writeLock().lock();
+        try {
+            ordinals.clear();
+            tagBitmaps.clear();
+            for (ShopMarker marker : markers) {
+                add(marker);
+            }
+            for (RoaringBitmap bitmap : tagBitmaps.values()) {
+                bitmap.runOptimize();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onMarkerAdded(ShopMarker marker) {
+        lock.writeLock().lock();
+        try {
+            add(marker);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onMarkerRemoved(ShopMarker marker) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinals.release(marker.getId());
+            if (ordinal == null) {
+                return;
+            }
+            for (UUID tagId : marker.getTagIds()) {
+                RoaringBitmap bitmap = tagBitmaps.get(tagId);
+                if (bitmap != null) {
+                    bitmap.remove(ordinal);
+                    if (bitmap.isEmpty()) {
+                        tagBitmaps.remove(tagId);
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Giữ lại các markers có ít nhất một trong các tags
+     * OR bitmap của các tags rồi AND với bitmap ordinal của markers, giữ nguyên thứ tự markers truyền vào
+     */
+    public List<ShopMarker> filterByTags(List<ShopMarker> markers, Collection<UUID> tagIds) {
+        lock.readLock().lock();
+        try {
+            List<RoaringBitmap> bitmaps = new ArrayList<>(tagIds.size());
+            for (UUID tagId : tagIds) {
+                RoaringBitmap bitmap = tagBitmaps.get(tagId);
+                if (bitmap != null) {
+                    bitmaps.add(bitmap);
+                }
+            }
+            if (bitmaps.isEmpty()) {
+                return Collections.emptyList();
+            }
+
+            // (ordinal << 32) | vị trí trong markers, sắp theo ordinal để ghép với thứ tự duyệt của bitmap
+            long[] keyed = new long[markers.size()];
+            int size = 0;
+            for (int i = 0; i < markers.size(); i++) {
+                Integer ordinal = ordinals.get(markers.get(i).getId());
+                if (ordinal != null) {
+                    keyed[size++] = ((long) ordinal << 32) | i;
+                }
+            }
+            Arrays.sort(keyed, 0, size);
+            int[] viewport = new int[size];
+            for (int i = 0; i < size; i++) {
+                viewport[i] = (int) (keyed[i] >>> 32);
+            }
+
+            RoaringBitmap matching = RoaringBitmap.and(
+                    RoaringBitmap.bitmapOf(viewport), FastAggregation.or(bitmaps.iterator()));
+
+            int[] positions = new int[matching.getCardinality()];
+            int count = 0;
+            int next = 0;
+            IntIterator iterator = matching.getIntIterator();
+            while (iterator.hasNext()) {
+                int ordinal = iterator.next();
+                while ((int) (keyed[next] >>> 32) != ordinal) {
+                    next++;
+                }
+                positions[count++] = (int) keyed[next++];
+            }
+            Arrays.sort(positions);
+
+            List<ShopMarker> result = new ArrayList<>(positions.length);
+            for (int position : positions) {
+                result.add(markers.get(position));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Số markers theo từng tag (chỉ các tag có ít nhất một shop)
+     */
+    public Map<UUID, Integer> countByTag(List<ShopMarker> markers) {
+        lock.readLock().lock();
+        try {
+            int[] viewport = new int[markers.size()];
+            int size = 0;
+            for (ShopMarker marker : markers) {
+                Integer ordinal = ordinals.get(marker.getId());
+                if (ordinal != null) {
+                    viewport[size++] = ordinal;
+                }
+            }
+            RoaringBitmap bbox = RoaringBitmap.bitmapOfUnordered(Arrays.copyOf(viewport, size));
+
+            Map<UUID, Integer> counts = new HashMap<>();
+            for (Map.Entry<UUID, RoaringBitmap> entry : tagBitmaps.entrySet()) {
+                int count = RoaringBitmap.andCardinality(bbox, entry.getValue());
+                if (count > 0) {
+                    counts.put(entry.getKey(), count);
+                }
+            }
+            return counts;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void add(ShopMarker marker) {
+        int ordinal = ordinals.assign(marker.getId());
+        for (UUID tagId : marker.getTagIds()) {
+            tagBitmaps.computeIfAbsent(tagId, k -> new RoaringBitmap()).add(ordinal);
+        }
+    }
+}
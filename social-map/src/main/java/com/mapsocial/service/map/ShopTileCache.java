@@ -0,0 +1,97 @@
+package com.mapsocial.service.map;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mapsocial.util.TileMath;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache vector tile đã encode theo z/x/y
+ * Khi một shop thay đổi chỉ invalidate đúng tile chứa shop đó ở mỗi zoom level
+ *
+ * Không dùng Cache.get(key, loader) vì loader cần read lock của spatial index, còn invalidate
+ * chạy trong write lock của index - compute chặn theo key sẽ gây deadlock. Thay vào đó dùng
+ * generation: tile build xong chỉ được giữ lại nếu không có thay đổi nào xảy ra trong lúc build.
+ */
+@Component
+@RequiredArgsConstructor
+public class ShopTileCache implements ShopIndexListener {
+
+    private final ShopSpatialIndex shopSpatialIndex;
+
+    @Value("${social-map.map.tile-cache.max-size:20000}")
+    private long maxSize;
+
+    @Value("${social-map.map.tile-cache.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    private final AtomicLong generation = new AtomicLong();
+    private Cache<Long, byte[]> tiles;
+
+    @PostConstruct
+    public void register() {
+        tiles = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+        shopSpatialIndex.addListener(this);
+    }
+
+    public byte[] get(int zoom, int x, int y, Supplier<byte[]> builder) {
+        long key = tileKey(zoom, x, y);
+        byte[] cached = tiles.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        long observed = generation.get();
+        byte[] tile = builder.get();
+        tiles.put(key, tile);
+
+        // Có shop thay đổi trong lúc build -> tile có thể đã cũ, không giữ lại
+        if (generation.get() != observed) {
+            tiles.invalidate(key);
+        }
+        return tile;
+    }
+
+    @Override
+    public void onIndexLoaded(Collection<ShopMarker> markers) {
+        generation.incrementAndGet();
+        tiles.invalidateAll();
+    }
+
+    @Override
+    public void onMarkerAdded(ShopMarker marker) {
+        invalidate(marker);
+    }
+
+    @Override
+    public void onMarkerRemoved(ShopMarker marker) {
+        invalidate(marker);
+    }
+
+    private void invalidate(ShopMarker marker) {
+        generation.incrementAndGet();
+        for (int zoom = 0; zoom <= TileMath.MAX_ZOOM; zoom++) {
+            tiles.invalidate(tileKey(zoom,
+                    TileMath.tileX(marker.getLongitude(), zoom),
+                    TileMath.tileY(marker.getLatitude(), zoom)));
+        }
+    }
+
+    /**
+     * z (5 bit) | x (21 bit) | y (21 bit) - đủ cho zoom <= 20
+     */
+    private static long tileKey(int zoom, int x, int y) {
+        return ((long) zoom << 42) | ((long) x << 21) | y;
+    }
+}
@@ -0,0 +1,197 @@
+package com.mapsocial.service.version;
+
+import com.mapsocial.service.map.ShopChangedEvent;
+import com.mapsocial.service.map.ShopMarker;
+import com.mapsocial.util.TileMath;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Version dữ liệu shop / menu dùng làm ETag cho các API đọc (conditional GET)
+ *
+ * Counters nằm trong Redis để mọi instance trả cùng ETag cho cùng dữ liệu:
+ * - global: tăng sau mỗi thay đổi shop (danh sách shops)
+ * - shop:{id} / menu:{id}: tăng khi shop / menu đó thay đổi
+ * - tile:{z}:{x}:{y}: tăng cho các tile (mọi zoom) chứa vị trí cũ và mới của shop thay đổi
+ * Tất cả chỉ tăng SAU KHI commit, và caller đọc version TRƯỚC khi query: ETag cũ đi với dữ liệu mới
+ * thì lần sau chỉ tốn một response 200, không bao giờ có 304 cho dữ liệu cũ.
+ * Điều đó chỉ đúng khi query thấy mọi commit đã tăng version: API đọc theo ETag này query trên primary
+ * (hoặc index trong bộ nhớ đã áp thay đổi trước khi version tăng), không dùng replica.
+ *
+ * Mọi ETag kèm epoch (chuỗi ngẫu nhiên): đổi epoch sau import hàng loạt, và epoch tự sinh lại nếu Redis mất dữ liệu,
+ * nên counters bị reset về 0 không làm ETag cũ khớp nhầm.
+ * Redis lỗi -> trả về null, caller bỏ qua ETag và trả response bình thường.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DataVersions {
+
+    public static final int MAX_ETAG_TILES = 64; // Viewport phủ nhiều tile hơn thì dùng version global
+
+    private static final String KEY_PREFIX = "data:version:";
+    private static final String EPOCH_KEY = KEY_PREFIX + "epoch";
+    private static final String GLOBAL_KEY = KEY_PREFIX + "global";
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * Tăng version của shop, các tile chứa shop và version global, chạy sau spatial index
+     */
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onShopChanged(ShopChangedEvent event) {
+        Set<String> keys = new LinkedHashSet<>();
+        keys.add(GLOBAL_KEY);
+        keys.add(shopKey(event.getShopId()));
+        addTileKeys(keys, event.getPrevious());
+        addTileKeys(keys, event.getCurrent());
+        increment(keys);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onMenuChanged(MenuChangedEvent event) {
+        increment(List.of(menuKey(event.getMenuId())));
+    }
+
+    /**
+     * Vô hiệu hóa mọi ETag đã phát (dùng khi nhiều shops thay đổi cùng lúc, vd. import hàng loạt)
+     */
+    public void invalidateAll() {
+        try {
+            stringRedisTemplate.opsForValue().set(EPOCH_KEY, newEpoch());
+        } catch (Exception e) {
+            log.warn("Failed to reset data version epoch: {}", e.getMessage());
+        }
+    }
+
+    public String shopETag(UUID shopId) {
+        return eTag("shop|" + shopId, List.of(shopKey(shopId)));
+    }
+
+    public String allShopsETag() {
+        return eTag("shops", List.of(GLOBAL_KEY));
+    }
+
+    public String menuETag(UUID menuId) {
+        return eTag("menu|" + menuId, List.of(menuKey(menuId)));
+    }
+
+    public String tileETag(int zoom, int x, int y) {
+        return eTag("tile|" + zoom + "/" + x + "/" + y, List.of(tileKey(zoom, x, y)));
+    }
+
+    /**
+     * ETag cho một response bản đồ theo bounding box
+     * @param request mô tả đầy đủ request (params, định dạng response) - request khác nhau phải khác chuỗi
+     * @param zoom zoom của request: có thì dùng version các tile phủ viewport, không thì version global
+     */
+    public String mapETag(String request, double north, double south, double east, double west, Integer zoom) {
+        List<String> keys = new ArrayList<>();
+        if (zoom != null && zoom >= 0 && zoom <= TileMath.MAX_ZOOM) {
+            int minX = TileMath.tileX(west, zoom);
+            int maxX = TileMath.tileX(east, zoom);
+            int minY = TileMath.tileY(north, zoom);
+            int maxY = TileMath.tileY(south, zoom);
+            if (maxX >= minX && maxY >= minY && (long) (maxX - minX + 1) * (maxY - minY + 1) <= MAX_ETAG_TILES) {
+                for (int x = minX; x <= maxX; x++) {
+                    for (int y = minY; y <= maxY; y++) {
+                        keys.add(tileKey(zoom, x, y));
+                    }
+                }
+            }
+        }
+        if (keys.isEmpty()) {
+            keys.add(GLOBAL_KEY);
+        }
+        return eTag("map|" + request, keys);
+    }
+
+    /**
+     * Đọc epoch + versions trong một round trip, băm cùng resource thành ETag (strong, có dấu nháy)
+     */
+    private String eTag(String resource, List<String> versionKeys) {
+        try {
+            List<String> keys = new ArrayList<>(versionKeys.size() + 1);
+            keys.add(EPOCH_KEY);
+            keys.addAll(versionKeys);
+            List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
+            if (values == null) {
+                return null;
+            }
+
+            String epoch = values.get(0);
+            if (epoch == null) {
+                // Lần đầu hoặc Redis đã mất dữ liệu: instance đầu tiên sinh epoch, các instance khác dùng lại
+                stringRedisTemplate.opsForValue().setIfAbsent(EPOCH_KEY, newEpoch());
+                epoch = stringRedisTemplate.opsForValue().get(EPOCH_KEY);
+            }
+
+            StringBuilder source = new StringBuilder(resource).append('|').append(epoch);
+            for (int i = 1; i < values.size(); i++) {
+                source.append('|').append(values.get(i) != null ? values.get(i) : "0");
+            }
+            return "\"" + DigestUtils.md5DigestAsHex(source.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+        } catch (Exception e) {
+            log.warn("Failed to read data versions: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void increment(Collection<String> keys) {
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                incrementAll(connection, keys);
+                return null;
+            });
+        } catch (Exception e) {
+            // Version không tăng thì client có thể nhận 304 cho dữ liệu cũ -> đổi epoch để vô hiệu hóa mọi ETag
+            log.warn("Failed to increment data versions, resetting epoch: {}", e.getMessage());
+            invalidateAll();
+        }
+    }
+
+    private static void incrementAll(RedisConnection connection, Collection<String> keys) {
+        for (String key : keys) {
+            connection.stringCommands().incr(key.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void addTileKeys(Set<String> keys, ShopMarker marker) {
+        if (marker == null) {
+            return;
+        }
+        for (int zoom = 0; zoom <= TileMath.MAX_ZOOM; zoom++) {
+            keys.add(tileKey(zoom, TileMath.tileX(marker.getLongitude(), zoom), TileMath.tileY(marker.getLatitude(), zoom)));
+        }
+    }
+
+    private static String shopKey(UUID shopId) {
+        return KEY_PREFIX + "shop:" + shopId;
+    }
+
+    private static String menuKey(UUID menuId) {
+        return KEY_PREFIX + "menu:" + menuId;
+    }
+
+    private static String tileKey(int zoom, int x, int y) {
+        return KEY_PREFIX + "tile:" + zoom + ":" + x + ":" + y;
+    }
+
+    private static String newEpoch() {
+        return Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+    }
+}
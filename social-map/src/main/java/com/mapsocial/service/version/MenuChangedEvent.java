@@ -0,0 +1,16 @@
+package com.mapsocial.service.version;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.UUID;
+
+/**
+ * Event phát ra sau mỗi lần tạo / cập nhật / xóa menu
+ */
+@Getter
+@RequiredArgsConstructor
+public class MenuChangedEvent {
+    private final UUID menuId;
+    private final UUID shopId;
+}
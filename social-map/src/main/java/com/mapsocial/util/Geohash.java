@@ -0,0 +1,148 @@
+package com.mapsocial.util;
+
+import java.util.Arrays;
+
+/**
+ * Geohash (base32) - chia bản đồ thành các ô lồng nhau theo tiền tố chuỗi
+ *
+ * Precision -> kích thước ô xấp xỉ (ở xích đạo):
+ * 5 ~ 4.9km x 4.9km, 6 ~ 1.2km x 0.6km, 7 ~ 153m x 153m, 8 ~ 38m x 19m
+ */
+public class Geohash {
+
+    public static final int MAX_PRECISION = 12;
+    public static final double EARTH_RADIUS_METERS = 6371008.8; // Bán kính trung bình, giống sphere của PostGIS
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+    private static final int[] DECODE = new int[128];
+
+    static {
+        Arrays.fill(DECODE, -1);
+        for (int i = 0; i < BASE32.length; i++) {
+            DECODE[BASE32[i]] = i;
+        }
+    }
+
+    private Geohash() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    public static String encode(double latitude, double longitude, int precision) {
+        double minLat = -90, maxLat = 90;
+        double minLng = -180, maxLng = 180;
+        char[] hash = new char[precision];
+        boolean even = true; // Bit chẵn chia kinh độ, bit lẻ chia vĩ độ
+
+        for (int i = 0; i < precision; i++) {
+            int value = 0;
+            for (int bit = 4; bit >= 0; bit--) {
+                if (even) {
+                    double mid = (minLng + maxLng) / 2;
+                    if (longitude >= mid) {
+                        value |= 1 << bit;
+                        minLng = mid;
+                    } else {
+                        maxLng = mid;
+                    }
+                } else {
+                    double mid = (minLat + maxLat) / 2;
+                    if (latitude >= mid) {
+                        value |= 1 << bit;
+                        minLat = mid;
+                    } else {
+                        maxLat = mid;
+                    }
+                }
+                even = !even;
+            }
+            hash[i] = BASE32[value];
+        }
+        return new String(hash);
+    }
+
+    /**
+     * Chiều rộng ô (độ kinh) ở precision
+     */
+    public static double cellWidth(int precision) {
+        int lngBits = (5 * precision + 1) / 2;
+        return 360.0 / (1L << lngBits);
+    }
+
+    /**
+     * Chiều cao ô (độ vĩ) ở precision
+     */
+    public static double cellHeight(int precision) {
+        int latBits = (5 * precision) / 2;
+        return 180.0 / (1L << latBits);
+    }
+
+    /**
+     * @return [south, west, north, east] của ô
+     */
+    public static double[] bounds(String geohash) {
+        double minLat = -90, maxLat = 90;
+        double minLng = -180, maxLng = 180;
+        boolean even = true;
+
+        for (int i = 0; i < geohash.length(); i++) {
+            char c = geohash.charAt(i);
+            int value = c < 128 ? DECODE[c] : -1;
+            if (value < 0) {
+                throw new IllegalArgumentException("Invalid geohash: " + geohash);
+            }
+            for (int bit = 4; bit >= 0; bit--) {
+                boolean set = (value & (1 << bit)) != 0;
+                if (even) {
+                    double mid = (minLng + maxLng) / 2;
+                    if (set) {
+                        minLng = mid;
+                    } else {
+                        maxLng = mid;
+                    }
+                } else {
+                    double mid = (minLat + maxLat) / 2;
+                    if (set) {
+                        minLat = mid;
+                    } else {
+                        maxLat = mid;
+                    }
+                }
+                even = !even;
+            }
+        }
+        return new double[]{minLat, minLng, maxLat, maxLng};
+    }
+
+    /**
+     * @return [latitude, longitude] tâm ô
+     */
+    public static double[] center(String geohash) {
+        double[] bounds = bounds(geohash);
+        return new double[]{(bounds[0] + bounds[2]) / 2, (bounds[1] + bounds[3]) / 2};
+    }
+
+    /**
+     * Khoảng cách lớn nhất từ tâm ô tới một điểm bất kỳ trong ô (mét)
+     */
+    public static double centerToCornerMeters(String geohash) {
+        double[] bounds = bounds(geohash);
+        double[] center = center(geohash);
+        // Góc phía xích đạo xa tâm hơn, lấy max của hai góc đối nhau để đúng ở cả hai bán cầu
+        return Math.max(
+                distanceMeters(center[0], center[1], bounds[0], bounds[1]),
+                distanceMeters(center[0], center[1], bounds[2], bounds[3])
+        );
+    }
+
+    /**
+     * Khoảng cách great-circle (haversine) trên sphere, cùng mô hình với toán tử <-> của PostGIS geography
+     */
+    public static double distanceMeters(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
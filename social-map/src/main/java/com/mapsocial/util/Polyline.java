@@ -0,0 +1,74 @@
+package com.mapsocial.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encoded polyline (định dạng của Google Maps / OSRM, precision 5) - chuỗi tọa độ tuyến đường
+ *
+ * Mỗi điểm là delta (lat, lng) so với điểm trước, nhân 1e5, zigzag, chia thành nhóm 5 bit, mỗi nhóm + 63 thành một ký tự.
+ */
+public class Polyline {
+
+    private static final double PRECISION = 1e5;
+
+    private Polyline() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    /**
+     * @return danh sách điểm [lat, lng]
+     * @throws IllegalArgumentException nếu chuỗi không đúng định dạng hoặc tọa độ nằm ngoài phạm vi
+     */
+    public static List<double[]> decode(String encoded) {
+        List<double[]> points = new ArrayList<>();
+        int index = 0;
+        long lat = 0;
+        long lng = 0;
+
+        while (index < encoded.length()) {
+            long[] delta = new long[2];
+            for (int i = 0; i < 2; i++) {
+                long result = 0;
+                int shift = 0;
+                int b;
+                do {
+                    if (index >= encoded.length() || shift > 30) {
+                        throw new IllegalArgumentException("Invalid polyline");
+                    }
+                    b = encoded.charAt(index++) - 63;
+                    if (b < 0 || b > 63) {
+                        throw new IllegalArgumentException("Invalid polyline character");
+                    }
+                    result |= (long) (b & 0x1f) << shift;
+                    shift += 5;
+                } while (b >= 0x20);
+                delta[i] = (result & 1) != 0 ? ~(result >> 1) : result >> 1;
+            }
+            lat += delta[0];
+            lng += delta[1];
+
+            double latitude = lat / PRECISION;
+            double longitude = lng / PRECISION;
+            if (latitude < -90 || latitude > 90 || longitude < -180 || longitude > 180) {
+                throw new IllegalArgumentException("Polyline coordinate out of range");
+            }
+            points.add(new double[]{latitude, longitude});
+        }
+        return points;
+    }
+
+    /**
+     * WKT LINESTRING (thứ tự lng lat) cho ST_GeomFromText
+     */
+    public static String toWkt(List<double[]> points) {
+        StringBuilder wkt = new StringBuilder(points.size() * 24).append("LINESTRING(");
+        for (int i = 0; i < points.size(); i++) {
+            if (i > 0) {
+                wkt.append(',');
+            }
+            wkt.append(points.get(i)[1]).append(' ').append(points.get(i)[0]);
+        }
+        return wkt.append(')').toString();
+    }
+}
@@ -0,0 +1,79 @@
+package com.mapsocial.util;
+
+/**
+ * Tính toán tile theo chuẩn Web Mercator (XYZ / slippy map) - giống Mapbox / Google Maps
+ * Tile (0,0) nằm ở góc Tây Bắc, y tăng dần về phía Nam
+ */
+public class TileMath {
+
+    public static final int MAX_ZOOM = 20;
+
+    // Vĩ độ tối đa mà Web Mercator biểu diễn được
+    public static final double MAX_LATITUDE = 85.05112878;
+
+    private TileMath() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    public static int tileX(double longitude, int zoom) {
+        int n = 1 << zoom;
+        int x = (int) Math.floor(exactTileX(longitude, zoom));
+        return Math.max(0, Math.min(n - 1, x));
+    }
+
+    public static int tileY(double latitude, int zoom) {
+        int n = 1 << zoom;
+        int y = (int) Math.floor(exactTileY(latitude, zoom));
+        return Math.max(0, Math.min(n - 1, y));
+    }
+
+    /**
+     * Tọa độ x dạng số thực (phần lẻ = vị trí bên trong tile) - dùng khi encode vector tile
+     */
+    public static double exactTileX(double longitude, int zoom) {
+        return (longitude + 180.0) / 360.0 * (1 << zoom);
+    }
+
+    public static double exactTileY(double latitude, int zoom) {
+        double lat = Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude)));
+        return (1.0 - Math.log(Math.tan(lat) + 1.0 / Math.cos(lat)) / Math.PI) / 2.0 * (1 << zoom);
+    }
+
+    public static boolean isValidTile(int zoom, int x, int y) {
+        if (zoom < 0 || zoom > MAX_ZOOM) {
+            return false;
+        }
+        int n = 1 << zoom;
+        return x >= 0 && x < n && y >= 0 && y < n;
+    }
+
+    /**
+     * Kinh độ cạnh Tây của tile x (cạnh Đông = tileLongitude(x + 1, zoom))
+     */
+    public static double tileLongitude(int x, int zoom) {
+        return x / (double) (1 << zoom) * 360.0 - 180.0;
+    }
+
+    /**
+     * Vĩ độ cạnh Bắc của tile y (cạnh Nam = tileLatitude(y + 1, zoom))
+     */
+    public static double tileLatitude(int y, int zoom) {
+        double n = Math.PI - 2.0 * Math.PI * y / (double) (1 << zoom);
+        return Math.toDegrees(Math.atan(Math.sinh(n)));
+    }
+
+    /**
+     * Gộp (x, y) thành một key long - dùng làm key cho map mà không cần tạo String
+     */
+    public static long pack(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    public static int unpackX(long key) {
+        return (int) (key >>> 32);
+    }
+
+    public static int unpackY(long key) {
+        return (int) key;
+    }
+}
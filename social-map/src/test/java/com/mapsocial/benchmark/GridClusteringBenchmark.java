@@ -0,0 +1,151 @@
+package com.mapsocial.benchmark;
+
+import com.mapsocial.dto.response.ShopClusterResponse;
+import com.mapsocial.enums.ShopStatus;
+import com.mapsocial.mapper.ShopMapper;
+import com.mapsocial.service.map.GridClusterer;
+import com.mapsocial.service.map.ShopClusterId;
+import com.mapsocial.service.map.ShopClusterPyramid;
+import com.mapsocial.service.map.ShopMarker;
+import com.mapsocial.util.TileMath;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * So sánh kernel GridClusterer với cách clustering cũ (String key + HashMap + stream 2 lần mỗi ô)
+ * Cả hai cùng gom theo lưới ô của cluster pyramid và trả về cùng List<ShopClusterResponse>
+ * như ShopMapServiceImpl.performGridBasedClustering, nên chỉ khác nhau ở cách gom nhóm
+ *
+ * Chạy: mvn test-compile rồi chạy main() của class này từ IDE
+ * (thêm -prof gc vào args để xem allocation rate)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GridClusteringBenchmark {
+
+    private static final int CLUSTER_ZOOM = 13;
+    private static final int GRID_ZOOM = CLUSTER_ZOOM + ShopClusterPyramid.CELL_ZOOM_OFFSET;
+
+    @Param({"10000", "100000", "1000000"})
+    private int size;
+
+    private List<ShopMarker> locations;
+
+    @Setup
+    public void setUp() {
+        // Các điểm rải quanh Hà Nội (~0.5 độ), đủ dày để có nhiều cluster nhiều shop
+        Random random = new Random(42);
+        locations = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            locations.add(ShopMarker.builder()
+                    .id(UUID.randomUUID())
+                    .name("Shop " + i)
+                    .latitude(21.0 + random.nextGaussian() * 0.1)
+                    .longitude(105.8 + random.nextGaussian() * 0.1)
+                    .status(ShopStatus.OPEN)
+                    .build());
+        }
+
+        // Hai cách phải cho cùng kết quả thì so sánh mới có nghĩa
+        if (!summarize(primitive()).equals(summarize(legacy()))) {
+            throw new IllegalStateException("Legacy and primitive clustering disagree");
+        }
+    }
+
+    @Benchmark
+    public void primitiveKernel(Blackhole blackhole) {
+        blackhole.consume(primitive());
+    }
+
+    @Benchmark
+    public void legacyStringKey(Blackhole blackhole) {
+        blackhole.consume(legacy());
+    }
+
+    /**
+     * Như ShopMapServiceImpl.performGridBasedClustering
+     */
+    private List<ShopClusterResponse> primitive() {
+        long[] cellKeys = new long[size];
+        double[] latitudes = new double[size];
+        double[] longitudes = new double[size];
+        for (int i = 0; i < size; i++) {
+            ShopMarker location = locations.get(i);
+            latitudes[i] = location.getLatitude();
+            longitudes[i] = location.getLongitude();
+            cellKeys[i] = GridClusterer.cellKey(TileMath.tileX(longitudes[i], GRID_ZOOM), TileMath.tileY(latitudes[i], GRID_ZOOM));
+        }
+
+        GridClusterer.Result clusters = GridClusterer.cluster(cellKeys, latitudes, longitudes, size);
+
+        List<ShopClusterResponse> result = new ArrayList<>(clusters.clusterCount);
+        for (int cluster = 0; cluster < clusters.clusterCount; cluster++) {
+            int count = clusters.counts[cluster];
+            int first = clusters.first[cluster];
+            if (count == 1) {
+                result.add(ShopMapper.toClusterResponse(locations.get(first)));
+            } else {
+                long cell = cellKeys[first];
+                ShopClusterId clusterId = new ShopClusterId(CLUSTER_ZOOM, GridClusterer.cellX(cell), GridClusterer.cellY(cell));
+                result.add(ShopMapper.toClusterResponse(clusterId, count,
+                        clusters.sumLat[cluster] / count, clusters.sumLng[cluster] / count));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Cách cũ: key String "x_y" cho mỗi shop, HashMap các List, tâm cluster tính bằng stream
+     */
+    private List<ShopClusterResponse> legacy() {
+        Map<String, List<ShopMarker>> grid = new HashMap<>();
+        for (ShopMarker location : locations) {
+            int x = TileMath.tileX(location.getLongitude(), GRID_ZOOM);
+            int y = TileMath.tileY(location.getLatitude(), GRID_ZOOM);
+            grid.computeIfAbsent(x + "_" + y, k -> new ArrayList<>()).add(location);
+        }
+
+        List<ShopClusterResponse> result = new ArrayList<>(grid.size());
+        for (Map.Entry<String, List<ShopMarker>> entry : grid.entrySet()) {
+            List<ShopMarker> cell = entry.getValue();
+            if (cell.size() == 1) {
+                result.add(ShopMapper.toClusterResponse(cell.getFirst()));
+            } else {
+                String[] key = entry.getKey().split("_");
+                ShopClusterId clusterId = new ShopClusterId(CLUSTER_ZOOM, Integer.parseInt(key[0]), Integer.parseInt(key[1]));
+                result.add(ShopMapper.toClusterResponse(clusterId, cell.size(),
+                        cell.stream().mapToDouble(ShopMarker::getLatitude).average().orElse(0.0),
+                        cell.stream().mapToDouble(ShopMarker::getLongitude).average().orElse(0.0)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * id / clusterId -> count, không phụ thuộc thứ tự phần tử
+     */
+    private static Map<String, Integer> summarize(List<ShopClusterResponse> responses) {
+        Map<String, Integer> summary = new HashMap<>();
+        for (ShopClusterResponse response : responses) {
+            summary.put(response.getClusterId() != null ? response.getClusterId() : response.getId(),
+                    response.getCount() != null ? response.getCount() : 1);
+        }
+        return summary;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(GridClusteringBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
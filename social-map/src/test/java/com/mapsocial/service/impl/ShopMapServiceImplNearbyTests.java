@@ -0,0 +1,161 @@
+package com.mapsocial.service.impl;
+
+import com.mapsocial.dto.response.NearbyShopsResponse;
+import com.mapsocial.dto.response.ShopClusterResponse;
+import com.mapsocial.repository.ShopRepository;
+import com.mapsocial.repository.TagRepository;
+import com.mapsocial.service.map.*;
+import com.mapsocial.util.Geohash;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Phân trang nearby theo cursor: repository giả lập query KNN của PostGIS trên danh sách shops trong bộ nhớ
+ */
+class ShopMapServiceImplNearbyTests {
+
+    private static final double LATITUDE = 21.0285;
+    private static final double LONGITUDE = 105.8542;
+
+    private final ShopRepository shopRepository = mock(ShopRepository.class);
+    private final List<Object[]> shops = new ArrayList<>();
+    private ShopMapServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        NearbyShopCache nearbyShopCache = new NearbyShopCache(mock(ShopSpatialIndex.class));
+        ReflectionTestUtils.setField(nearbyShopCache, "maxSize", 100L);
+        ReflectionTestUtils.setField(nearbyShopCache, "ttlSeconds", 60L);
+        nearbyShopCache.init();
+
+        service = new ShopMapServiceImpl(
+                shopRepository,
+                mock(ShopSpatialIndex.class),
+                mock(ShopClusterPyramid.class),
+                mock(ShopTileCache.class),
+                mock(MapFragmentCache.class),
+                mock(ShopChangeLog.class),
+                nearbyShopCache,
+                mock(ShopTagIndex.class),
+                mock(ShopOpeningHoursIndex.class),
+                mock(ShopGeohashCounters.class),
+                mock(ShopRankIndex.class),
+                mock(TagRepository.class)
+        );
+
+        // Shops trên các vòng tròn quanh vị trí, vài shop cùng khoảng cách để kiểm tra thứ tự theo id
+        for (int i = 0; i < 25; i++) {
+            double offset = 0.0005 * (i / 2 + 1);
+            double latitude = i % 2 == 0 ? LATITUDE + offset : LATITUDE - offset;
+            addShop(latitude, LONGITUDE);
+        }
+
+        when(shopRepository.findNearestShops(anyDouble(), anyDouble(), anyDouble(), anyDouble(), any(UUID.class), anyInt()))
+                .thenAnswer(invocation -> findNearest(
+                        invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2),
+                        invocation.getArgument(3), invocation.getArgument(4), invocation.getArgument(5)));
+        when(shopRepository.findDistanceToShop(anyDouble(), anyDouble(), any(UUID.class)))
+                .thenAnswer(invocation -> shops.stream()
+                        .filter(row -> row[0].equals(invocation.getArgument(2)))
+                        .findFirst()
+                        .map(row -> distance(invocation.getArgument(0), invocation.getArgument(1), row))
+                        .orElse(null));
+    }
+
+    @Test
+    void pagesThroughAllShopsInDistanceOrderWithoutDuplicates() {
+        List<ShopClusterResponse> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            NearbyShopsResponse page = service.getNearbyShops(LATITUDE, LONGITUDE, 5000, cursor, 4);
+            assertThat(page.getShops()).hasSizeLessThanOrEqualTo(4);
+            assertThat(page.isHasMore()).isEqualTo(page.getNextCursor() != null);
+            seen.addAll(page.getShops());
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null && pages < 20);
+
+        assertThat(pages).isEqualTo(7);
+        assertThat(seen).extracting(ShopClusterResponse::getId).doesNotHaveDuplicates().hasSize(25);
+        assertThat(seen).isSortedAccordingTo(Comparator.comparingDouble(ShopClusterResponse::getDistance)
+                .thenComparing(ShopClusterResponse::getId));
+    }
+
+    @Test
+    void excludesShopsOutsideRadius() {
+        NearbyShopsResponse page = service.getNearbyShops(LATITUDE, LONGITUDE, 200, null, 50);
+
+        assertThat(page.isHasMore()).isFalse();
+        assertThat(page.getNextCursor()).isNull();
+        assertThat(page.getShops()).isNotEmpty()
+                .allSatisfy(shop -> assertThat(shop.getDistance()).isLessThanOrEqualTo(200));
+    }
+
+    @Test
+    void issuesCursorFromDatabaseDistance() {
+        NearbyShopsResponse page = service.getNearbyShops(LATITUDE, LONGITUDE, 5000, null, 3);
+        ShopClusterResponse last = page.getShops().getLast();
+
+        String[] cursor = new String(Base64.getUrlDecoder().decode(page.getNextCursor()), StandardCharsets.UTF_8)
+                .split(",", 2);
+
+        assertThat(cursor[1]).isEqualTo(last.getId());
+        Double databaseDistance = shopRepository.findDistanceToShop(LATITUDE, LONGITUDE, UUID.fromString(last.getId()));
+        assertThat(Double.parseDouble(cursor[0])).isEqualTo(databaseDistance);
+    }
+
+    @Test
+    void rejectsMalformedCursor() {
+        String cursor = Base64.getUrlEncoder().encodeToString("no-separator".getBytes(StandardCharsets.UTF_8));
+
+        assertThatThrownBy(() -> service.getNearbyShops(LATITUDE, LONGITUDE, 5000, cursor, 4))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private void addShop(double latitude, double longitude) {
+        shops.add(new Object[]{UUID.randomUUID(), latitude, longitude, "Shop", "Address", null, 4.0, "OPEN"});
+    }
+
+    /**
+     * Như findNearestShops: trong bán kính, sau cursor (khoảng cách, id), sắp theo khoảng cách rồi id
+     */
+    private List<Object[]> findNearest(double latitude, double longitude, double radius,
+                                       double afterDistance, UUID afterId, int limit) {
+        List<Object[]> rows = new ArrayList<>();
+        for (Object[] shop : shops) {
+            double distance = distance(latitude, longitude, shop);
+            // uuid của PostgreSQL so sánh theo byte, tức thứ tự của chuỗi hex (khác UUID.compareTo của Java)
+            boolean after = distance > afterDistance
+                    || (distance == afterDistance && shop[0].toString().compareTo(afterId.toString()) > 0);
+            if (distance <= radius && after) {
+                Object[] row = new Object[9];
+                System.arraycopy(shop, 0, row, 0, 8);
+                row[8] = distance;
+                rows.add(row);
+            }
+        }
+        rows.sort(Comparator.comparingDouble((Object[] row) -> (Double) row[8]).thenComparing(row -> row[0].toString()));
+        return new ArrayList<>(rows.subList(0, Math.min(limit, rows.size())));
+    }
+
+    private static double distance(double latitude, double longitude, Object[] shop) {
+        return Geohash.distanceMeters(latitude, longitude, (Double) shop[1], (Double) shop[2]);
+    }
+}
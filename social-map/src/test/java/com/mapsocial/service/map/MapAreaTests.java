@@ -0,0 +1,118 @@
+package com.mapsocial.service.map;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MapAreaTests {
+
+    private static final List<List<Double>> SQUARE = List.of(
+            List.of(105.84, 21.02), List.of(105.86, 21.02), List.of(105.86, 21.04), List.of(105.84, 21.04));
+
+    @Test
+    void closesRingAndFiltersMarkers() {
+        MapArea area = MapArea.of(SQUARE, 0);
+
+        assertThat(area.getVertexCount()).isEqualTo(5);
+        assertThat(area.north()).isEqualTo(21.04);
+        assertThat(area.south()).isEqualTo(21.02);
+        assertThat(area.east()).isEqualTo(105.86);
+        assertThat(area.west()).isEqualTo(105.84);
+        assertThat(area.contains(marker(21.03, 105.85))).isTrue();
+        assertThat(area.contains(marker(21.05, 105.85))).isFalse();
+        assertThat(area.toWkt()).startsWith("POLYGON");
+    }
+
+    @Test
+    void acceptsExplicitlyClosedRing() {
+        List<List<Double>> closed = new ArrayList<>(SQUARE);
+        closed.add(SQUARE.getFirst());
+
+        assertThat(MapArea.of(closed, 0).getVertexCount()).isEqualTo(5);
+    }
+
+    @Test
+    void rejectsInvalidRings() {
+        assertThatThrownBy(() -> MapArea.of(null, 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> MapArea.of(SQUARE.subList(0, 2), 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> MapArea.of(List.of(List.of(105.84, 21.02), List.of(105.86), List.of(105.86, 21.04)), 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> MapArea.of(List.of(List.of(105.84, 21.02), Arrays.asList(105.86, null), List.of(105.86, 21.04)), 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> MapArea.of(List.of(List.of(105.84, 21.02), List.of(190.0, 21.02), List.of(105.86, 21.04)), 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> MapArea.of(List.of(List.of(105.84, 21.02), List.of(105.86, 95.0), List.of(105.86, 21.04)), 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsRingWithoutArea() {
+        // Ba đỉnh thẳng hàng
+        List<List<Double>> line = List.of(List.of(105.84, 21.02), List.of(105.85, 21.03), List.of(105.86, 21.04));
+        assertThatThrownBy(() -> MapArea.of(line, 0)).isInstanceOf(IllegalArgumentException.class);
+
+        // Đóng ring từ hai đỉnh phân biệt
+        List<List<Double>> degenerate = List.of(List.of(105.84, 21.02), List.of(105.86, 21.04), List.of(105.84, 21.02));
+        assertThatThrownBy(() -> MapArea.of(degenerate, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsTooManyVertices() {
+        assertThatThrownBy(() -> MapArea.of(circle(MapArea.MAX_VERTICES + 2), 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> MapArea.of(circle(MapArea.MAX_VERTICES + 1), 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(MapArea.of(circle(MapArea.MAX_VERTICES), 0).getVertexCount()).isEqualTo(MapArea.MAX_VERTICES + 1);
+
+        // Client tự đóng ring: MAX_VERTICES đỉnh + đỉnh đầu lặp lại
+        List<List<Double>> closed = new ArrayList<>(circle(MapArea.MAX_VERTICES));
+        closed.add(closed.getFirst());
+        assertThat(MapArea.of(closed, 0).getVertexCount()).isEqualTo(MapArea.MAX_VERTICES + 1);
+    }
+
+    @Test
+    void simplifiesDetailedBoundary() {
+        MapArea detailed = MapArea.of(circle(2000), 0);
+        MapArea simplified = MapArea.of(circle(2000), 0.001);
+
+        assertThat(detailed.getVertexCount()).isEqualTo(2001);
+        assertThat(simplified.getVertexCount()).isLessThan(200);
+        assertThat(simplified.contains(marker(21.03, 105.85))).isTrue();
+        assertThat(simplified.contains(marker(21.03, 105.95))).isFalse();
+    }
+
+    @Test
+    void fixesSelfIntersectingRing() {
+        // Hình nơ: hai cạnh chéo cắt nhau ở tâm
+        List<List<Double>> bowTie = List.of(
+                List.of(105.84, 21.02), List.of(105.86, 21.04), List.of(105.86, 21.02), List.of(105.84, 21.04));
+
+        MapArea area = MapArea.of(bowTie, 0);
+
+        assertThat(area.contains(marker(21.03, 105.842))).isTrue();
+        assertThat(area.contains(marker(21.03, 105.858))).isTrue();
+        assertThat(area.contains(marker(21.038, 105.85))).isFalse();
+    }
+
+    /**
+     * Đường tròn bán kính 0.05 độ quanh (21.03, 105.85) với n đỉnh
+     */
+    private static List<List<Double>> circle(int n) {
+        List<List<Double>> ring = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            double angle = 2 * Math.PI * i / n;
+            ring.add(List.of(105.85 + 0.05 * Math.cos(angle), 21.03 + 0.05 * Math.sin(angle)));
+        }
+        return ring;
+    }
+
+    private static ShopMarker marker(double latitude, double longitude) {
+        return ShopMarker.builder().id(UUID.randomUUID()).latitude(latitude).longitude(longitude).build();
+    }
+}
@@ -0,0 +1,212 @@
+package com.mapsocial.service.map;
+
+import com.mapsocial.dto.response.ShopClusterResponse;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Decode lại payload theo đúng thứ tự cột mà frontend (shopMapService.decodeMarkers) đọc
+ */
+class MarkerBinaryEncoderTests {
+
+    @Test
+    void roundTripsShopsAndClusters() {
+        String shopId = UUID.randomUUID().toString();
+        ShopClusterResponse shop = ShopClusterResponse.builder()
+                .type("shop")
+                .id(shopId)
+                .name("Phở Thìn")
+                .latitude(21.0285)
+                .longitude(105.8542)
+                .address("13 Lò Đúc")
+                .imageUrl("https://example.com/pho.jpg")
+                .rating(4.7)
+                .status("OPEN")
+                .build();
+        ShopClusterResponse cluster = ShopClusterResponse.builder()
+                .type("cluster")
+                .latitude(10.7769)
+                .longitude(106.7009)
+                .count(300)
+                .clusterId("12:3257:1860")
+                .north(10.8)
+                .south(10.7)
+                .east(106.8)
+                .west(106.6)
+                .build();
+
+        List<ShopClusterResponse> decoded = decode(MarkerBinaryEncoder.encode(List.of(shop, cluster)));
+
+        assertThat(decoded).hasSize(2);
+        ShopClusterResponse decodedShop = decoded.get(0);
+        assertThat(decodedShop.getType()).isEqualTo("shop");
+        assertThat(decodedShop.getId()).isEqualTo(shopId);
+        assertThat(decodedShop.getName()).isEqualTo("Phở Thìn");
+        assertThat(decodedShop.getAddress()).isEqualTo("13 Lò Đúc");
+        assertThat(decodedShop.getImageUrl()).isEqualTo("https://example.com/pho.jpg");
+        assertThat(decodedShop.getStatus()).isEqualTo("OPEN");
+        assertThat(decodedShop.getClusterId()).isNull();
+        assertThat(decodedShop.getLatitude()).isCloseTo(21.0285, within(1e-5));
+        assertThat(decodedShop.getLongitude()).isCloseTo(105.8542, within(1e-4));
+        assertThat(decodedShop.getRating()).isCloseTo(4.7, within(1e-6));
+        assertThat(decodedShop.getCount()).isZero();
+        assertThat(decodedShop.getNorth()).isNull();
+
+        ShopClusterResponse decodedCluster = decoded.get(1);
+        assertThat(decodedCluster.getType()).isEqualTo("cluster");
+        assertThat(decodedCluster.getId()).isNull();
+        assertThat(decodedCluster.getName()).isNull();
+        assertThat(decodedCluster.getRating()).isNull();
+        assertThat(decodedCluster.getCount()).isEqualTo(300);
+        assertThat(decodedCluster.getClusterId()).isEqualTo("12:3257:1860");
+        assertThat(decodedCluster.getNorth()).isCloseTo(10.8, within(1e-5));
+        assertThat(decodedCluster.getSouth()).isCloseTo(10.7, within(1e-5));
+        assertThat(decodedCluster.getEast()).isCloseTo(106.8, within(1e-4));
+        assertThat(decodedCluster.getWest()).isCloseTo(106.6, within(1e-4));
+    }
+
+    @Test
+    void writesRepeatedStringsOnce() {
+        List<ShopClusterResponse> shops = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            shops.add(ShopClusterResponse.builder()
+                    .type("shop")
+                    .id(UUID.randomUUID().toString())
+                    .name("Shop " + i)
+                    .address("Phố Huế")
+                    .status("OPEN")
+                    .latitude(21.0)
+                    .longitude(105.8)
+                    .build());
+        }
+
+        byte[] payload = MarkerBinaryEncoder.encode(shops);
+        Reader reader = new Reader(payload);
+        reader.offset = 4;
+        reader.varint();
+
+        // 50 tên + địa chỉ + status
+        assertThat(reader.varint()).isEqualTo(52);
+        assertThat(decode(payload)).extracting(ShopClusterResponse::getAddress).containsOnly("Phố Huế");
+    }
+
+    @Test
+    void writesHeaderForEmptyList() {
+        byte[] payload = MarkerBinaryEncoder.encode(List.of());
+
+        assertThat(payload).startsWith(new byte[]{'S', 'M', 'K', 2});
+        assertThat(decode(payload)).isEmpty();
+    }
+
+    private static List<ShopClusterResponse> decode(byte[] payload) {
+        assertThat(new String(payload, 0, 3, StandardCharsets.US_ASCII)).isEqualTo("SMK");
+        assertThat(payload[3]).isEqualTo((byte) 2);
+
+        Reader reader = new Reader(payload);
+        reader.offset = 4;
+        int n = (int) reader.varint();
+
+        List<String> strings = new ArrayList<>();
+        strings.add(null);
+        int stringCount = (int) reader.varint();
+        for (int i = 0; i < stringCount; i++) {
+            int length = (int) reader.varint();
+            strings.add(new String(payload, reader.offset, length, StandardCharsets.UTF_8));
+            reader.offset += length;
+        }
+
+        List<ShopClusterResponse> markers = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            markers.add(ShopClusterResponse.builder().type(payload[reader.offset++] == 1 ? "cluster" : "shop").build());
+        }
+        for (ShopClusterResponse marker : markers) {
+            marker.setLatitude(reader.float32());
+        }
+        for (ShopClusterResponse marker : markers) {
+            marker.setLongitude(reader.float32());
+        }
+        for (ShopClusterResponse marker : markers) {
+            marker.setCount((int) reader.varint());
+        }
+        for (ShopClusterResponse marker : markers) {
+            marker.setId(reader.uuid());
+        }
+        for (ShopClusterResponse marker : markers) {
+            marker.setName(strings.get((int) reader.varint()));
+        }
+        for (ShopClusterResponse marker : markers) {
+            marker.setAddress(strings.get((int) reader.varint()));
+        }
+        for (ShopClusterResponse marker : markers) {
+            marker.setImageUrl(strings.get((int) reader.varint()));
+        }
+        for (ShopClusterResponse marker : markers) {
+            marker.setStatus(strings.get((int) reader.varint()));
+        }
+        for (ShopClusterResponse marker : markers) {
+            marker.setClusterId(strings.get((int) reader.varint()));
+        }
+        for (ShopClusterResponse marker : markers) {
+            marker.setRating(reader.float32());
+        }
+        for (ShopClusterResponse marker : markers) {
+            marker.setNorth(reader.float32());
+        }
+        for (ShopClusterResponse marker : markers) {
+            marker.setSouth(reader.float32());
+        }
+        for (ShopClusterResponse marker : markers) {
+            marker.setEast(reader.float32());
+        }
+        for (ShopClusterResponse marker : markers) {
+            marker.setWest(reader.float32());
+        }
+
+        assertThat(reader.offset).isEqualTo(payload.length);
+        return markers;
+    }
+
+    private static class Reader {
+        private final byte[] data;
+        private int offset;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        long varint() {
+            long result = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[offset++];
+                result |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return result;
+        }
+
+        Double float32() {
+            float value = ByteBuffer.wrap(data, offset, 4).order(ByteOrder.LITTLE_ENDIAN).getFloat();
+            offset += 4;
+            return Float.isNaN(value) ? null : (double) value;
+        }
+
+        String uuid() {
+            ByteBuffer buffer = ByteBuffer.wrap(data, offset, 16);
+            offset += 16;
+            long most = buffer.getLong();
+            long least = buffer.getLong();
+            return most == 0 && least == 0 ? null : new UUID(most, least).toString();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.mapsocial.service.map;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MvtEncoderTests {
+
+    @Test
+    void encodesPointLayerThatDecodesBack() {
+        MvtEncoder encoder = new MvtEncoder("shops", MvtEncoder.DEFAULT_EXTENT);
+        Map<String, Object> first = new LinkedHashMap<>();
+        first.put("name", "Cà phê");
+        first.put("count", 12);
+        first.put("rating", 4.5);
+        first.put("open", true);
+        first.put("address", null);
+        encoder.addPoint(100, 4000, first);
+
+        Map<String, Object> second = new LinkedHashMap<>();
+        second.put("name", "Cà phê");
+        second.put("count", -3L);
+        encoder.addPoint(0, 0, second);
+
+        Layer layer = decode(encoder.encode());
+
+        assertThat(layer.name).isEqualTo("shops");
+        assertThat(layer.version).isEqualTo(2);
+        assertThat(layer.extent).isEqualTo(4096);
+        assertThat(layer.keys).containsExactly("name", "count", "rating", "open");
+        // Giá trị trùng nhau chỉ ghi một lần
+        assertThat(layer.values).containsExactly("Cà phê", 12L, 4.5, true, -3L);
+
+        assertThat(layer.features).hasSize(2);
+        Feature point = layer.features.get(0);
+        assertThat(point.type).isEqualTo(1);
+        assertThat(point.geometry).containsExactly(9L, 200L, 8000L);
+        assertThat(layer.properties(point)).containsExactly(
+                Map.entry("name", "Cà phê"), Map.entry("count", 12L), Map.entry("rating", 4.5), Map.entry("open", true));
+
+        Feature origin = layer.features.get(1);
+        assertThat(origin.geometry).containsExactly(9L, 0L, 0L);
+        assertThat(layer.properties(origin)).containsExactly(Map.entry("name", "Cà phê"), Map.entry("count", -3L));
+    }
+
+    @Test
+    void encodesNegativeCoordinatesWithZigZag() {
+        MvtEncoder encoder = new MvtEncoder("shops", 512);
+        encoder.addPoint(-1, -64, Map.of());
+
+        Layer layer = decode(encoder.encode());
+
+        assertThat(layer.extent).isEqualTo(512);
+        assertThat(layer.features.getFirst().geometry).containsExactly(9L, 1L, 127L);
+        assertThat(layer.features.getFirst().tags).isEmpty();
+    }
+
+    @Test
+    void reportsEmptyUntilPointAdded() {
+        MvtEncoder encoder = new MvtEncoder("shops", MvtEncoder.DEFAULT_EXTENT);
+        assertThat(encoder.isEmpty()).isTrue();
+
+        encoder.addPoint(1, 1, Map.of("name", "Shop"));
+        assertThat(encoder.isEmpty()).isFalse();
+    }
+
+    // Decoder protobuf tối giản theo vector_tile.proto, chỉ đủ để kiểm tra output của encoder
+
+    private static Layer decode(byte[] tile) {
+        Reader reader = new Reader(tile);
+        Layer layer = null;
+        while (reader.hasMore()) {
+            long tag = reader.varint();
+            assertThat(tag).isEqualTo((3L << 3) | 2);
+            layer = decodeLayer(new Reader(reader.bytes()));
+        }
+        assertThat(layer).isNotNull();
+        return layer;
+    }
+
+    private static Layer decodeLayer(Reader reader) {
+        Layer layer = new Layer();
+        while (reader.hasMore()) {
+            long tag = reader.varint();
+            switch ((int) (tag >>> 3)) {
+                case 1 -> layer.name = new String(reader.bytes(), StandardCharsets.UTF_8);
+                case 2 -> layer.features.add(decodeFeature(new Reader(reader.bytes())));
+                case 3 -> layer.keys.add(new String(reader.bytes(), StandardCharsets.UTF_8));
+                case 4 -> layer.values.add(decodeValue(new Reader(reader.bytes())));
+                case 5 -> layer.extent = (int) reader.varint();
+                case 15 -> layer.version = (int) reader.varint();
+                default -> throw new AssertionError("Unexpected layer field " + (tag >>> 3));
+            }
+        }
+        return layer;
+    }
+
+    private static Feature decodeFeature(Reader reader) {
+        Feature feature = new Feature();
+        while (reader.hasMore()) {
+            long tag = reader.varint();
+            switch ((int) (tag >>> 3)) {
+                case 2 -> feature.tags = reader.packed();
+                case 3 -> feature.type = (int) reader.varint();
+                case 4 -> feature.geometry = reader.packed();
+                default -> throw new AssertionError("Unexpected feature field " + (tag >>> 3));
+            }
+        }
+        return feature;
+    }
+
+    private static Object decodeValue(Reader reader) {
+        long tag = reader.varint();
+        return switch ((int) (tag >>> 3)) {
+            case 1 -> new String(reader.bytes(), StandardCharsets.UTF_8);
+            case 3 -> reader.fixed64();
+            case 6 -> {
+                long zigZag = reader.varint();
+                yield (zigZag >>> 1) ^ -(zigZag & 1);
+            }
+            case 7 -> reader.varint() != 0;
+            default -> throw new AssertionError("Unexpected value field " + (tag >>> 3));
+        };
+    }
+
+    private static class Layer {
+        private String name;
+        private int version;
+        private int extent;
+        private final List<Feature> features = new ArrayList<>();
+        private final List<String> keys = new ArrayList<>();
+        private final List<Object> values = new ArrayList<>();
+
+        private Map<String, Object> properties(Feature feature) {
+            Map<String, Object> properties = new LinkedHashMap<>();
+            for (int i = 0; i < feature.tags.size(); i += 2) {
+                properties.put(keys.get(feature.tags.get(i).intValue()), values.get(feature.tags.get(i + 1).intValue()));
+            }
+            return properties;
+        }
+    }
+
+    private static class Feature {
+        private int type;
+        private List<Long> tags = List.of();
+        private List<Long> geometry = List.of();
+    }
+
+    private static class Reader {
+        private final byte[] data;
+        private int offset;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        boolean hasMore() {
+            return offset < data.length;
+        }
+
+        long varint() {
+            long result = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[offset++];
+                result |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return result;
+        }
+
+        byte[] bytes() {
+            int length = (int) varint();
+            byte[] bytes = new byte[length];
+            System.arraycopy(data, offset, bytes, 0, length);
+            offset += length;
+            return bytes;
+        }
+
+        double fixed64() {
+            double value = ByteBuffer.wrap(data, offset, 8).order(ByteOrder.LITTLE_ENDIAN).getDouble();
+            offset += 8;
+            return value;
+        }
+
+        List<Long> packed() {
+            Reader packed = new Reader(bytes());
+            List<Long> values = new ArrayList<>();
+            while (packed.hasMore()) {
+                values.add(packed.varint());
+            }
+            return values;
+        }
+    }
+}
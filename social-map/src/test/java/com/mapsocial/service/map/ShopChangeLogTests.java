@@ -0,0 +1,96 @@
+package com.mapsocial.service.map;
+
+import com.mapsocial.enums.ShopStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class ShopChangeLogTests {
+
+    private final ShopSpatialIndex shopSpatialIndex = mock(ShopSpatialIndex.class);
+    private ShopChangeLog changeLog;
+
+    @BeforeEach
+    void setUp() {
+        changeLog = new ShopChangeLog(shopSpatialIndex);
+        ReflectionTestUtils.setField(changeLog, "capacity", 3);
+        changeLog.init();
+        changeLog.onIndexLoaded(List.of());
+    }
+
+    @Test
+    void registersWithSpatialIndex() {
+        verify(shopSpatialIndex).addListener(changeLog);
+    }
+
+    @Test
+    void returnsShopsChangedSinceToken() {
+        ShopMarker first = marker();
+        ShopMarker second = marker();
+
+        String initial = changeLog.currentToken();
+        changeLog.onMarkerAdded(first);
+        String afterFirst = changeLog.currentToken();
+        changeLog.onMarkerRemoved(second);
+        changeLog.onMarkerAdded(second);
+
+        assertThat(changeLog.changedSince(initial)).containsExactlyInAnyOrder(first.getId(), second.getId());
+        assertThat(changeLog.changedSince(afterFirst)).containsExactly(second.getId());
+        assertThat(changeLog.changedSince(changeLog.currentToken())).isEmpty();
+    }
+
+    @Test
+    void requiresResetWhenTokenFellOutOfLog() {
+        String initial = changeLog.currentToken();
+        changeLog.onMarkerAdded(marker());
+        String afterFirst = changeLog.currentToken();
+        for (int i = 0; i < 3; i++) {
+            changeLog.onMarkerAdded(marker());
+        }
+
+        // Capacity 3: thay đổi đầu tiên đã bị ghi đè
+        assertThat(changeLog.changedSince(initial)).isNull();
+        assertThat(changeLog.changedSince(afterFirst)).hasSize(3);
+    }
+
+    @Test
+    void requiresResetAfterIndexReload() {
+        changeLog.onMarkerAdded(marker());
+        String beforeReload = changeLog.currentToken();
+
+        changeLog.onIndexLoaded(List.of(marker()));
+
+        assertThat(changeLog.changedSince(beforeReload)).isNull();
+        assertThat(changeLog.changedSince(changeLog.currentToken())).isEmpty();
+    }
+
+    @Test
+    void rejectsForeignOrMalformedTokens() {
+        String token = changeLog.currentToken();
+        String version = token.substring(token.indexOf('.') + 1);
+
+        assertThat(changeLog.changedSince(null)).isNull();
+        assertThat(changeLog.changedSince("not-a-token")).isNull();
+        assertThat(changeLog.changedSince("otherepoch." + version)).isNull();
+        assertThat(changeLog.changedSince(token.substring(0, token.indexOf('.')) + ".abc")).isNull();
+        // Version lớn hơn version hiện tại (token của lần chạy khác)
+        assertThat(changeLog.changedSince(token.substring(0, token.indexOf('.') + 1) + (Long.parseLong(version) + 5)))
+                .isNull();
+    }
+
+    private static ShopMarker marker() {
+        return ShopMarker.builder()
+                .id(UUID.randomUUID())
+                .latitude(21.03)
+                .longitude(105.85)
+                .status(ShopStatus.OPEN)
+                .build();
+    }
+}
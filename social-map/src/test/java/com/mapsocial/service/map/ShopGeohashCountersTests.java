@@ -0,0 +1,109 @@
+package com.mapsocial.service.map;
+
+import com.mapsocial.enums.ShopStatus;
+import com.mapsocial.util.Geohash;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class ShopGeohashCountersTests {
+
+    private ShopGeohashCounters counters;
+
+    @BeforeEach
+    void setUp() {
+        counters = new ShopGeohashCounters(mock(ShopSpatialIndex.class));
+        counters.register();
+    }
+
+    @Test
+    void countsShopsPerGeohashPrefix() {
+        ShopMarker hoanKiem = marker(21.0285, 105.8542);
+        ShopMarker hoanKiemNeighbour = marker(21.0287, 105.8545);
+        ShopMarker saigon = marker(10.7769, 106.7009);
+
+        assertThat(counters.isReady()).isFalse();
+        counters.onIndexLoaded(List.of(hoanKiem, hoanKiemNeighbour, saigon));
+        assertThat(counters.isReady()).isTrue();
+
+        Map<String, Integer> hanoi = counts(counters.query(21.1, 20.9, 106.0, 105.7, 5));
+        assertThat(hanoi).containsExactly(Map.entry(Geohash.encode(21.0285, 105.8542, 5), 2));
+
+        Map<String, Integer> country = counts(counters.query(24, 8, 110, 102, 3));
+        assertThat(country.values().stream().mapToInt(Integer::intValue).sum()).isEqualTo(3);
+        assertThat(country).containsEntry(Geohash.encode(10.7769, 106.7009, 3), 1);
+    }
+
+    @Test
+    void scansCountersWhenBoundingBoxCoversMoreCellsThanExist() {
+        ShopMarker hanoi = marker(21.0285, 105.8542);
+        counters.onIndexLoaded(List.of(hanoi));
+
+        // Cả thế giới ở precision 8: không duyệt lưới ô mà duyệt các ô có shop
+        assertThat(ShopGeohashCounters.cellsCovering(90, -90, 180, -180, 8)).isGreaterThan(1);
+        assertThat(counts(counters.query(90, -90, 180, -180, 8)))
+                .containsExactly(Map.entry(Geohash.encode(21.0285, 105.8542, 8), 1));
+        assertThat(counters.query(-10, -20, -40, -50, 8)).isEmpty();
+    }
+
+    @Test
+    void walksCellGridWhenBoundingBoxIsSmall() {
+        List<ShopMarker> shops = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            shops.add(marker(10 + i * 0.05, 106.7));
+        }
+        counters.onIndexLoaded(shops);
+
+        // Vài ô precision 6 quanh shop đầu tiên, ít hơn nhiều so với 200 ô có shop
+        assertThat(ShopGeohashCounters.cellsCovering(10.01, 9.99, 106.71, 106.69, 6)).isLessThan(200);
+        assertThat(counts(counters.query(10.01, 9.99, 106.71, 106.69, 6)))
+                .containsExactly(Map.entry(Geohash.encode(10, 106.7, 6), 1));
+    }
+
+    @Test
+    void adjustsCountersOnMoveAndRemoval() {
+        ShopMarker shop = marker(21.0285, 105.8542);
+        counters.onIndexLoaded(List.of(shop));
+
+        ShopMarker moved = shop.toBuilder().latitude(10.7769).longitude(106.7009).build();
+        counters.onMarkerRemoved(shop);
+        counters.onMarkerAdded(moved);
+
+        assertThat(counters.query(21.1, 20.9, 106.0, 105.7, 6)).isEmpty();
+        assertThat(counts(counters.query(10.8, 10.7, 106.8, 106.6, 6)))
+                .containsExactly(Map.entry(Geohash.encode(10.7769, 106.7009, 6), 1));
+
+        counters.onMarkerRemoved(moved);
+        assertThat(counters.query(90, -90, 180, -180, 3)).isEmpty();
+    }
+
+    @Test
+    void rejectsUnsupportedPrecision() {
+        assertThatThrownBy(() -> counters.query(1, 0, 1, 0, ShopGeohashCounters.MIN_PRECISION - 1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> counters.query(1, 0, 1, 0, ShopGeohashCounters.MAX_PRECISION + 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static Map<String, Integer> counts(List<ShopGeohashCounters.Cell> cells) {
+        return cells.stream().collect(Collectors.toMap(ShopGeohashCounters.Cell::geohash, ShopGeohashCounters.Cell::count));
+    }
+
+    private static ShopMarker marker(double latitude, double longitude) {
+        return ShopMarker.builder()
+                .id(UUID.randomUUID())
+                .latitude(latitude)
+                .longitude(longitude)
+                .status(ShopStatus.OPEN)
+                .build();
+    }
+}
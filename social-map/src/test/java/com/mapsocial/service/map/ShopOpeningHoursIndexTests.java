@@ -0,0 +1,102 @@
+package com.mapsocial.service.map;
+
+import com.mapsocial.enums.ShopStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class ShopOpeningHoursIndexTests {
+
+    private ShopOpeningHoursIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new ShopOpeningHoursIndex(mock(ShopSpatialIndex.class));
+        index.register();
+    }
+
+    @Test
+    void keepsOvernightShopOpenAcrossMidnight() {
+        ShopMarker bar = marker("18:10", "02:00");
+        index.onIndexLoaded(List.of(bar));
+
+        assertThat(openAt(bar, "18:10")).isTrue();
+        assertThat(openAt(bar, "23:59")).isTrue();
+        assertThat(openAt(bar, "00:00")).isTrue();
+        assertThat(openAt(bar, "01:59")).isTrue();
+
+        assertThat(openAt(bar, "02:00")).isFalse();
+        assertThat(openAt(bar, "12:00")).isFalse();
+        // Cùng slot 18:00 - 18:15 nhưng trước giờ mở cửa
+        assertThat(openAt(bar, "18:05")).isFalse();
+    }
+
+    @Test
+    void matchesDaytimeHoursAtSlotBoundaries() {
+        ShopMarker cafe = marker("07:30", "22:00");
+        index.onIndexLoaded(List.of(cafe));
+
+        assertThat(openAt(cafe, "07:29")).isFalse();
+        assertThat(openAt(cafe, "07:30")).isTrue();
+        assertThat(openAt(cafe, "21:59")).isTrue();
+        assertThat(openAt(cafe, "22:00")).isFalse();
+    }
+
+    @Test
+    void treatsEqualOpeningAndClosingAsAllDay() {
+        ShopMarker store = marker("00:00", "00:00");
+        index.onIndexLoaded(List.of(store));
+
+        assertThat(openAt(store, "00:00")).isTrue();
+        assertThat(openAt(store, "13:37")).isTrue();
+        assertThat(openAt(store, "23:59")).isTrue();
+    }
+
+    @Test
+    void excludesShopsWithoutHoursOrNotIndexed() {
+        ShopMarker noHours = ShopMarker.builder().id(UUID.randomUUID()).status(ShopStatus.OPEN).build();
+        ShopMarker notIndexed = marker("00:00", "00:00");
+        index.onIndexLoaded(List.of(noHours));
+
+        assertThat(index.filterOpenAt(List.of(noHours, notIndexed), LocalTime.NOON)).isEmpty();
+    }
+
+    @Test
+    void followsMarkerUpdates() {
+        ShopMarker lunch = marker("11:00", "14:00");
+        index.onIndexLoaded(List.of());
+        index.onMarkerAdded(lunch);
+        assertThat(openAt(lunch, "12:00")).isTrue();
+
+        ShopMarker dinner = lunch.toBuilder().openingTime(LocalTime.of(17, 0)).closingTime(LocalTime.of(23, 0)).build();
+        index.onMarkerRemoved(lunch);
+        index.onMarkerAdded(dinner);
+
+        assertThat(openAt(dinner, "12:00")).isFalse();
+        assertThat(openAt(dinner, "20:00")).isTrue();
+
+        index.onMarkerRemoved(dinner);
+        assertThat(openAt(dinner, "20:00")).isFalse();
+    }
+
+    private boolean openAt(ShopMarker marker, String time) {
+        return !index.filterOpenAt(List.of(marker), LocalTime.parse(time)).isEmpty();
+    }
+
+    private static ShopMarker marker(String opening, String closing) {
+        return ShopMarker.builder()
+                .id(UUID.randomUUID())
+                .latitude(21.03)
+                .longitude(105.85)
+                .status(ShopStatus.OPEN)
+                .openingTime(LocalTime.parse(opening))
+                .closingTime(LocalTime.parse(closing))
+                .build();
+    }
+}
@@ -0,0 +1,137 @@
+package com.mapsocial.service.map;
+
+import com.mapsocial.enums.ShopRankBy;
+import com.mapsocial.enums.ShopStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ShopRankIndexTests {
+
+    private final ShopSpatialIndex shopSpatialIndex = mock(ShopSpatialIndex.class);
+    private ShopRankIndex rankIndex;
+
+    @BeforeEach
+    void setUp() {
+        rankIndex = new ShopRankIndex(shopSpatialIndex);
+        rankIndex.register();
+    }
+
+    @Test
+    void fillsPageWhenCappedCellIsInsideViewport() {
+        // 20 shops dồn trong một ô nằm hẳn bên trong viewport: ở zoom thấp ô chỉ giữ top 8
+        List<ShopMarker> shops = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            shops.add(marker(10.5 + i * 1e-5, 106.5, i / 4.0, 0));
+        }
+        rankIndex.onIndexLoaded(shops);
+        when(shopSpatialIndex.query(anyDouble(), anyDouble(), anyDouble(), anyDouble()))
+                .thenAnswer(invocation -> new ArrayList<>(shops));
+
+        List<ShopMarker> top = rankIndex.top(40, -20, 140, 70, 3, 15, ShopRankBy.RATING);
+
+        List<ShopMarker> expected = new ArrayList<>(shops);
+        expected.sort(ShopRankIndex.comparator(ShopRankBy.RATING));
+        assertThat(top).containsExactlyElementsOf(expected.subList(0, 15));
+    }
+
+    @Test
+    void spreadsPageAcrossCells() {
+        List<ShopMarker> shops = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            shops.add(marker(21.03 + i * 1e-5, 105.85, 5.0, i));
+        }
+        ShopMarker lonely = marker(21.03, 105.95, 1.0, 0);
+        shops.add(lonely);
+        rankIndex.onIndexLoaded(shops);
+
+        List<ShopMarker> top = rankIndex.top(21.1, 20.9, 106.0, 105.8, 12, 2, ShopRankBy.RATING);
+
+        ShopMarker best = shops.stream().filter(shop -> shop != lonely)
+                .min(ShopRankIndex.comparator(ShopRankBy.RATING)).orElseThrow();
+        assertThat(best.getReviewCount()).isEqualTo(9);
+        assertThat(top).containsExactly(best, lonely);
+        verify(shopSpatialIndex, never()).query(anyDouble(), anyDouble(), anyDouble(), anyDouble());
+    }
+
+    @Test
+    void skipsShopsOutsideViewportInEdgeCells() {
+        ShopMarker inside = marker(21.0300, 105.8500, 3.0, 0);
+        ShopMarker outside = marker(21.0300, 105.8510, 5.0, 0);
+        rankIndex.onIndexLoaded(List.of(inside, outside));
+
+        List<ShopMarker> top = rankIndex.top(21.031, 21.029, 105.8505, 105.849, 10, 10, ShopRankBy.RATING);
+
+        assertThat(top).containsExactly(inside);
+    }
+
+    @Test
+    void refillsCoarseCellsWhenShopIsRemoved() {
+        List<ShopMarker> shops = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            shops.add(marker(10.5 + i * 1e-5, 106.5, i, 0));
+        }
+        rankIndex.onIndexLoaded(shops);
+        ShopMarker best = shops.getLast();
+        ShopMarker second = shops.get(10);
+
+        assertThat(rankIndex.top(40, -20, 140, 70, 3, 1, ShopRankBy.RATING)).containsExactly(best);
+
+        rankIndex.onMarkerRemoved(best);
+        assertThat(rankIndex.top(40, -20, 140, 70, 3, 1, ShopRankBy.RATING)).containsExactly(second);
+
+        rankIndex.onMarkerAdded(best);
+        assertThat(rankIndex.top(40, -20, 140, 70, 3, 1, ShopRankBy.RATING)).containsExactly(best);
+    }
+
+    @Test
+    void ranksByReviewCountThenRating() {
+        ShopMarker popular = marker(21.03, 105.85, 3.0, 500);
+        ShopMarker rated = marker(21.03, 105.85, 5.0, 20);
+        ShopMarker tie = marker(21.03, 105.85, 4.0, 500);
+
+        List<ShopMarker> sorted = new ArrayList<>(List.of(popular, rated, tie));
+        sorted.sort(ShopRankIndex.comparator(ShopRankBy.REVIEW_COUNT));
+        assertThat(sorted).containsExactly(tie, popular, rated);
+
+        sorted.sort(ShopRankIndex.comparator(ShopRankBy.RATING));
+        assertThat(sorted).containsExactly(rated, tie, popular);
+    }
+
+    @Test
+    void spreadsPreFilteredMarkers() {
+        List<ShopMarker> dense = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            dense.add(marker(21.03 + i * 1e-5, 105.85, 4.0 + i * 0.1, 0));
+        }
+        ShopMarker far = marker(21.03, 105.95, 2.0, 0);
+        List<ShopMarker> markers = new ArrayList<>(dense);
+        markers.add(far);
+
+        List<ShopMarker> top = ShopRankIndex.spread(markers, 12, 2, ShopRankBy.RATING);
+
+        assertThat(top).containsExactly(dense.stream().max(Comparator.comparing(ShopMarker::getRating)).orElseThrow(), far);
+    }
+
+    private static ShopMarker marker(double latitude, double longitude, double rating, int reviewCount) {
+        return ShopMarker.builder()
+                .id(UUID.randomUUID())
+                .latitude(latitude)
+                .longitude(longitude)
+                .rating(rating)
+                .reviewCount(reviewCount)
+                .status(ShopStatus.OPEN)
+                .build();
+    }
+}
@@ -0,0 +1,273 @@
+package com.mapsocial.service.map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mapsocial.enums.ShopStatus;
+import com.mapsocial.repository.ShopRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ShopSpatialIndexTests {
+
+    @Mock
+    private ShopRepository shopRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Mock
+    private RedisMessageListenerContainer redisContainer;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final RecordingListener listener = new RecordingListener();
+    private ShopSpatialIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new ShopSpatialIndex(shopRepository, transactionManager, stringRedisTemplate, redisContainer, objectMapper);
+        index.addListener(listener);
+    }
+
+    @Test
+    void loadsOpenShopsAndQueriesByBoundingBox() {
+        UUID hanoi = UUID.randomUUID();
+        UUID saigon = UUID.randomUUID();
+        when(shopRepository.findOpenShopMarkers()).thenReturn(List.of(
+                row(hanoi, 21.03, 105.85),
+                row(saigon, 10.78, 106.70)
+        ));
+
+        assertThat(index.isReady()).isFalse();
+        index.load();
+
+        assertThat(index.isReady()).isTrue();
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(listener.loaded).hasSize(2);
+        assertThat(ids(index.query(21.1, 21.0, 105.9, 105.8))).containsExactly(hanoi);
+        assertThat(ids(index.query(22, 10, 107, 105))).containsExactlyInAnyOrder(hanoi, saigon);
+        assertThat(index.query(1, 0, 1, 0)).isEmpty();
+        assertThat(index.count(22, 10, 107, 105)).isEqualTo(2);
+    }
+
+    @Test
+    void appliesMoveAndPublishesChange() {
+        UUID id = UUID.randomUUID();
+        when(shopRepository.findOpenShopMarkers()).thenReturn(List.<Object[]>of(row(id, 21.03, 105.85)));
+        index.load();
+
+        ShopMarker previous = index.get(id).orElseThrow();
+        ShopMarker moved = previous.toBuilder().latitude(10.78).longitude(106.70).build();
+        index.onShopChanged(new ShopChangedEvent(id, previous, moved));
+
+        assertThat(index.query(21.1, 21.0, 105.9, 105.8)).isEmpty();
+        assertThat(ids(index.query(10.8, 10.7, 106.8, 106.6))).containsExactly(id);
+        assertThat(listener.removed).containsExactly(previous);
+        assertThat(listener.added).containsExactly(moved);
+        verify(stringRedisTemplate).convertAndSend(eq("shop-index-changes"), anyString());
+    }
+
+    @Test
+    void removesShopThatIsNoLongerVisible() {
+        UUID id = UUID.randomUUID();
+        when(shopRepository.findOpenShopMarkers()).thenReturn(List.<Object[]>of(row(id, 21.03, 105.85)));
+        index.load();
+
+        ShopMarker previous = index.get(id).orElseThrow();
+        index.onShopChanged(new ShopChangedEvent(id, previous, previous.toBuilder().status(ShopStatus.CLOSED).build()));
+
+        assertThat(index.get(id)).isEmpty();
+        assertThat(index.query(21.1, 21.0, 105.9, 105.8)).isEmpty();
+        assertThat(listener.removed).containsExactly(previous);
+        assertThat(listener.added).isEmpty();
+
+        index.onShopChanged(new ShopChangedEvent(id, null, null));
+        assertThat(listener.removed).hasSize(1);
+    }
+
+    @Test
+    void appliesChangesFromOtherInstancesOnly() throws Exception {
+        when(shopRepository.findOpenShopMarkers()).thenReturn(List.of());
+        index.load();
+
+        UUID id = UUID.randomUUID();
+        ShopMarker created = marker(id, 21.03, 105.85);
+        String remote = objectMapper.writeValueAsString(
+                new ShopSpatialIndex.ShopIndexChange("other-instance", id, null, created, created.getVersion()));
+        index.onMessage(message(remote), null);
+
+        assertThat(index.get(id)).contains(created);
+        assertThat(listener.added).containsExactly(created);
+
+        // Message do chính instance này phát đã được áp dụng tại chỗ -> bỏ qua
+        UUID localId = UUID.randomUUID();
+        ShopMarker local = marker(localId, 10.78, 106.70);
+        index.onShopChanged(new ShopChangedEvent(localId, null, local));
+        ArgumentCaptor<String> published = ArgumentCaptor.forClass(String.class);
+        verify(stringRedisTemplate).convertAndSend(eq("shop-index-changes"), published.capture());
+
+        index.onMessage(message(published.getValue()), null);
+
+        assertThat(listener.added).containsExactly(created, local);
+        assertThat(listener.removed).isEmpty();
+    }
+
+    @Test
+    void replaysChangesCommittedWhileLoading() {
+        UUID loadedId = UUID.randomUUID();
+        UUID createdId = UUID.randomUUID();
+        ShopMarker created = marker(createdId, 10.78, 106.70);
+        when(shopRepository.findOpenShopMarkers()).thenAnswer(invocation -> {
+            index.onShopChanged(new ShopChangedEvent(createdId, null, created));
+            return List.<Object[]>of(row(loadedId, 21.03, 105.85));
+        });
+
+        index.load();
+
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.get(createdId)).contains(created);
+        assertThat(listener.added).containsExactly(created);
+    }
+
+    @Test
+    void retriesLoadUntilDatabaseIsAvailable() throws Exception {
+        UUID id = UUID.randomUUID();
+        when(shopRepository.findOpenShopMarkers())
+                .thenThrow(new IllegalStateException("database down"))
+                .thenReturn(List.<Object[]>of(row(id, 21.03, 105.85)));
+
+        index.load();
+
+        assertThat(index.isReady()).isFalse();
+        verify(stringRedisTemplate, never()).convertAndSend(anyString(), anyString());
+
+        // Lần thử lại đầu tiên sau 1 giây
+        verify(shopRepository, timeout(5000).times(2)).findOpenShopMarkers();
+        await(index::isReady);
+        assertThat(index.get(id)).isPresent();
+        index.shutdown();
+    }
+
+    @Test
+    void dropsChangesOlderThanIndexedVersion() throws Exception {
+        UUID id = UUID.randomUUID();
+        when(shopRepository.findOpenShopMarkers()).thenReturn(List.<Object[]>of(row(id, 21.03, 105.85, 2000)));
+        index.load();
+        ShopMarker indexed = index.get(id).orElseThrow();
+
+        // Instance khác phát bản cũ hơn (sửa đồng thời, đến sau) -> bỏ qua
+        ShopMarker older = indexed.toBuilder().latitude(10.78).longitude(106.70).version(1000).build();
+        index.onMessage(message(objectMapper.writeValueAsString(
+                new ShopSpatialIndex.ShopIndexChange("other-instance", id, null, older, older.getVersion()))), null);
+        assertThat(index.get(id)).contains(indexed);
+
+        ShopMarker newer = indexed.toBuilder().name("Renamed").version(3000).build();
+        index.onShopChanged(new ShopChangedEvent(id, indexed, newer));
+        assertThat(index.get(id)).contains(newer);
+        assertThat(listener.added).containsExactly(newer);
+    }
+
+    @Test
+    void keepsDeletedShopDeletedWhenOlderChangeArrivesLate() {
+        UUID id = UUID.randomUUID();
+        when(shopRepository.findOpenShopMarkers()).thenReturn(List.<Object[]>of(row(id, 21.03, 105.85, 2000)));
+        index.load();
+        ShopMarker indexed = index.get(id).orElseThrow();
+
+        index.onShopChanged(new ShopChangedEvent(id, indexed, null, 3000));
+        index.onShopChanged(new ShopChangedEvent(id, null, indexed.toBuilder().version(2500).build()));
+
+        assertThat(index.get(id)).isEmpty();
+        assertThat(listener.added).isEmpty();
+    }
+
+    private static Object[] row(UUID id, double latitude, double longitude) {
+        return row(id, latitude, longitude, 0);
+    }
+
+    private static Object[] row(UUID id, double latitude, double longitude, long version) {
+        LocalDateTime updatedAt = version > 0
+                ? LocalDateTime.ofInstant(Instant.ofEpochMilli(version), ZoneOffset.UTC)
+                : null;
+        return new Object[]{id, latitude, longitude, "Shop", "Address", null, 4.5, "OPEN", "", null, null, 10, updatedAt};
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static ShopMarker marker(UUID id, double latitude, double longitude) {
+        return ShopMarker.builder()
+                .id(id)
+                .name("Shop")
+                .latitude(latitude)
+                .longitude(longitude)
+                .status(ShopStatus.OPEN)
+                .tagIds(Set.of())
+                .build();
+    }
+
+    private static DefaultMessage message(String body) {
+        return new DefaultMessage("shop-index-changes".getBytes(StandardCharsets.UTF_8),
+                body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<UUID> ids(List<ShopMarker> markers) {
+        return markers.stream().map(ShopMarker::getId).toList();
+    }
+
+    private static class RecordingListener implements ShopIndexListener {
+        private final List<ShopMarker> loaded = new ArrayList<>();
+        private final List<ShopMarker> added = new ArrayList<>();
+        private final List<ShopMarker> removed = new ArrayList<>();
+
+        @Override
+        public void onIndexLoaded(Collection<ShopMarker> markers) {
+            loaded.clear();
+            loaded.addAll(markers);
+        }
+
+        @Override
+        public void onMarkerAdded(ShopMarker marker) {
+            added.add(marker);
+        }
+
+        @Override
+        public void onMarkerRemoved(ShopMarker marker) {
+            removed.add(marker);
+        }
+    }
+}
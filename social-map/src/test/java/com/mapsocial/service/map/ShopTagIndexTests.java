@@ -0,0 +1,79 @@
+package com.mapsocial.service.map;
+
+import com.mapsocial.enums.ShopStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class ShopTagIndexTests {
+
+    private static final UUID COFFEE = UUID.randomUUID();
+    private static final UUID TEA = UUID.randomUUID();
+    private static final UUID BAKERY = UUID.randomUUID();
+
+    private ShopTagIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new ShopTagIndex(mock(ShopSpatialIndex.class));
+        index.register();
+    }
+
+    @Test
+    void keepsMarkersWithAnyTagInInputOrder() {
+        ShopMarker coffee = marker(COFFEE);
+        ShopMarker tea = marker(TEA);
+        ShopMarker both = marker(COFFEE, TEA);
+        ShopMarker bakery = marker(BAKERY);
+        ShopMarker untagged = marker();
+        index.onIndexLoaded(List.of(coffee, tea, both, bakery, untagged));
+
+        // Thứ tự đầu vào khác thứ tự ordinal
+        List<ShopMarker> viewport = List.of(untagged, both, bakery, tea, coffee);
+
+        assertThat(index.filterByTags(viewport, List.of(COFFEE, TEA))).containsExactly(both, tea, coffee);
+        assertThat(index.filterByTags(viewport, List.of(BAKERY))).containsExactly(bakery);
+        assertThat(index.filterByTags(viewport, List.of(UUID.randomUUID()))).isEmpty();
+    }
+
+    @Test
+    void ignoresShopsOutsideCandidatesAndUnknownMarkers() {
+        ShopMarker inside = marker(COFFEE);
+        ShopMarker outside = marker(COFFEE);
+        index.onIndexLoaded(List.of(inside, outside));
+
+        ShopMarker notIndexed = marker(COFFEE);
+
+        assertThat(index.filterByTags(List.of(notIndexed, inside), List.of(COFFEE))).containsExactly(inside);
+    }
+
+    @Test
+    void followsAddedAndRemovedMarkers() {
+        ShopMarker first = marker(COFFEE);
+        index.onIndexLoaded(List.of(first));
+
+        ShopMarker second = marker(COFFEE, BAKERY);
+        index.onMarkerAdded(second);
+        index.onMarkerRemoved(first);
+
+        assertThat(index.filterByTags(List.of(first, second), List.of(COFFEE))).containsExactly(second);
+        assertThat(index.countByTag(List.of(first, second))).isEqualTo(Map.of(COFFEE, 1, BAKERY, 1));
+    }
+
+    private static ShopMarker marker(UUID... tagIds) {
+        return ShopMarker.builder()
+                .id(UUID.randomUUID())
+                .latitude(21.03)
+                .longitude(105.85)
+                .status(ShopStatus.OPEN)
+                .tagIds(Set.of(tagIds))
+                .build();
+    }
+}
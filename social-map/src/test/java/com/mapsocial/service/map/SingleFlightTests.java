@@ -0,0 +1,132 @@
+package com.mapsocial.service.map;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTests {
+
+    private final SingleFlight<String, Object> singleFlight = new SingleFlight<>();
+
+    @Test
+    void sharesResultWithConcurrentCallers() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Object value = new Object();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Object> leader = executor.submit(() -> singleFlight.execute("key",
+                    blockingLoader(calls, started, release, () -> value)));
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+            AtomicReference<Thread> follower = new AtomicReference<>();
+            Future<Object> waiting = executor.submit(() -> {
+                follower.set(Thread.currentThread());
+                return singleFlight.execute("key", () -> {
+                    calls.incrementAndGet();
+                    return new Object();
+                });
+            });
+            awaitParked(follower);
+            release.countDown();
+
+            assertThat(leader.get(5, TimeUnit.SECONDS)).isSameAs(value);
+            assertThat(waiting.get(5, TimeUnit.SECONDS)).isSameAs(value);
+            assertThat(calls).hasValue(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void propagatesLeaderExceptionToWaitersAndForgetsKey() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        IllegalStateException failure = new IllegalStateException("database down");
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Object> leader = executor.submit(() -> singleFlight.execute("key",
+                    blockingLoader(calls, started, release, () -> {
+                        throw failure;
+                    })));
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+            AtomicReference<Thread> follower = new AtomicReference<>();
+            Future<Throwable> waiting = executor.submit(() -> {
+                follower.set(Thread.currentThread());
+                try {
+                    singleFlight.execute("key", Object::new);
+                    return null;
+                } catch (RuntimeException e) {
+                    return e;
+                }
+            });
+            awaitParked(follower);
+            release.countDown();
+
+            assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS)).hasCause(failure);
+            assertThat(waiting.get(5, TimeUnit.SECONDS)).isSameAs(failure);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Lỗi không được giữ lại: lần gọi sau chạy loader mới
+        assertThat(singleFlight.execute("key", () -> "recovered")).isEqualTo("recovered");
+    }
+
+    @Test
+    void doesNotCacheCompletedResults() {
+        AtomicInteger calls = new AtomicInteger();
+
+        singleFlight.execute("key", calls::incrementAndGet);
+        singleFlight.execute("key", calls::incrementAndGet);
+        singleFlight.execute("other", calls::incrementAndGet);
+
+        assertThat(calls).hasValue(3);
+    }
+
+    private static Supplier<Object> blockingLoader(AtomicInteger calls, CountDownLatch started, CountDownLatch release,
+                                                   Supplier<Object> result) {
+        return () -> {
+            calls.incrementAndGet();
+            started.countDown();
+            try {
+                if (!release.await(5, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Loader was not released");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            return result.get();
+        };
+    }
+
+    /**
+     * Chờ tới khi caller thứ hai đã đăng ký chờ kết quả của caller đầu (thread bị park trong join)
+     */
+    private static void awaitParked(AtomicReference<Thread> thread) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (thread.get() == null || thread.get().getState() != Thread.State.WAITING) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Second caller did not start waiting");
+            }
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.mapsocial.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class PolylineTests {
+
+    @Test
+    void decodesReferencePolyline() {
+        // Ví dụ trong tài liệu Encoded Polyline Algorithm Format của Google
+        List<double[]> points = Polyline.decode("_p~iF~ps|U_ulLnnqC_mqNvxq`@");
+
+        assertThat(points).hasSize(3);
+        assertPoint(points.get(0), 38.5, -120.2);
+        assertPoint(points.get(1), 40.7, -120.95);
+        assertPoint(points.get(2), 43.252, -126.453);
+    }
+
+    @Test
+    void decodesEmptyString() {
+        assertThat(Polyline.decode("")).isEmpty();
+    }
+
+    @Test
+    void rejectsMalformedInput() {
+        // Thiếu kinh độ của điểm cuối
+        assertThatThrownBy(() -> Polyline.decode("_p~iF"))
+                .isInstanceOf(IllegalArgumentException.class);
+        // Ký tự ngoài bảng mã (< 63)
+        assertThatThrownBy(() -> Polyline.decode("_p~iF~ps|U !"))
+                .isInstanceOf(IllegalArgumentException.class);
+        // Chuỗi tiếp nối không kết thúc
+        assertThatThrownBy(() -> Polyline.decode("~~~~~~~~~~~~"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsCoordinatesOutOfRange() {
+        // lat = 100
+        assertThatThrownBy(() -> Polyline.decode("_gjaR?"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void writesWktInLngLatOrder() {
+        String wkt = Polyline.toWkt(List.of(new double[]{21.0, 105.5}, new double[]{10.75, 106.25}));
+
+        assertThat(wkt).isEqualTo("LINESTRING(105.5 21.0,106.25 10.75)");
+    }
+
+    private static void assertPoint(double[] point, double latitude, double longitude) {
+        assertThat(point[0]).isCloseTo(latitude, within(1e-9));
+        assertThat(point[1]).isCloseTo(longitude, within(1e-9));
+    }
+}